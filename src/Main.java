@@ -1,35 +1,117 @@
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
 import java.util.Locale;
 import java.util.ResourceBundle;
 
 /**
  * Initializes main application with view and controller.
+ * By default the view is built in code by MainView, which starts faster than loading resources/MainView.fxml.
+ * The system property languagegame.view=fxml loads the FXML instead, which is also the fallback if the view
+ * can't be built in code. With languagegame.startup.benchmark=true the client prints the time to its first frame
+ * and exits, see benchmark.StartupBenchmark. With languagegame.replay set to a session log, the client plays the
+ * recorded messages back without a server, at the speed given with languagegame.replay.speed, like "1", "4x" or
+ * "max"; see client.SessionLog for recording a log.
  * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
  */
 public class Main extends Application {
 
+    /**
+     * Prefix of the line with the startup times, which is parsed by the startup benchmark.
+     */
+    static final String FIRST_FRAME = "First frame:";
+
+    /**
+     * Private variable that stores the controller of the view.
+     */
+    private MainViewController controller;
+
     @Override
     public void start(Stage primaryStage) {
+        long started = System.nanoTime();
         try {
             Locale.setDefault(Locale.ENGLISH);
             ResourceBundle bundle = ResourceBundle.getBundle("resources/Resources", Locale.getDefault());
-            FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("resources/MainView.fxml"), bundle);
-            Parent root = fxmlLoader.load();
+            String view = System.getProperty("languagegame.view", "code");
+            Parent root = null;
+            if (!view.equals("fxml")) {
+                root = buildView(bundle);
+                if (root == null) {
+                    view = "fxml";
+                }
+            }
+            if (root == null) {
+                FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("resources/MainView.fxml"), bundle);
+                root = fxmlLoader.load();
+                controller = fxmlLoader.getController();
+            }
             Scene scene = new Scene(root);
             scene.getStylesheets().add(this.getClass().getResource("resources/lg.css").toExternalForm());
+            if (Boolean.getBoolean("languagegame.startup.benchmark")) {
+                reportFirstFrame(scene, view, started);
+            }
             primaryStage.setScene(scene);
             primaryStage.show();
+            String replay = System.getProperty("languagegame.replay");
+            if (replay != null) {
+                controller.replay(Paths.get(replay), System.getProperty("languagegame.replay.speed", "1"));
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Private method builds the view in code and connects it to a new controller. The controller only registers
+     * its metrics and subscribes to its client after the view is complete; if anything fails, the controller is
+     * disposed, so the controller of the FXML can register in its place.
+     * @param bundle is the language resource of the view.
+     * @return the root node of the view, or null if the view could not be built, so the FXML is loaded instead.
+     */
+    private Parent buildView(ResourceBundle bundle) {
+        MainViewController c = null;
+        try {
+            MainView view = new MainView(bundle);
+            c = new MainViewController();
+            c.attach(view, bundle);
+            controller = c;
+            return view.getRoot();
+        } catch (RuntimeException e) {
+            System.out.println("Could not build the view, loading the FXML instead: " + e);
+            if (c != null) {
+                c.dispose();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Private method prints the startup times after the first pulse which lays out the shown window, right before
+     * its first frame is rendered, and exits the application.
+     * @param scene is the scene of the window.
+     * @param view is the way the view was built, "code" or "fxml".
+     * @param started is the System.nanoTime when the start method was called.
+     */
+    private void reportFirstFrame(Scene scene, String view, long started) {
+        scene.addPostLayoutPulseListener(new Runnable() {
+            @Override
+            public void run() {
+                scene.removePostLayoutPulseListener(this);
+                long sinceStart = (System.nanoTime() - started) / 1000000;
+                long sinceLaunch = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+                System.out.println(FIRST_FRAME + " view=" + view + " launch=" + sinceLaunch + " start=" + sinceStart);
+                Platform.runLater(Platform::exit);
+            }
+        });
+    }
+
     /**
      * Main method to start the client GUI.
      * @param args is the default-varargs for main method.
@@ -37,4 +119,4 @@ public class Main extends Application {
     public static void main(String[] args) {
         launch(args);
     }
-}
\ No newline at end of file
+}
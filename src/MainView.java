@@ -0,0 +1,291 @@
+import model.Player;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.SplitPane;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.AnchorPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+
+import java.util.ResourceBundle;
+
+/**
+ * Scene graph of resources/MainView.fxml, built in code. The FXMLLoader parses the XML, looks up every class,
+ * property and static setter by reflection and injects the fx:id fields of the controller by reflection, all before
+ * the window can show. This class creates the same nodes with plain constructor and setter calls, so the client
+ * starts noticeably faster on a cold JVM. The FXML file stays the reference: every element of it is built here in
+ * the same order, with the same properties and with its fx:id as id, and every change of the FXML must be repeated
+ * here in the same commit. MainViewCheck compares both scene graphs node by node and fails on any difference, so run
+ * it after changing either file. Main falls back to the FXML if this view can't be built.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+class MainView {
+
+    /**
+     * Root node of the view, an AnchorPane like in the FXML.
+     */
+    final AnchorPane root = new AnchorPane();
+
+    /**
+     * Label with the language of the question, fx:id insertLanguage.
+     */
+    final Label insertLanguage = new Label("Sprache");
+
+    /**
+     * Label with the question, fx:id questionField.
+     */
+    final Label questionField = new Label("Show Question from Server");
+
+    /**
+     * Text area for the answer, fx:id answerField.
+     */
+    final TextArea answerField = new TextArea();
+
+    /**
+     * Button which sends the answer, fx:id sendAnswer.
+     */
+    final Button sendAnswer = new Button();
+
+    /**
+     * Table of the best players, fx:id tableOfOpponents.
+     */
+    final TableView<Player> tableOfOpponents = new TableView<>();
+
+    /**
+     * Column with the nicknames, fx:id opponentName.
+     */
+    final TableColumn<Player, String> opponentName = new TableColumn<>();
+
+    /**
+     * Column with the points, fx:id opponentPoints.
+     */
+    final TableColumn<Player, Number> opponentPoints = new TableColumn<>();
+
+    /**
+     * Text field for the nickname, fx:id nickname.
+     */
+    final TextField nickname = new TextField();
+
+    /**
+     * Text field for the address of the server, fx:id ipAddress.
+     */
+    final TextField ipAddress = new TextField();
+
+    /**
+     * Text field for the port of the server, fx:id port.
+     */
+    final TextField port = new TextField();
+
+    /**
+     * Button which enters the game, fx:id buttonEnterGame.
+     */
+    final Button buttonEnterGame = new Button();
+
+    /**
+     * Button which leaves the game, fx:id buttonLeaveGame.
+     */
+    final Button buttonLeaveGame = new Button();
+
+    /**
+     * Label with the data of the server, fx:id serverData.
+     */
+    final Label serverData = new Label("Server-Data");
+
+    /**
+     * Label with the own rank, fx:id myRank.
+     */
+    final Label myRank = new Label();
+
+    /**
+     * Constructor builds the whole scene graph. The texts with a % in the FXML are taken from the bundle.
+     * @param res is the language resource of the texts.
+     */
+    MainView(ResourceBundle res) {
+        // the FXMLLoader sets every fx:id as the id of its node, which CSS selectors may use
+        insertLanguage.setId("insertLanguage");
+        questionField.setId("questionField");
+        answerField.setId("answerField");
+        sendAnswer.setId("sendAnswer");
+        tableOfOpponents.setId("tableOfOpponents");
+        opponentName.setId("opponentName");
+        opponentPoints.setId("opponentPoints");
+        nickname.setId("nickname");
+        ipAddress.setId("ipAddress");
+        port.setId("port");
+        buttonEnterGame.setId("buttonEnterGame");
+        buttonLeaveGame.setId("buttonLeaveGame");
+        serverData.setId("serverData");
+        myRank.setId("myRank");
+
+        root.setMinSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+        root.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+        root.setPrefSize(800.0, 800.0);
+        root.getStyleClass().add("lowKeyBackground");
+
+        // question and answer on the left side of the split pane
+        HBox questionHeader = new HBox(14.0,
+                label(res.getString("key.questionLabel"), "headlinesLarge"),
+                styled(insertLanguage, "headlinesColored"));
+        questionField.setAlignment(Pos.TOP_LEFT);
+        questionField.setPrefSize(544.0, 200.0);
+        styled(questionField, "question");
+        VBox.setVgrow(questionField, Priority.ALWAYS);
+        VBox questionBox = new VBox(14.0, questionHeader, questionField);
+
+        answerField.setPrefSize(544.0, 200.0);
+        VBox.setVgrow(answerField, Priority.ALWAYS);
+        button(sendAnswer, res.getString("key.sendAnswer"), "buttonStileBlue");
+        VBox answerBox = new VBox(14.0, label(res.getString("key.labelAnswer"), "headlines"), answerField,
+                sendAnswer);
+
+        VBox gameBox = new VBox(14.0, questionBox, answerBox);
+        gameBox.setLayoutX(9.0);
+        gameBox.setLayoutY(14.0);
+        anchor(gameBox, 14.0, 14.0, 14.0, 14.0);
+        AnchorPane gamePane = pane(550.0, new AnchorPane(gameBox));
+
+        // table of the players on the right side of the split pane
+        opponentName.setText(res.getString("key.opponentName"));
+        opponentName.setPrefWidth(160.0);
+        opponentPoints.setText(res.getString("key.opponentPoints"));
+        opponentPoints.setPrefWidth(90.0);
+        tableOfOpponents.setEditable(true);
+        tableOfOpponents.setLayoutY(43.0);
+        tableOfOpponents.setPrefSize(250.0, 450.0);
+        anchor(tableOfOpponents, 43.0, 0.0, 0.0, 0.0);
+        tableOfOpponents.getColumns().add(opponentName);
+        tableOfOpponents.getColumns().add(opponentPoints);
+        tableOfOpponents.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+        Label tableHeadline = label(res.getString("key.labelOpponentTable"), "headlines");
+        tableHeadline.setLayoutX(14.0);
+        tableHeadline.setLayoutY(14.0);
+        myRank.setLayoutY(14.0);
+        styled(myRank, "headlinesColored");
+        AnchorPane.setRightAnchor(myRank, 14.0);
+        AnchorPane tablePane = pane(250.0, new AnchorPane(tableOfOpponents, tableHeadline, myRank));
+        SplitPane.setResizableWithParent(tablePane, false);
+
+        SplitPane splitPane = new SplitPane(gamePane, tablePane);
+        splitPane.setDividerPositions(0.7117794486215538);
+        splitPane.setLayoutX(356.0);
+        splitPane.setLayoutY(265.0);
+        splitPane.setPrefSize(800.0, 535.0);
+        anchor(splitPane, 265.0, 0.0, 0.0, 0.0);
+
+        // connection data above the split pane
+        Label connectionHeadline = label(res.getString("key.labelConnectionData"), "headlinesWhite");
+        VBox.setVgrow(connectionHeadline, Priority.ALWAYS);
+        nickname.setPrefSize(536.0, 25.0);
+        nickname.setPromptText(res.getString("key.enterNickname"));
+        VBox.setVgrow(nickname, Priority.ALWAYS);
+        ipAddress.setPrefSize(178.0, 25.0);
+        ipAddress.setPromptText(res.getString("key.enterIPAddress"));
+        HBox.setHgrow(ipAddress, Priority.ALWAYS);
+        port.setPrefSize(101.0, 25.0);
+        port.setPromptText(res.getString("key.enterPortNumber"));
+        HBox.setHgrow(port, Priority.ALWAYS);
+        button(buttonEnterGame, res.getString("key.enterGame"), "buttonStileGreen");
+        button(buttonLeaveGame, res.getString("key.buttonLeaveGame"), "buttonStileRed");
+        HBox connectionFields = new HBox(14.0, ipAddress, port, buttonEnterGame, buttonLeaveGame);
+        VBox.setVgrow(connectionFields, Priority.ALWAYS);
+        VBox connectionBox = new VBox(14.0, connectionHeadline, nickname, connectionFields);
+        connectionBox.setPrefSize(552.0, 95.0);
+
+        VBox serverBox = new VBox(14.0, label(res.getString("key.serverData"), "headlinesWhite"),
+                styled(serverData, "textWhite"));
+        serverBox.setPrefSize(217.0, 95.0);
+
+        HBox connectionPane = new HBox(10.0, connectionBox, serverBox);
+        connectionPane.setLayoutX(11.0);
+        connectionPane.setLayoutY(150.0);
+        AnchorPane.setLeftAnchor(connectionPane, 14.0);
+        AnchorPane.setRightAnchor(connectionPane, 14.0);
+
+        // title with its shadow, drawn last, so it lies on top
+        Label titleBottom = label("Who's Got It First?", "headlineOfGameBottom");
+        titleBottom.setLayoutX(14.0);
+        titleBottom.setLayoutY(14.0);
+        Label title = label("Who's Got It First?", "headlineOfGame");
+        title.setLayoutX(14.0);
+        title.setLayoutY(14.0);
+
+        root.getChildren().addAll(splitPane, connectionPane, titleBottom, title);
+    }
+
+    /**
+     * Method returns the root node of the view.
+     * @return the root node.
+     */
+    Parent getRoot() {
+        return root;
+    }
+
+    /**
+     * Private method creates a label with a style class.
+     * @param text is the text of the label.
+     * @param styleClass is the style class of the label.
+     * @return the new label.
+     */
+    private static Label label(String text, String styleClass) {
+        return styled(new Label(text), styleClass);
+    }
+
+    /**
+     * Private method adds a style class to a label.
+     * @param label is the label.
+     * @param styleClass is the style class.
+     * @return the label.
+     */
+    private static Label styled(Label label, String styleClass) {
+        label.getStyleClass().add(styleClass);
+        return label;
+    }
+
+    /**
+     * Private method sets text and style class of a button, without mnemonic parsing like in the FXML.
+     * @param button is the button.
+     * @param text is the text of the button.
+     * @param styleClass is the style class of the button.
+     */
+    private static void button(Button button, String text, String styleClass) {
+        button.setMnemonicParsing(false);
+        button.setText(text);
+        button.getStyleClass().add(styleClass);
+    }
+
+    /**
+     * Private method sets the sizes and the style class of a side of the split pane.
+     * @param prefWidth is the preferred width of the side.
+     * @param pane is the side.
+     * @return the side.
+     */
+    private static AnchorPane pane(double prefWidth, AnchorPane pane) {
+        pane.setMinSize(0.0, 0.0);
+        pane.setPrefSize(prefWidth, 493.0);
+        pane.getStyleClass().add("highKeyBackground");
+        return pane;
+    }
+
+    /**
+     * Private method anchors a node at all four sides of its AnchorPane.
+     * @param node is the node.
+     * @param top is the distance to the top.
+     * @param right is the distance to the right.
+     * @param bottom is the distance to the bottom.
+     * @param left is the distance to the left.
+     */
+    private static void anchor(Node node, double top, double right, double bottom, double left) {
+        AnchorPane.setTopAnchor(node, top);
+        AnchorPane.setRightAnchor(node, right);
+        AnchorPane.setBottomAnchor(node, bottom);
+        AnchorPane.setLeftAnchor(node, left);
+    }
+}
@@ -0,0 +1,208 @@
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.control.Labeled;
+import javafx.scene.control.SplitPane;
+import javafx.scene.control.TableColumnBase;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.TextInputControl;
+import javafx.scene.layout.AnchorPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/**
+ * Check that MainView builds the same scene graph as resources/MainView.fxml, which MainView copies by hand. Both
+ * views are built with the same resources and walked in the same order: every node is described by its class, its
+ * id, its style classes and the properties the FXML sets, like texts, sizes, anchors, growth and spacing, and the
+ * descriptions must be equal line by line. The controller of the FXML is disposed right after loading, so the check
+ * does not connect to a server. The stylesheet and the actions of the buttons are not compared, since Main adds the
+ * stylesheet to the scene and the controller sets the actions of the code-built view.
+ * <p>
+ * Usage: {@code MainViewCheck}. It needs a display for the JavaFX toolkit. The exit code is 1 if the views differ.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class MainViewCheck {
+
+    /**
+     * Method describes the scene graph of the FXML.
+     * @param bundle is the resources used to localize the view.
+     * @return one line per node, indented by its depth.
+     * @throws IOException if the FXML can't be loaded.
+     */
+    static List<String> describeFxml(ResourceBundle bundle) throws IOException {
+        FXMLLoader loader = new FXMLLoader(MainViewCheck.class.getResource("resources/MainView.fxml"), bundle);
+        Parent root = loader.load();
+        MainViewController controller = loader.getController();
+        controller.dispose();
+        List<String> lines = new ArrayList<>();
+        describe(root, "", lines);
+        return lines;
+    }
+
+    /**
+     * Method describes the scene graph which MainView builds in code.
+     * @param bundle is the resources used to localize the view.
+     * @return one line per node, indented by its depth.
+     */
+    static List<String> describeCode(ResourceBundle bundle) {
+        List<String> lines = new ArrayList<>();
+        describe(new MainView(bundle).getRoot(), "", lines);
+        return lines;
+    }
+
+    /**
+     * Method compares the descriptions of both views.
+     * @param expected is the description of the FXML.
+     * @param actual is the description of the view built in code.
+     * @return the differences, which is empty if the views are the same.
+     */
+    static List<String> compare(List<String> expected, List<String> actual) {
+        List<String> differences = new ArrayList<>();
+        for (int i = 0; i < Math.max(expected.size(), actual.size()); i++) {
+            String fxml = i < expected.size() ? expected.get(i) : "(nothing)";
+            String code = i < actual.size() ? actual.get(i) : "(nothing)";
+            if (!fxml.equals(code)) {
+                differences.add("node " + (i + 1) + "\n  FXML: " + fxml + "\n  code: " + code);
+            }
+        }
+        return differences;
+    }
+
+    /**
+     * Private method describes a node and all of its children in the order of the FXML.
+     * @param node is the node.
+     * @param indent is the indentation of the depth of the node.
+     * @param lines are the descriptions, which the node is added to.
+     */
+    private static void describe(Node node, String indent, List<String> lines) {
+        StringBuilder line = new StringBuilder(indent).append(node.getClass().getSimpleName());
+        line.append(" id=").append(node.getId()).append(" styleClass=").append(node.getStyleClass());
+        line.append(" layout=").append(node.getLayoutX()).append(',').append(node.getLayoutY());
+        line.append(" anchors=").append(AnchorPane.getTopAnchor(node)).append(',')
+                .append(AnchorPane.getRightAnchor(node)).append(',')
+                .append(AnchorPane.getBottomAnchor(node)).append(',')
+                .append(AnchorPane.getLeftAnchor(node));
+        line.append(" hgrow=").append(HBox.getHgrow(node)).append(" vgrow=").append(VBox.getVgrow(node));
+        line.append(" margin=").append(HBox.getMargin(node)).append(',').append(VBox.getMargin(node));
+        line.append(" resizableWithParent=").append(SplitPane.isResizableWithParent(node));
+        line.append(" disable=").append(node.isDisable()).append(" visible=").append(node.isVisible());
+        if (node instanceof Region) {
+            Region region = (Region) node;
+            line.append(" pref=").append(region.getPrefWidth()).append('x').append(region.getPrefHeight());
+            line.append(" min=").append(region.getMinWidth()).append('x').append(region.getMinHeight());
+            line.append(" max=").append(region.getMaxWidth()).append('x').append(region.getMaxHeight());
+            line.append(" padding=").append(region.getPadding());
+        }
+        if (node instanceof HBox) {
+            HBox box = (HBox) node;
+            line.append(" spacing=").append(box.getSpacing()).append(" alignment=").append(box.getAlignment())
+                    .append(" fillHeight=").append(box.isFillHeight());
+        }
+        if (node instanceof VBox) {
+            VBox box = (VBox) node;
+            line.append(" spacing=").append(box.getSpacing()).append(" alignment=").append(box.getAlignment())
+                    .append(" fillWidth=").append(box.isFillWidth());
+        }
+        if (node instanceof Labeled) {
+            Labeled labeled = (Labeled) node;
+            line.append(" text=\"").append(labeled.getText()).append("\" alignment=").append(labeled.getAlignment())
+                    .append(" wrapText=").append(labeled.isWrapText())
+                    .append(" mnemonicParsing=").append(labeled.isMnemonicParsing())
+                    .append(" font=").append(labeled.getFont());
+        }
+        if (node instanceof TextInputControl) {
+            TextInputControl input = (TextInputControl) node;
+            line.append(" text=\"").append(input.getText()).append("\" promptText=\"").append(input.getPromptText())
+                    .append("\" editable=").append(input.isEditable());
+        }
+        if (node instanceof TextArea) {
+            TextArea area = (TextArea) node;
+            line.append(" wrapText=").append(area.isWrapText()).append(" prefRowCount=").append(area.getPrefRowCount());
+        }
+        if (node instanceof SplitPane) {
+            SplitPane split = (SplitPane) node;
+            line.append(" orientation=").append(split.getOrientation())
+                    .append(" dividers=").append(Arrays.toString(split.getDividerPositions()));
+        }
+        if (node instanceof TableView) {
+            TableView<?> table = (TableView<?>) node;
+            line.append(" editable=").append(table.isEditable()).append(" resizePolicy=")
+                    .append(table.getColumnResizePolicy() == TableView.CONSTRAINED_RESIZE_POLICY
+                            ? "constrained" : "unconstrained");
+        }
+        lines.add(line.toString());
+
+        String childIndent = indent + "  ";
+        if (node instanceof SplitPane) {
+            for (Node item : ((SplitPane) node).getItems()) {
+                describe(item, childIndent, lines);
+            }
+        }
+        else if (node instanceof TableView) {
+            for (TableColumnBase<?, ?> column : ((TableView<?>) node).getColumns()) {
+                describe(column, childIndent, lines);
+            }
+        }
+        else if (node instanceof Pane) {
+            for (Node child : ((Pane) node).getChildren()) {
+                describe(child, childIndent, lines);
+            }
+        }
+    }
+
+    /**
+     * Private method describes a column of a table and its nested columns.
+     * @param column is the column.
+     * @param indent is the indentation of the depth of the column.
+     * @param lines are the descriptions, which the column is added to.
+     */
+    private static void describe(TableColumnBase<?, ?> column, String indent, List<String> lines) {
+        lines.add(indent + column.getClass().getSimpleName() + " id=" + column.getId()
+                + " styleClass=" + column.getStyleClass() + " text=\"" + column.getText() + "\""
+                + " pref=" + column.getPrefWidth() + " min=" + column.getMinWidth() + " max=" + column.getMaxWidth()
+                + " sortable=" + column.isSortable() + " editable=" + column.isEditable()
+                + " resizable=" + column.isResizable());
+        for (TableColumnBase<?, ?> nested : column.getColumns()) {
+            describe(nested, indent + "  ", lines);
+        }
+    }
+
+    /**
+     * Main method to run the check from the command line.
+     * @param args are not used.
+     */
+    public static void main(String[] args) {
+        ResourceBundle bundle = ResourceBundle.getBundle("resources/Resources", Locale.getDefault());
+        Platform.startup(() -> {
+            int status = 1;
+            try {
+                List<String> fxml = describeFxml(bundle);
+                List<String> differences = compare(fxml, describeCode(bundle));
+                for (String difference : differences) {
+                    System.out.println("DIFFERENT " + difference);
+                }
+                System.out.println(fxml.size() + " nodes of the FXML checked, " + differences.size()
+                        + " differences.");
+                status = differences.isEmpty() ? 0 : 1;
+            } catch (IOException e) {
+                System.out.println("IOException occured!");
+            } catch (RuntimeException e) {
+                System.out.println("Could not build the views: " + e);
+            } finally {
+                Platform.exit();
+            }
+            System.exit(status);
+        });
+    }
+}
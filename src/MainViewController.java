@@ -1,24 +1,36 @@
-import lib.JsonHashMapParser;
+import client.ClientEventLoop;
+import client.ClientMetrics;
+import client.ConnectionManager;
+import client.GameClient;
+import client.GameEvent;
+import client.SessionReplay;
+import client.VocabularyIndex;
+import lib.JsonMessageCodec;
+import lib.PrefetchQueue;
+import lib.TextNormalizer;
+import model.Leaderboard;
 import model.Player;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.geometry.Side;
 import javafx.scene.control.*;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
+import javafx.util.Duration;
 
+import javax.management.JMException;
 import java.io.*;
 import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.SocketException;
 import java.net.URL;
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 /**
  * Main controller for language game application. Receives and processes any
@@ -26,7 +38,7 @@ import java.util.ResourceBundle;
  *
  * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
  */
-public class MainViewController implements Runnable, Initializable {
+public class MainViewController implements Flow.Subscriber<GameEvent>, Initializable {
 
     @FXML
     private Label insertLanguage;
@@ -67,6 +79,9 @@ public class MainViewController implements Runnable, Initializable {
     @FXML
     private Label serverData;
 
+    @FXML
+    private Label myRank;
+
 
 
     // ------ private variables -------------------------------------------------
@@ -77,40 +92,107 @@ public class MainViewController implements Runnable, Initializable {
     private ResourceBundle res;
 
     /**
-     * Private socket variable that stores the socket for connection to server.
+     * Number of best players the table of players shows, in addition to the own player.
+     */
+    private static final int VISIBLE_PLAYERS = 100;
+
+    /**
+     * Private leaderboard that stores the ranked players in the game to show in table of players in client GUI.
      */
-    private Socket socket;
+    private final Leaderboard leaderboard = new Leaderboard(VISIBLE_PLAYERS);
 
     /**
-     * Private ObjectOutputStream variable to send messages to the connected server.
+     * Private variable that stores the nickname the player has entered.
      */
-    private ObjectOutputStream out;
+    private String myNickname;
 
     /**
-     * Private list that stores the players in the game to show in table of players in client GUI.
+     * Name of the codec this client offers for the framed mode. Set the system property languagegame.codec
+     * to "Binary" on sites with little bandwidth.
      */
-    private ObservableList<Player> players = FXCollections.observableArrayList();
+    private static final String CODEC = System.getProperty("languagegame.codec", JsonMessageCodec.NAME);
 
     /**
-     * Timeout in milliseconds for connection attempt.
+     * Whether this client offers to compress large messages. Set the system property languagegame.compression
+     * to "false" to save the CPU time on fast networks.
      */
-    private static final int TIMEOUT = 3000;
+    private static final boolean COMPRESSION = !"false".equals(System.getProperty("languagegame.compression"));
 
     /**
-     * Private variable to determine wether the Thread listener should be running or should be stopped.
+     * Number of questions this client asks to get ahead of time. Set the system property languagegame.prefetch
+     * to 0 to get every question when its round starts.
      */
-    private boolean runListener;
+    private static final int PREFETCH_DEPTH = Integer.getInteger("languagegame.prefetch", PrefetchQueue.MAX_DEPTH);
 
     /**
-     * Private variable to store a String into a HashMap to send to server.
+     * File or directory the received messages are recorded to, or null if they are not recorded. Set the system
+     * property languagegame.record to a directory to record every game to a new file in it, which can be played
+     * back with languagegame.replay.
      */
-    private Map<String, String> aMap = new HashMap<>();
+    private static final Path RECORD = System.getProperty("languagegame.record") == null ? null
+            : Paths.get(System.getProperty("languagegame.record"));
 
     /**
      * Private variable to store, if nickname, ip-address and portnumber should be sent to ther server or just the nickname.
      */
     private boolean sendAllThreeConnectionInfos;
 
+    /**
+     * Private metrics of the messages, the answers and the JavaFX event queue, which can be read with JMX.
+     * Set the system property languagegame.metrics.file to also dump them every languagegame.metrics.period seconds.
+     */
+    private final ClientMetrics metrics = new ClientMetrics();
+
+    /**
+     * Private headless client which plays the game on the shared loop. This controller is one of its subscribers
+     * and gets the events on the JavaFX thread.
+     */
+    private final GameClient client = new GameClient(ClientEventLoop.shared(), metrics)
+            .setCodec(CODEC)
+            .setCompression(COMPRESSION)
+            .setPrefetchDepth(PREFETCH_DEPTH)
+            .setRecording(RECORD);
+
+    /**
+     * Private variable that stores the System.nanoTime when the current question was shown.
+     */
+    private long questionShownNanos;
+
+    /**
+     * Private timer which shows the question of a started round at the time the server has announced, or null.
+     * Only used by the JavaFX thread.
+     */
+    private PauseTransition roundTimer;
+
+    /**
+     * Directory of the vocabularies of the languages, with an index file or a word list named after the language,
+     * like "English.idx" or "English.txt". Set the system property languagegame.vocabulary.dir to use another
+     * directory than .languagegame/vocabulary in the home directory.
+     */
+    private static final Path VOCABULARY_DIR = Paths.get(System.getProperty("languagegame.vocabulary.dir",
+            Paths.get(System.getProperty("user.home"), ".languagegame", "vocabulary").toString()));
+
+    /**
+     * Largest number of words the completion of an answer suggests.
+     */
+    private static final int SUGGESTIONS = 5;
+
+    /**
+     * Private vocabulary of the language of the game, or null if there is none. Only used by the JavaFX thread.
+     */
+    private VocabularyIndex vocabulary;
+
+    /**
+     * Private variable that stores the language of the game whose vocabulary is loaded or loading, or null.
+     * Only used by the JavaFX thread.
+     */
+    private String vocabularyLanguage;
+
+    /**
+     * Private menu with the completions of the answer the player is typing.
+     */
+    private final ContextMenu suggestions = new ContextMenu();
+
     /**
      * Initializes the MainViewController.
      * @param location is the location used to resolve relative paths for the root object, or null if the location is not known.
@@ -135,9 +217,17 @@ public class MainViewController implements Runnable, Initializable {
         questionField.setTextOverrun(OverrunStyle.CLIP);
         insertLanguage.setTextOverrun(OverrunStyle.CLIP);
 
-        tableOfOpponents.setItems(players);
+        // the table shows the best players and the own player in the order of the leaderboard
+        tableOfOpponents.setItems(leaderboard.getView());
+        opponentName.setSortable(false);
+        opponentPoints.setSortable(false);
+        leaderboard.myRankProperty().addListener((observable, oldRank, newRank) -> setMyRankLabel());
+        leaderboard.sizeProperty().addListener((observable, oldSize, newSize) -> setMyRankLabel());
         tableOfOpponents.setPlaceholder(new Label(res.getString("key.emptyTable")));
 
+        // suggests the words of the vocabulary as the player types
+        answerField.textProperty().addListener((observable, oldText, newText) -> suggest(newText));
+
         //test data for connection tests: DELETE AFTER USAGE!!!!
         ipAddress.setText("192.168.2.10");
         port.setText("10001");
@@ -150,10 +240,80 @@ public class MainViewController implements Runnable, Initializable {
 
         // set variable to send all three connection infos to true
         sendAllThreeConnectionInfos = true;
+
+        // the view is complete, so nothing is registered for a view which could not be set up
+        startClient();
     }
 
     /**
-     * Create a new socket for IP_ADDRESS and PORT.
+     * Private method publishes the metrics with JMX, dumps them to a local file if wanted and subscribes this
+     * controller to the events of the client.
+     */
+    private void startClient() {
+        try {
+            metrics.register();
+        } catch (JMException e) {
+            System.out.println("Could not register metrics!");
+        }
+        metrics.startFxProbe(Platform::runLater, 1000);
+        client.subscribe(this, Platform::runLater);
+        String metricsFile = System.getProperty("languagegame.metrics.file");
+        if (metricsFile != null) {
+            metrics.startDump(Paths.get(metricsFile), Long.getLong("languagegame.metrics.period", 10) * 1000);
+        }
+    }
+
+    /**
+     * Method gives up this controller before it was shown: the client is closed, which ends the subscription of
+     * this controller, and the metrics are stopped and removed from JMX, so another controller can take over.
+     */
+    void dispose() {
+        client.close();
+        metrics.stop();
+        try {
+            metrics.unregister();
+        } catch (JMException e) {
+            System.out.println("Could not unregister metrics!");
+        }
+    }
+
+    /**
+     * Method connects this controller to a view built in code and initializes it, which is what the FXMLLoader
+     * does for the FXML, but without reflection: the widgets are taken over and the buttons get their actions.
+     * @param view is the view built in code.
+     * @param r is the resources used to localize the view.
+     */
+    void attach(MainView view, ResourceBundle r) {
+        insertLanguage = view.insertLanguage;
+        questionField = view.questionField;
+        answerField = view.answerField;
+        sendAnswer = view.sendAnswer;
+        tableOfOpponents = view.tableOfOpponents;
+        opponentName = view.opponentName;
+        opponentPoints = view.opponentPoints;
+        nickname = view.nickname;
+        ipAddress = view.ipAddress;
+        port = view.port;
+        buttonEnterGame = view.buttonEnterGame;
+        buttonLeaveGame = view.buttonLeaveGame;
+        serverData = view.serverData;
+        myRank = view.myRank;
+        sendAnswer.setOnAction(this::sendAnswer);
+        buttonLeaveGame.setOnAction(this::leaveGame);
+        buttonEnterGame.setOnAction(event -> {
+            try {
+                enterGame(event);
+            } catch (InterruptedException | IOException e) {
+                System.out.println("Could not enter the game!");
+            }
+        });
+        initialize(null, r);
+    }
+
+    /**
+     * Connect to the servers entered as IP_ADDRESS and PORT. The address field may name several servers, separated
+     * by commas, each optionally with its own port; the first server which answers is used. The connection is
+     * opened off the JavaFX thread, so the GUI stays responsive while a server does not answer.
      * @param event is the event that leads to initialization of this method.
      * @throws InterruptedException if the thread started gets interrupted.
      * @throws IOException if there is a failure in initializing the streams.
@@ -167,89 +327,90 @@ public class MainViewController implements Runnable, Initializable {
         }
         else {
             // all data exist
-            try {
-
-                if (sendAllThreeConnectionInfos) {
-                    // open new client socket with a timeout in milliseconds
-                    this.socket = new Socket();
-                    InetSocketAddress isa = new InetSocketAddress(ipAddress.getText().trim(), Integer.parseInt(port.getText().trim()));
-                    this.socket.connect(isa, TIMEOUT);
-
-                    // disabling several GUI buttons and input fields
-                    buttonEnterGame.setDisable(true);
-                    nickname.setDisable(true);
-                    ipAddress.setDisable(true);
-                    port.setDisable(true);
-                    buttonLeaveGame.setDisable(false);
-
-                    // display connection status to GUI
-                    if (socket.isConnected()) {
-                        setServerInfoLabel(res.getString("key.connEstablished"));
-                    }
-
-                    // opens new ObjectOutputStream on socket
-                    out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
 
-                    // opens a new thread to listen to the connected server
-                    runListener = true;
-                    new Thread(this).start();
+            // the own player is always shown in the table of players
+            myNickname = nickname.getText().trim();
+            leaderboard.setMyNickname(myNickname);
 
-                    // send nickname to gameserver
-                    aMap.clear();
-                    aMap.put("Nickname", nickname.getText().trim());
-                    JSONObject j = JsonHashMapParser.Parser.hashMapToJson(JsonHashMapParser.Type.NICKNAME, aMap);
-                    sendMessage(j.toJSONString());
+            if (sendAllThreeConnectionInfos) {
+                final List<InetSocketAddress> servers;
+                try {
+                    // a port which is no number is a NumberFormatException, so it is reported like an invalid server
+                    servers = ConnectionManager.parseEndpoints(ipAddress.getText(),
+                            Integer.parseInt(port.getText().trim()));
                 }
-                else {
-                    // the connection is established but another player has the same nickname,
-                    // so change the nickname and just send the nickname to the server
-                    // send nickname to gameserver
-                    ipAddress.setDisable(true);
-                    port.setDisable(true);
-                    aMap.clear();
-                    aMap.put("Nickname", nickname.getText().trim());
-                    JSONObject j = JsonHashMapParser.Parser.hashMapToJson(JsonHashMapParser.Type.NICKNAME, aMap);
-                    sendMessage(j.toJSONString());
-
-                    // disabling several GUI buttons and input fields
-                    buttonEnterGame.setDisable(true);
-                    nickname.setDisable(true);
-                    buttonLeaveGame.setDisable(false);
+                catch (IllegalArgumentException e) {
+                    showAlert(Alert.AlertType.ERROR, res.getString("key.connFailed"));
+                    return;
                 }
+
+                // no second connect while this one is running
+                buttonEnterGame.setDisable(true);
+                client.connect(servers, myNickname).whenComplete((v, e) -> Platform.runLater(() -> {
+                    if (e != null) {
+                        // Connection failed
+                        buttonEnterGame.setDisable(false);
+                        showAlert(Alert.AlertType.ERROR, res.getString("key.connFailed"));
+                    }
+                    else {
+                        connected();
+                    }
+                }));
             }
-            catch (SocketException ce) {
-                // Connection failed
-                showAlert(Alert.AlertType.ERROR, res.getString("key.connFailed"));
+            else {
+                // the connection is established but another player has the same nickname,
+                // so change the nickname and just send the nickname to the server
+                // send nickname to gameserver
+                ipAddress.setDisable(true);
+                port.setDisable(true);
+                client.rejoin(myNickname).exceptionally(e -> {
+                    showAlert(Alert.AlertType.ERROR, res.getString("key.sendAnswerFailed"));
+                    return null;
+                });
+
+                // disabling several GUI buttons and input fields
+                buttonEnterGame.setDisable(true);
+                nickname.setDisable(true);
+                buttonLeaveGame.setDisable(false);
             }
         }
     }
 
+    /**
+     * Private method updates the GUI after the client has joined the game on a new connection. Runs on the JavaFX
+     * thread.
+     */
+    private void connected() {
+        // disabling several GUI buttons and input fields
+        nickname.setDisable(true);
+        ipAddress.setDisable(true);
+        port.setDisable(true);
+        buttonLeaveGame.setDisable(false);
+    }
+
     /**
      * Method to leave the actual game this client was connected to.
      * @param event is the event that leads to initialization of this method.
      */
     @FXML
     public void leaveGame(ActionEvent event) {
-        try {
-            // closing the socket
-            runListener = false;
-            socket.close();
-
-            // enabling several GUI buttons and input fields
-            buttonEnterGame.setDisable(false);
-            buttonLeaveGame.setDisable(true);
-            nickname.setDisable(false);
-            ipAddress.setDisable(false);
-            port.setDisable(false);
-            sendAllThreeConnectionInfos = true;
-
-            // display connection status to GUI
-            if (socket.isClosed()) {
-                setServerInfoLabel(res.getString("key.connClosed"));
-            }
-        } catch (IOException e) {
-            System.out.println("IOException occured!");
+        // the client ignores everything the server still sends
+        client.leave();
+        if (roundTimer != null) {
+            roundTimer.stop();
+            roundTimer = null;
         }
+
+        // enabling several GUI buttons and input fields
+        buttonEnterGame.setDisable(false);
+        buttonLeaveGame.setDisable(true);
+        nickname.setDisable(false);
+        ipAddress.setDisable(false);
+        port.setDisable(false);
+        sendAllThreeConnectionInfos = true;
+
+        // display connection status to GUI
+        setServerInfoLabel(res.getString("key.connClosed"));
     }
 
     /**
@@ -258,124 +419,305 @@ public class MainViewController implements Runnable, Initializable {
      */
     @FXML
     public void sendAnswer(ActionEvent event) {
-        // 1.) clear the map we want to store the answer in
-        // 2.) add the answer the user has entered in answerField to the map
-        // 3.) build a JSON-Object that we want to send to the server and fill it with the key-value-pair:
-        //     key   = ANSWER
-        //     value = the map me have just created
-        // 4.) send the JSON-Object as a string to the server
-        // 5.) disable the send-button so that no second answer to the same question could be sent
-        aMap.clear();
-        aMap.put("Answer", answerField.getText().trim());
-        JSONObject j = JsonHashMapParser.Parser.hashMapToJson(JsonHashMapParser.Type.ANSWER, aMap);
-        sendMessage(j.toJSONString());
+        // 1.) normalize the answer the user has entered in answerField
+        // 2.) hand the answer to the client, which sends it to the server on the loop thread
+        // 3.) disable the send-button so that no second answer to the same question could be sent
+        final long shown = questionShownNanos;
+        client.answer(normalizeAnswer(answerField.getText()), shown).whenComplete((receipt, e) -> {
+            if (e == null) {
+                metrics.answered(shown, receipt);
+            }
+            else if (client.isConnected()) {
+                // Transmitting the answer failed; without a game, like during a replay, nothing is sent at all
+                showAlert(Alert.AlertType.ERROR, res.getString("key.sendAnswerFailed"));
+            }
+        });
         sendAnswer.setDisable(true);
         answerField.setDisable(true);
+        suggestions.hide();
     }
 
     /**
-     * Method to start a thread which listens to an ObjectInputStream and handles incoming objects.
+     * Method takes every event of the client. Events which are waiting while the JavaFX thread is busy are
+     * conflated by the subscription, so the GUI always shows the current state.
+     * @param subscription is the subscription to the events of the client.
      */
     @Override
-    public void run() {
-        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(this.socket.getInputStream()))) {
-            JSONObject j;
-            JSONParser parser = new JSONParser();
-            JsonHashMapParser.Type t;
-            while (runListener) {
-                try {
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
 
-                    // parses object from input stream to a JSON-object
-                    j = (JSONObject) parser.parse(in.readObject().toString());
-
-                    // stores the type of the received message from the server to determine which message the server has sent
-                    t = JsonHashMapParser.Parser.getType(j);
-
-                    if (t.equals(JsonHashMapParser.Type.QUESTION)) {
-                        // the server has sent a new question, which must be printed on the GUI
-                        final String s = JsonHashMapParser.Parser.jsonToHashMap(j).get("Question").toString();
-                        Platform.runLater(() -> {
-                            setQuestionFieldLabel(s);
-                            // new question has arrived, now the player can enter a new answer
-                            answerField.clear();
-                            answerField.setDisable(false);
-                            sendAnswer.setDisable(false);
-                        });
-                    }
-                    else if (t.equals(JsonHashMapParser.Type.SCORE)) {
-                        // the server has sent an updated list of players and their points
-                        final Map<String, Long> opponents = (Map<String, Long>) JsonHashMapParser.Parser.jsonToHashMap(j);
-
-                        // delete former list of players and add new players to the list
-                        players.clear();
-                        for (String opponent : opponents.keySet()) {
-                            Platform.runLater(() -> {
-                                players.add(new Player(opponent, opponents.get(opponent).intValue()));
-                            });
-                        }
-
-                        // reset the table visible on the GUI
-                        Platform.runLater(() -> {
-                            tableOfOpponents.setItems(players);
-                            tableOfOpponents.setPlaceholder(new Label(res.getString("key.emptyTable")));
-                        });
-                    }
-                    else if (t.equals(JsonHashMapParser.Type.ERROR)) {
-                        // the server has sent the error message, that there is
-                        // actually a player connected to the server, that has the same nickname
-                        // so insert another nickname
-                        showAlert(Alert.AlertType.ERROR, res.getString("key.anotherNickname"));
-                        Platform.runLater(() -> {
-                            // disable and enable several butons and GUI textfields and textareas
-                            buttonEnterGame.setDisable(false);
-                            nickname.clear();
-                            nickname.setDisable(false);
-                            ipAddress.setDisable(true);
-                            port.setDisable(true);
-                            sendAllThreeConnectionInfos = false;
-                        });
-                    }
-                    else if (t.equals(JsonHashMapParser.Type.WINNER)) {
-                        // the server has sent the nickname of the winner
-                        // so we show an alert window which displays the winner nickname
-                        final String s = JsonHashMapParser.Parser.jsonToHashMap(j).get("Winner").toString();
-                        showAlert(Alert.AlertType.INFORMATION, s);
-                    }
-                    else {
-                        // if the server has sent none of the former messages, the message the server has sent must be
-                        // the information in which language the game has to be played
-                        // so show this info on the GUI
-                        final String s = JsonHashMapParser.Parser.jsonToHashMap(j).get("Language").toString();
-                        Platform.runLater(() -> {
-                            setInsertLanguageLabel(s);
-                        });
-                    }
-                } catch (IOException | ClassNotFoundException ef) {
-                    catchSeveralExceptions(in);
-                } catch (ParseException e) {
-                    System.out.println("ParseException occured!");
+    /**
+     * Method of the JavaFX thread shows an event of the client on the GUI.
+     * @param event is the event.
+     */
+    @Override
+    public void onNext(GameEvent event) {
+        if (event instanceof GameEvent.Question) {
+            handleQuestion((GameEvent.Question) event);
+        }
+        else if (event instanceof GameEvent.ScoreUpdate) {
+            handleScore((GameEvent.ScoreUpdate) event);
+        }
+        else if (event instanceof GameEvent.Language) {
+            handleLanguage((GameEvent.Language) event);
+        }
+        else if (event instanceof GameEvent.Winner) {
+            // the server has sent the nickname of the winner
+            // so we show an alert window which displays the winner nickname
+            showAlert(Alert.AlertType.INFORMATION, ((GameEvent.Winner) event).getNickname());
+        }
+        else if (event instanceof GameEvent.NicknameRejected) {
+            handleNicknameRejected();
+        }
+        else if (event instanceof GameEvent.ConnectionChanged) {
+            handleConnectionChanged((GameEvent.ConnectionChanged) event);
+        }
+        metrics.delivered(event);
+    }
+
+    /**
+     * Method reports an error of the subscription.
+     * @param throwable is the error.
+     */
+    @Override
+    public void onError(Throwable throwable) {
+        System.out.println("Subscription failed: " + throwable);
+    }
+
+    /**
+     * Method is called when the client is closed, which happens only when the application ends.
+     */
+    @Override
+    public void onComplete() {
+    }
+
+    /**
+     * Private method shows a changed connection on the GUI.
+     * @param event is the change of the connection.
+     */
+    private void handleConnectionChanged(GameEvent.ConnectionChanged event) {
+        switch (event.getState()) {
+            case CONNECTED:
+                // display connection status to GUI
+                setServerInfoLabel(res.getString("key.connEstablished"));
+                break;
+            case RECONNECTING:
+                setServerInfoLabel(res.getString("key.connReconnecting"));
+                break;
+            case LOST:
+                // the place in the game is lost, so the player can enter a game again
+                showAlert(Alert.AlertType.ERROR, res.getString("key.connLost"));
+                buttonEnterGame.setDisable(false);
+                buttonLeaveGame.setDisable(true);
+                nickname.setDisable(false);
+                ipAddress.setDisable(false);
+                port.setDisable(false);
+                sendAllThreeConnectionInfos = true;
+                setServerInfoLabel(res.getString("key.connClosed"));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Method plays a recorded session log back without a server, on its own thread. The messages take the same way
+     * through the client, its events and the GUI as when they were received, so a lag can be reproduced and
+     * the client can be measured with recorded traffic. The metrics of the client count the played back messages.
+     * @param file is the session log.
+     * @param speed is the playback speed, a factor like "1", "4x" or "max".
+     */
+    void replay(Path file, String speed) {
+        final double factor;
+        try {
+            factor = SessionReplay.parseSpeed(speed);
+        } catch (IllegalArgumentException e) {
+            System.out.println("No valid replay speed: " + speed + "!");
+            return;
+        }
+        buttonEnterGame.setDisable(true);
+        setServerInfoLabel(file.getFileName().toString());
+        Thread thread = new Thread(() -> {
+            long start = System.nanoTime();
+            try {
+                long count = client.replay(new SessionReplay(file), factor);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.println(String.format("Replayed %d messages in %.1f s (%.0f messages per second)",
+                        count, seconds, count / seconds));
+            } catch (IOException e) {
+                System.out.println("Could not replay the session log: " + e.getMessage());
+            } catch (InterruptedException e) {
+                System.out.println("Replay was interrupted!");
+            }
+            Platform.runLater(() -> buttonEnterGame.setDisable(false));
+        }, "SessionReplay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Private method handles a new question. A question the server has sent ahead of time is shown at the start of
+     * its round.
+     * @param question is the question.
+     */
+    private void handleQuestion(GameEvent.Question question) {
+        if (roundTimer != null) {
+            // a round which has not been shown so far is already over
+            roundTimer.stop();
+            roundTimer = null;
+        }
+        final String s = question.getTerm();
+        final long delay = (question.getShowAtNanos() - System.nanoTime()) / 1000000;
+        if (delay <= 0) {
+            showQuestion(s);
+            return;
+        }
+        roundTimer = new PauseTransition(Duration.millis(delay));
+        roundTimer.setOnFinished(event -> {
+            roundTimer = null;
+            showQuestion(s);
+        });
+        roundTimer.play();
+    }
+
+    /**
+     * Private method shows a new question, so the player can enter a new answer. Runs on the JavaFX thread.
+     * @param s is the term the player must translate.
+     */
+    private void showQuestion(String s) {
+        setQuestionFieldLabel(s);
+        questionShownNanos = System.nanoTime();
+        // new question has arrived, now the player can enter a new answer
+        answerField.clear();
+        answerField.setDisable(false);
+        sendAnswer.setDisable(false);
+    }
+
+    /**
+     * Private method applies changed points to the list of players.
+     * @param update are the new points of the players, or a complete list.
+     */
+    private void handleScore(GameEvent.ScoreUpdate update) {
+        if (update.isReplaceAll()) {
+            // players which are still in the game keep their rows, only joined and left players change the list
+            leaderboard.replaceAll(update.getChanges());
+        }
+        else {
+            // a player without points has left the game
+            for (Map.Entry<String, Integer> change : update.getChanges().entrySet()) {
+                if (change.getValue() == null) {
+                    leaderboard.remove(change.getKey());
+                }
+                else {
+                    leaderboard.put(change.getKey(), change.getValue());
                 }
             }
         }
-        catch (IOException e) {
-            // Object read failed
-            System.out.println("IOException occured!");
+        leaderboard.refreshView();
+    }
+
+    /**
+     * Private method handles the error that the nickname is already used.
+     */
+    private void handleNicknameRejected() {
+        // the server has sent the error message, that there is
+        // actually a player connected to the server, that has the same nickname
+        // so insert another nickname
+        showAlert(Alert.AlertType.ERROR, res.getString("key.anotherNickname"));
+        // disable and enable several butons and GUI textfields and textareas
+        buttonEnterGame.setDisable(false);
+        nickname.clear();
+        nickname.setDisable(false);
+        ipAddress.setDisable(true);
+        port.setDisable(true);
+        sendAllThreeConnectionInfos = false;
+    }
+
+    /**
+     * Private method handles the language the questions must be translated to.
+     * @param language is the language.
+     */
+    private void handleLanguage(GameEvent.Language language) {
+        // the server has sent the information in which language the game has to be played
+        // so show this info on the GUI
+        setInsertLanguageLabel(language.getLanguage());
+        loadVocabulary(language.getLanguage());
+    }
+
+    /**
+     * Private method loads the vocabulary of the language of the game off the JavaFX thread, if it is not loaded
+     * yet. Building the index of a new word list may take a while, mapping an index takes no time.
+     * @param language is the language of the game.
+     */
+    private void loadVocabulary(String language) {
+        if (language.equals(vocabularyLanguage)) {
+            return;
         }
+        vocabularyLanguage = language;
+        vocabulary = null;
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return VocabularyIndex.forLanguage(VOCABULARY_DIR, language);
+            } catch (IOException e) {
+                System.out.println("Could not load the vocabulary of " + language + "!");
+                return null;
+            }
+        }).thenAccept(index -> Platform.runLater(() -> {
+            // the language may have changed while the vocabulary was loading
+            if (language.equals(vocabularyLanguage)) {
+                vocabulary = index;
+            }
+        }));
     }
 
     /**
-     * Private method to send text to the output stream.
-     * @param s is the message which should be sent to the server as a String.
+     * Private method shows the words of the vocabulary which start with the answer the player is typing.
+     * @param text is the answer typed so far.
      */
-    private void sendMessage(String s) {
-        try {
-            // write message to the output stream
-            this.out.writeObject(s);
-            this.out.flush();
-        } catch (IOException e) {
-            // Transmitting the answer failed
-            showAlert(Alert.AlertType.ERROR, res.getString("key.sendAnswerFailed"));
+    private void suggest(String text) {
+        List<String> words = vocabulary == null || answerField.isDisabled() ? List.of()
+                : vocabulary.complete(text, SUGGESTIONS);
+        if (words.isEmpty() || (words.size() == 1 && words.get(0).equals(TextNormalizer.clean(text)))) {
+            suggestions.hide();
+            return;
+        }
+        List<MenuItem> items = new ArrayList<>(words.size());
+        for (String word : words) {
+            MenuItem item = new MenuItem(word);
+            item.setMnemonicParsing(false);
+            item.setOnAction(event -> {
+                answerField.setText(word);
+                answerField.positionCaret(word.length());
+                suggestions.hide();
+            });
+            items.add(item);
         }
+        suggestions.getItems().setAll(items);
+        if (!suggestions.isShowing()) {
+            suggestions.show(answerField, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    /**
+     * Private method normalizes an answer before it is sent: the Unicode composition and the whitespace are
+     * cleaned up, and a word of the vocabulary typed without its accents or in another case is sent as it is
+     * spelled in the vocabulary.
+     * @param text is the answer the player has typed.
+     * @return the normalized answer.
+     */
+    private String normalizeAnswer(String text) {
+        String answer = TextNormalizer.clean(text);
+        String spelled = vocabulary == null ? null : vocabulary.lookup(answer);
+        return spelled != null ? spelled : answer;
+    }
+
+    /**
+     * Private method to set Text of label myRank on GUI.
+     */
+    private void setMyRankLabel() {
+        int rank = leaderboard.myRankProperty().get();
+        myRank.setText(rank == 0 ? "" : String.format(res.getString("key.myRank"), rank, leaderboard.size()));
     }
 
     /**
@@ -402,47 +744,18 @@ public class MainViewController implements Runnable, Initializable {
         insertLanguage.setText(s);
     }
 
-    /**
-     * Private Method to handle a bundle of Exceptions.
-     * @param in is an ObjectInputStream, on which the exceptions could occure.
-     */
-    private void catchSeveralExceptions(ObjectInputStream in) {
-        JSONParser parser = new JSONParser();
-        try {
-            JSONObject jj = (JSONObject) parser.parse(in.readObject().toString());
-            final String s = JsonHashMapParser.Parser.jsonToHashMap(jj).get("Winner").toString();
-            showAlert(Alert.AlertType.INFORMATION, res.getString("key.winnerIs") + " " + s + "!!!");
-            Platform.runLater(() -> {
-                buttonEnterGame.setDisable(false);
-                nickname.clear();
-                nickname.setDisable(false);
-                ipAddress.setDisable(true);
-                port.setDisable(true);
-            });
-            sendAllThreeConnectionInfos = false;
-        }
-        catch (EOFException eof) {
-            this.runListener = false;
-            System.out.println("Server has closed the connection!");
-        }
-        catch (ParseException | ClassNotFoundException | SocketException e) {
-            System.out.println("Could not parse message!");
-        } catch (IOException e) {
-            System.out.println("IOException occured!");
-        }
-    }
-
     /**
      * Private Method to show an allert message.
      * @param type is the type of the alert message window as an Alert.AlertType.
      * @param s is the text that should be shown on the alert window.
      */
     private void showAlert(Alert.AlertType type, String s) {
+        // the alert is shown without waiting, so the following events are not blocked until it is closed
         Platform.runLater(() -> {
             Alert alert = new Alert(type);
             alert.setHeaderText(null);
             alert.setContentText(s);
-            alert.showAndWait();
+            alert.show();
         });
     }
 }
\ No newline at end of file
@@ -0,0 +1,129 @@
+package benchmark;
+
+import server.AnswerMatcher;
+import server.QuestionCatalog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks of the answer matching of the server with a catalog of 50000 generated terms: a single answer which is
+ * correct, correct but typed in another case with accents, correct but with a typo, or wrong, with and without typo
+ * tolerance, the old check of QuestionCatalog.Question for comparison, and a burst of 500 answers to one term,
+ * which is checked in parallel.
+ * <p>
+ * Usage: {@code AnswerMatchBenchmark [regex] [iterationMillis]}, where the regex selects the benchmarks by name.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class AnswerMatchBenchmark {
+
+    /**
+     * Number of terms of the generated catalog.
+     */
+    private static final int TERMS = 50000;
+
+    /**
+     * Number of answers of the benchmarked burst.
+     */
+    private static final int BURST = 500;
+
+    /**
+     * Method runs all benchmarks whose name matches the given regex.
+     * @param harness is the harness which runs the benchmarks.
+     * @param filter is the regex which selects the benchmarks.
+     * @throws Exception if a benchmark failed.
+     */
+    public void run(Harness harness, Pattern filter) throws Exception {
+        Random random = new Random(42);
+        List<QuestionCatalog.Question> questions = new ArrayList<>(TERMS);
+        for (int i = 0; i < TERMS; i++) {
+            List<String> translations = new ArrayList<>();
+            for (int j = 0; j <= i % 3; j++) {
+                translations.add(word(random, 4 + random.nextInt(9)));
+            }
+            questions.add(new QuestionCatalog.Question("term" + i, translations));
+        }
+        // the benchmarked term has an accent, like most of the words of a real catalog
+        questions.set(TERMS / 2, new QuestionCatalog.Question("Haus", List.of("Geb\u00e4ude", "house")));
+        QuestionCatalog catalog = new QuestionCatalog("English", questions);
+        int term = TERMS / 2;
+
+        long start = System.nanoTime();
+        AnswerMatcher exact = new AnswerMatcher(catalog, 0);
+        System.out.println(String.format("Compiled %d terms in %.1f ms", TERMS, (System.nanoTime() - start) / 1e6));
+        start = System.nanoTime();
+        AnswerMatcher typos = new AnswerMatcher(catalog, 2);
+        System.out.println(String.format("Compiled %d terms with automatons in %.1f ms", TERMS,
+                (System.nanoTime() - start) / 1e6));
+
+        QuestionCatalog.Question question = catalog.getQuestions().get(term);
+        bench(harness, filter, "isCorrect.exact", () -> question.isCorrect("house"));
+        bench(harness, filter, "isCorrect.wrong", () -> question.isCorrect("mouse"));
+        for (AnswerMatcher matcher : new AnswerMatcher[] {exact, typos}) {
+            String name = "match" + matcher.getMaxEdits();
+            bench(harness, filter, name + ".exact", () -> matcher.matches(term, "house"));
+            bench(harness, filter, name + ".folded", () -> matcher.matches(term, "  GEBAUDE "));
+            bench(harness, filter, name + ".typo", () -> matcher.matches(term, "gebeude"));
+            bench(harness, filter, name + ".wrong", () -> matcher.matches(term, "mouse"));
+        }
+
+        List<String> burst = new ArrayList<>(BURST);
+        for (int i = 0; i < BURST; i++) {
+            burst.add(i % 2 == 0 ? "Geb\u00e4ude" : word(random, 7));
+        }
+        bench(harness, filter, "matchAll.burst" + BURST, () -> typos.matchAll(term, burst));
+        bench(harness, filter, "matchEach.burst" + BURST, () -> {
+            int correct = 0;
+            for (String answer : burst) {
+                correct += typos.matches(term, answer) ? 1 : 0;
+            }
+            return correct;
+        });
+    }
+
+    /**
+     * Private method generates a random word.
+     * @param random is the generator.
+     * @param length is the number of letters.
+     * @return the word.
+     */
+    private static String word(Random random, int length) {
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+
+    /**
+     * Private method runs a benchmark if its name matches the filter.
+     * @param harness is the harness which runs the benchmark.
+     * @param filter is the regex which selects the benchmarks.
+     * @param name is the name of the benchmark.
+     * @param operation is the benchmarked operation.
+     * @throws Exception if the benchmark failed.
+     */
+    private static void bench(Harness harness, Pattern filter, String name, Harness.Operation operation)
+            throws Exception {
+        if (filter.matcher(name).find()) {
+            harness.run(name, operation);
+        }
+    }
+
+    /**
+     * Main method to run the benchmarks from the command line.
+     * @param args are the optional regex which selects the benchmarks and the optional time of an iteration
+     *             in milliseconds.
+     */
+    public static void main(String[] args) {
+        try {
+            Pattern filter = Pattern.compile(args.length > 0 ? args[0] : "");
+            long iterationMillis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+            new AnswerMatchBenchmark().run(new Harness(5, 5, iterationMillis), filter);
+        } catch (Exception e) {
+            System.out.println("Benchmark failed: " + e);
+        }
+    }
+}
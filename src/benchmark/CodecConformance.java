@@ -0,0 +1,236 @@
+package benchmark;
+
+import lib.BinaryMessageCodec;
+import lib.ClockEstimator;
+import lib.DeflateCodec;
+import lib.JsonHashMapParser;
+import lib.JsonMessageCodec;
+import lib.Message;
+import lib.MessageCodec;
+import lib.PrefetchQueue;
+import lib.ScoreBoard;
+import lib.Transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Conformance check of the codecs: a sample message of every JsonHashMapParser.Type, with texts in other scripts,
+ * null values and extreme numbers, goes through the JSON codec, the binary codec and the deflate codec around both,
+ * with one encoder and one decoder which live as long as a connection. Every message is sent twice, so the second
+ * time the binary codec uses its dictionary and the deflate codec its window. Every decoded message must equal the
+ * sent message, and the JSON of a message must be the same after a round trip through the binary codec.
+ * A new type has no sample, so the check fails until one is added.
+ * <p>
+ * Usage: {@code CodecConformance}. The exit code is 1 if a message did not survive a round trip.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class CodecConformance {
+
+    /**
+     * Private list of the descriptions of the failed checks.
+     */
+    private final List<String> failures = new ArrayList<>();
+
+    /**
+     * Private variable that stores the number of checked round trips.
+     */
+    private int checked;
+
+    /**
+     * Method runs all checks.
+     * @return the descriptions of the failed checks, which is empty if all messages survived.
+     */
+    public List<String> run() {
+        List<Message> samples = new ArrayList<>();
+        for (JsonHashMapParser.Type type : JsonHashMapParser.Type.values()) {
+            Message sample = sample(type);
+            if (sample == null) {
+                failures.add(type + ": no sample message");
+            }
+            else {
+                samples.add(sample);
+            }
+        }
+        check("Json", JsonMessageCodec::new, samples);
+        check("Binary", BinaryMessageCodec::new, samples);
+        // a threshold of 0 compresses every message, the default threshold only the large ones
+        check("Deflate+Json", () -> new DeflateCodec(new JsonMessageCodec(), 0), samples);
+        check("Deflate+Binary", () -> new DeflateCodec(new BinaryMessageCodec(), 0), samples);
+        check("Deflate+Json default", () -> new DeflateCodec(new JsonMessageCodec()), samples);
+        check("Deflate+Binary default", () -> new DeflateCodec(new BinaryMessageCodec()), samples);
+        checkJsonBinaryJson(samples);
+        return failures;
+    }
+
+    /**
+     * Method returns the number of round trips which were checked.
+     * @return number of round trips.
+     */
+    public int getChecked() {
+        return checked;
+    }
+
+    /**
+     * Private method sends every sample twice from one encoder to one decoder of a codec.
+     * @param name is the name of the codec in the failures.
+     * @param codecs creates a new instance of the codec.
+     * @param samples are the sample messages.
+     */
+    private void check(String name, Supplier<MessageCodec> codecs, List<Message> samples) {
+        MessageCodec encoder = codecs.get();
+        MessageCodec decoder = codecs.get();
+        Message decoded = new Message();
+        for (int pass = 1; pass <= 2; pass++) {
+            for (Message sample : samples) {
+                String where = name + " pass " + pass + " " + sample.getType();
+                try {
+                    ByteBuffer bytes = encoder.encode(sample, ByteBuffer.allocate(16));
+                    bytes.flip();
+                    decoder.decode(bytes, decoded);
+                    compare(where, sample, decoded);
+                    if (bytes.hasRemaining()) {
+                        failures.add(where + ": " + bytes.remaining() + " bytes were not decoded");
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failures.add(where + ": " + e);
+                }
+                checked++;
+            }
+        }
+        encoder.release();
+        decoder.release();
+    }
+
+    /**
+     * Private method checks that the JSON of every sample is the same after it went through the binary codec.
+     * @param samples are the sample messages.
+     */
+    private void checkJsonBinaryJson(List<Message> samples) {
+        JsonMessageCodec json = new JsonMessageCodec();
+        MessageCodec encoder = new BinaryMessageCodec();
+        MessageCodec decoder = new BinaryMessageCodec();
+        Message fromJson = new Message();
+        Message fromBinary = new Message();
+        for (Message sample : samples) {
+            String where = "Json-Binary-Json " + sample.getType();
+            try {
+                String before = json.toJsonString(sample);
+                json.decode(before, fromJson);
+                ByteBuffer bytes = encoder.encode(fromJson, ByteBuffer.allocate(16));
+                bytes.flip();
+                decoder.decode(bytes, fromBinary);
+                String after = json.toJsonString(fromBinary);
+                if (!before.equals(after)) {
+                    failures.add(where + ": " + before + " became " + after);
+                }
+            } catch (IOException | RuntimeException e) {
+                failures.add(where + ": " + e);
+            }
+            checked++;
+        }
+    }
+
+    /**
+     * Private method compares a decoded message with the sent message.
+     * @param where describes the round trip in the failures.
+     * @param expected is the sent message.
+     * @param actual is the decoded message.
+     */
+    private void compare(String where, Message expected, Message actual) {
+        if (expected.getType() != actual.getType()) {
+            failures.add(where + ": type " + actual.getType());
+            return;
+        }
+        if (expected.size() != actual.size()) {
+            failures.add(where + ": " + actual.size() + " pairs instead of " + expected.size());
+            return;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            String key = expected.getKey(i);
+            if (!key.equals(actual.getKey(i))) {
+                failures.add(where + ": key " + actual.getKey(i) + " instead of " + key);
+            }
+            else if (expected.isNumber(i) != actual.isNumber(i)) {
+                failures.add(where + ": " + key + " changed between text and number");
+            }
+            else if (expected.isNumber(i) ? expected.getNumber(i) != actual.getNumber(i)
+                    : !equal(expected.getText(i), actual.getText(i))) {
+                failures.add(where + ": " + key + " has the wrong value");
+            }
+        }
+    }
+
+    /**
+     * Private method compares two texts which may be null.
+     * @param a is the first text.
+     * @param b is the second text.
+     * @return true, if both are null or equal.
+     */
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Private method builds the sample message of a type, with the keys the server and the client use.
+     * @param type is the type.
+     * @return the sample message, or null if the type has no sample yet.
+     */
+    private static Message sample(JsonHashMapParser.Type type) {
+        Message m = new Message().clear(type);
+        switch (type) {
+            case SCORE:
+                return m.putNumber(ScoreBoard.SEQUENCE_KEY, 7).putNumber("alice", 0).putNumber("Bj\u00f6rn", 12)
+                        .putNumber("\u5f20\u4f1f", Long.MAX_VALUE).putNumber("\"quoted\" \\ name", -1);
+            case QUESTION:
+                return m.putText("Question", "Geb\u00e4ude \u00fcber \u00e9t\u00e9 \ud83c\udf0d");
+            case WINNER:
+                return m.putText("Winner", "");
+            case ANSWER:
+                return m.putText("Answer", "line\nbreak\ttab \u0000 nul")
+                        .putNumber(ClockEstimator.DURATION_KEY, 1234);
+            case ERROR:
+                return m.putText("Error", "Nickname is already used");
+            case LANGUAGE:
+                return m.putText("Language", "English");
+            case NICKNAME:
+                return m.putText("Nickname", "alice").putText(Transport.HANDSHAKE_KEY, "Framed")
+                        .putText(Transport.SESSION_KEY, "3.MX5VWCczzBi8NMvKVy3sgQ")
+                        .putText(ScoreBoard.HANDSHAKE_KEY, "true").putText(PrefetchQueue.HANDSHAKE_KEY, "2");
+            case SCORE_DELTA:
+                return m.putNumber(ScoreBoard.SEQUENCE_KEY, 8).putNumber("alice", 1).putText("Bj\u00f6rn", null)
+                        .putNumber("carol", Long.MIN_VALUE);
+            case PING:
+                return m.putNumber(ClockEstimator.SENT_KEY, 123456789012L);
+            case PONG:
+                return m.putNumber(ClockEstimator.SENT_KEY, 123456789012L)
+                        .putNumber(ClockEstimator.SERVER_TIME_KEY, 987654321098L);
+            case PREFETCH:
+                return m.putNumber(PrefetchQueue.ROUND_KEY, 41).putText("Question", "Baum");
+            case ROUND:
+                return m.putNumber(PrefetchQueue.ROUND_KEY, 41).putNumber(PrefetchQueue.START_KEY, 987654321198L);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Main method to run the check from the command line.
+     * @param args are not used.
+     */
+    public static void main(String[] args) {
+        CodecConformance conformance = new CodecConformance();
+        List<String> failures = conformance.run();
+        for (String failure : failures) {
+            System.out.println("FAILED " + failure);
+        }
+        System.out.println(conformance.getChecked() + " round trips of " + JsonHashMapParser.Type.values().length
+                + " types checked, " + failures.size() + " failures.");
+        if (!failures.isEmpty()) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Small benchmark harness in the style of JMH. Every benchmark runs in batches on the calling thread: first
+ * the warmup iterations, which let the JIT compile the code, then the measured iterations. For every benchmark
+ * the harness reports the throughput and the bytes allocated per operation, like the gc.alloc.rate.norm of the
+ * JMH GC profiler. The results of the operations are consumed, so the JIT can't remove the measured code.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class Harness {
+
+    /**
+     * Interface for one benchmarked operation.
+     */
+    public interface Operation {
+
+        /**
+         * Method runs the operation once.
+         * @return the result of the operation, which is consumed by the harness.
+         * @throws Exception if the operation failed, which ends the benchmark.
+         */
+        Object run() throws Exception;
+    }
+
+    /**
+     * Private variable that stores the number of warmup iterations.
+     */
+    private final int warmupIterations;
+
+    /**
+     * Private variable that stores the number of measured iterations.
+     */
+    private final int measuredIterations;
+
+    /**
+     * Private variable that stores the time of an iteration in nanoseconds.
+     */
+    private final long iterationNanos;
+
+    /**
+     * Private bean which counts the bytes allocated by a thread, or null if the JVM can't count them.
+     */
+    private final com.sun.management.ThreadMXBean allocations;
+
+    /**
+     * Private variable the results of the operations are consumed into.
+     */
+    private int sink;
+
+    /**
+     * Public variable which keeps the consumed results alive. Read it, so the sink is not optimized away.
+     */
+    public static volatile int blackhole;
+
+    /**
+     * Constructor for a new harness.
+     * @param warmupIterations is the number of warmup iterations.
+     * @param measuredIterations is the number of measured iterations.
+     * @param iterationMillis is the time of an iteration in milliseconds.
+     */
+    public Harness(int warmupIterations, int measuredIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measuredIterations = measuredIterations;
+        this.iterationNanos = iterationMillis * 1000000;
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            this.allocations = (com.sun.management.ThreadMXBean) bean;
+            this.allocations.setThreadAllocatedMemoryEnabled(true);
+        }
+        else {
+            this.allocations = null;
+        }
+    }
+
+    /**
+     * Method runs one benchmark and prints its result.
+     * @param name is the name of the benchmark.
+     * @param operation is the benchmarked operation.
+     * @return the result of the benchmark.
+     * @throws Exception if the operation failed.
+     */
+    public Result run(String name, Operation operation) throws Exception {
+        long batch = calibrate(operation);
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(operation, batch);
+        }
+        double[] opsPerSecond = new double[measuredIterations];
+        double bytes = 0;
+        for (int i = 0; i < measuredIterations; i++) {
+            double[] measured = iteration(operation, batch);
+            opsPerSecond[i] = measured[0];
+            bytes += measured[1];
+        }
+        blackhole = sink;
+        Result result = new Result(name, opsPerSecond, allocations == null ? Double.NaN : bytes / measuredIterations);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * Private method finds the number of operations of a batch, so one batch takes about a hundredth of an iteration.
+     * @param operation is the benchmarked operation.
+     * @return the number of operations of a batch.
+     * @throws Exception if the operation failed.
+     */
+    private long calibrate(Operation operation) throws Exception {
+        long batch = 1;
+        while (true) {
+            long start = System.nanoTime();
+            for (long i = 0; i < batch; i++) {
+                consume(operation.run());
+            }
+            if (System.nanoTime() - start >= iterationNanos / 100 || batch >= (1L << 30)) {
+                return batch;
+            }
+            batch *= 2;
+        }
+    }
+
+    /**
+     * Private method runs batches until the time of an iteration is over.
+     * @param operation is the benchmarked operation.
+     * @param batch is the number of operations of a batch.
+     * @return the operations per second and the allocated bytes per operation.
+     * @throws Exception if the operation failed.
+     */
+    private double[] iteration(Operation operation, long batch) throws Exception {
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = allocations == null ? 0 : allocations.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        long operations = 0;
+        long elapsed;
+        do {
+            for (long i = 0; i < batch; i++) {
+                consume(operation.run());
+            }
+            operations += batch;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        long allocated = allocations == null ? 0 : allocations.getThreadAllocatedBytes(thread) - allocatedBefore;
+        return new double[] {operations * 1e9 / elapsed, (double) allocated / operations};
+    }
+
+    /**
+     * Private method consumes the result of an operation.
+     * @param result is the result.
+     */
+    private void consume(Object result) {
+        sink += result == null ? 0 : System.identityHashCode(result);
+    }
+
+    /**
+     * Result of one benchmark.
+     */
+    public static class Result {
+
+        /**
+         * Private variable that stores the name of the benchmark.
+         */
+        private final String name;
+
+        /**
+         * Private variable that stores the mean throughput in operations per second.
+         */
+        private final double mean;
+
+        /**
+         * Private variable that stores the standard deviation of the throughput.
+         */
+        private final double deviation;
+
+        /**
+         * Private variable that stores the allocated bytes per operation, or NaN if they are unknown.
+         */
+        private final double bytesPerOperation;
+
+        /**
+         * Constructor for a new result.
+         * @param name is the name of the benchmark.
+         * @param opsPerSecond are the throughputs of the measured iterations.
+         * @param bytesPerOperation are the allocated bytes per operation, or NaN if they are unknown.
+         */
+        Result(String name, double[] opsPerSecond, double bytesPerOperation) {
+            this.name = name;
+            double sum = 0;
+            for (double value : opsPerSecond) {
+                sum += value;
+            }
+            this.mean = sum / opsPerSecond.length;
+            double squares = 0;
+            for (double value : opsPerSecond) {
+                squares += (value - mean) * (value - mean);
+            }
+            this.deviation = opsPerSecond.length > 1 ? Math.sqrt(squares / (opsPerSecond.length - 1)) : 0;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+
+        /**
+         * Method returns the name of the benchmark.
+         * @return the name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Method returns the mean throughput.
+         * @return operations per second.
+         */
+        public double getOpsPerSecond() {
+            return mean;
+        }
+
+        /**
+         * Method returns the allocated bytes per operation.
+         * @return bytes per operation, or NaN if they are unknown.
+         */
+        public double getBytesPerOperation() {
+            return bytesPerOperation;
+        }
+
+        /**
+         * Method returns the result as a line of the report.
+         * @return the line of the report.
+         */
+        @Override
+        public String toString() {
+            return String.format("%-45s %15.1f +- %12.1f ops/s %12.1f B/op", name, mean, deviation, bytesPerOperation);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package benchmark;
+
+import lib.BinaryMessageCodec;
+import lib.JsonHashMapParser;
+import lib.JsonMessageCodec;
+import lib.Message;
+import lib.MessageCodec;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks of the protocol: the methods of JsonHashMapParser and the decode and dispatch work the listener
+ * thread of MainViewController does for every message, with a short QUESTION and SCORE lists of 10, 1000 and
+ * 10000 players. The dispatch is measured for the JSON String path of the old listener and for the streaming
+ * codecs in their steady state, where the binary codec already knows all keys.
+ * <p>
+ * Usage: {@code ProtocolBenchmark [regex] [iterationMillis]}, where the regex selects the benchmarks by name.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class ProtocolBenchmark {
+
+    /**
+     * Sizes of the benchmarked SCORE lists.
+     */
+    private static final int[] SCORE_SIZES = {10, 1000, 10000};
+
+    /**
+     * Private map the dispatched scores are copied into, like the pending scores of the client.
+     */
+    private final Map<String, Integer> pendingScores = new LinkedHashMap<>();
+
+    /**
+     * Private variable that stores the last dispatched term.
+     */
+    private String question;
+
+    /**
+     * Method runs all benchmarks whose name matches the given regex.
+     * @param harness is the harness which runs the benchmarks.
+     * @param filter is the regex which selects the benchmarks.
+     * @throws Exception if a benchmark failed.
+     */
+    public void run(Harness harness, Pattern filter) throws Exception {
+        Map<String, Map<String, Object>> payloads = new LinkedHashMap<>();
+        Map<String, JsonHashMapParser.Type> types = new HashMap<>();
+        Map<String, Object> q = new HashMap<>();
+        q.put("Question", "Haus");
+        payloads.put("question", q);
+        types.put("question", JsonHashMapParser.Type.QUESTION);
+        for (int size : SCORE_SIZES) {
+            Map<String, Object> score = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                score.put("Player" + i, (long) (i * 7 % 100));
+            }
+            payloads.put("score" + size, score);
+            types.put("score" + size, JsonHashMapParser.Type.SCORE);
+        }
+
+        bench(harness, filter, "Type.fromString", () -> JsonHashMapParser.Type.fromString("Question"));
+
+        for (Map.Entry<String, Map<String, Object>> entry : payloads.entrySet()) {
+            String name = entry.getKey();
+            Map<String, Object> map = entry.getValue();
+            JsonHashMapParser.Type type = types.get(name);
+            String text = JsonHashMapParser.Parser.hashMapToJson(type, map).toJSONString();
+            JSONObject parsed = (JSONObject) new JSONParser().parse(text);
+
+            bench(harness, filter, "hashMapToJson." + name, () -> JsonHashMapParser.Parser.hashMapToJson(type, map));
+            bench(harness, filter, "getType." + name, () -> {
+                // getType removes the type, so it is put back before every call
+                putType(parsed, type);
+                return JsonHashMapParser.Parser.getType(parsed);
+            });
+            bench(harness, filter, "jsonToHashMap." + name, () -> JsonHashMapParser.Parser.jsonToHashMap(parsed));
+
+            bench(harness, filter, "dispatch.jsonString." + name, () -> {
+                // the listener before the streaming codecs: parse the String into a map and copy the map
+                JSONObject json = (JSONObject) new JSONParser().parse(text);
+                JsonHashMapParser.Type t = JsonHashMapParser.Parser.getType(json);
+                return dispatch(t, JsonHashMapParser.Parser.jsonToHashMap(json));
+            });
+
+            Message message = new Message();
+            new JsonMessageCodec().decode(text, message);
+            benchCodec(harness, filter, "dispatch.json." + name, new JsonMessageCodec(), new JsonMessageCodec(),
+                    message);
+            benchCodec(harness, filter, "dispatch.binary." + name, new BinaryMessageCodec(), new BinaryMessageCodec(),
+                    message);
+        }
+        Harness.blackhole += question == null ? 0 : question.length();
+    }
+
+    /**
+     * Private method benchmarks the decode and dispatch of a message with a codec in its steady state.
+     * @param harness is the harness which runs the benchmark.
+     * @param filter is the regex which selects the benchmarks.
+     * @param name is the name of the benchmark.
+     * @param encoder is the codec of the sender.
+     * @param decoder is the codec of the receiver.
+     * @param message is the message.
+     * @throws Exception if the benchmark failed.
+     */
+    private void benchCodec(Harness harness, Pattern filter, String name, MessageCodec encoder, MessageCodec decoder,
+                            Message message) throws Exception {
+        if (!filter.matcher(name).find()) {
+            return;
+        }
+        Message holder = new Message();
+        // the first message fills the dictionary of the binary codec, every later message only uses references
+        ByteBuffer first = encoder.encode(message, ByteBuffer.allocate(256));
+        first.flip();
+        decoder.decode(first, holder);
+        ByteBuffer payload = encoder.encode(message, ByteBuffer.allocate(256));
+        payload.flip();
+        harness.run(name, () -> {
+            decoder.decode(payload.duplicate(), holder);
+            return dispatch(holder);
+        });
+    }
+
+    /**
+     * Private method puts the type back into a parsed JSON object, which json-simple only offers as a raw map.
+     * @param json is the parsed JSON object.
+     * @param type is the type.
+     */
+    @SuppressWarnings("unchecked")
+    private static void putType(JSONObject json, JsonHashMapParser.Type type) {
+        json.put("Type", type.getTypeString());
+    }
+
+    /**
+     * Private method runs a benchmark if its name matches the filter.
+     * @param harness is the harness which runs the benchmark.
+     * @param filter is the regex which selects the benchmarks.
+     * @param name is the name of the benchmark.
+     * @param operation is the benchmarked operation.
+     * @throws Exception if the benchmark failed.
+     */
+    private static void bench(Harness harness, Pattern filter, String name, Harness.Operation operation)
+            throws Exception {
+        if (filter.matcher(name).find()) {
+            harness.run(name, operation);
+        }
+    }
+
+    /**
+     * Private method dispatches a decoded map like the old listener: the term is stored, the scores are copied.
+     * @param type is the type of the message.
+     * @param map is the decoded map.
+     * @return the map the result was stored in.
+     */
+    private Object dispatch(JsonHashMapParser.Type type, HashMap<String, ?> map) {
+        if (type == JsonHashMapParser.Type.QUESTION) {
+            question = (String) map.get("Question");
+        }
+        else if (type == JsonHashMapParser.Type.SCORE) {
+            pendingScores.clear();
+            for (Map.Entry<String, ?> entry : map.entrySet()) {
+                pendingScores.put(entry.getKey(), ((Long) entry.getValue()).intValue());
+            }
+        }
+        return pendingScores;
+    }
+
+    /**
+     * Private method dispatches a decoded message like the listener of MainViewController.
+     * @param message is the decoded message.
+     * @return the map the result was stored in.
+     */
+    private Object dispatch(Message message) {
+        JsonHashMapParser.Type type = message.getType();
+        if (type == JsonHashMapParser.Type.QUESTION) {
+            question = message.getText("Question");
+        }
+        else if (type == JsonHashMapParser.Type.SCORE) {
+            pendingScores.clear();
+            for (int i = 0; i < message.size(); i++) {
+                pendingScores.put(message.getKey(i), (int) message.getNumber(i));
+            }
+        }
+        return pendingScores;
+    }
+
+    /**
+     * Main method to run the benchmarks from the command line.
+     * @param args are the optional regex which selects the benchmarks and the optional time of an iteration
+     *             in milliseconds.
+     */
+    public static void main(String[] args) {
+        try {
+            Pattern filter = Pattern.compile(args.length > 0 ? args[0] : "");
+            long iterationMillis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+            new ProtocolBenchmark().run(new Harness(5, 5, iterationMillis), filter);
+        } catch (Exception e) {
+            System.out.println("Benchmark failed: " + e);
+        }
+    }
+}
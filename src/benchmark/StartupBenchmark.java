@@ -0,0 +1,137 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmark of the cold start of the client GUI. Every run starts the client in a new JVM, which prints the time
+ * to its first frame and exits, so nothing is warm: no class is loaded, no code is compiled. The runs alternate
+ * between the view built in code and the view loaded from the FXML, so both see the same disk cache. For each view
+ * the benchmark reports the time from the launch of the JVM and from the start of the application to the first
+ * frame, as minimum, median and maximum in milliseconds.
+ * The new JVMs get the same Java, classpath and JVM options as the benchmark, so start it like the client, for
+ * example with the module path of JavaFX.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class StartupBenchmark {
+
+    /**
+     * Prefix of the line the client prints at its first frame, see Main.
+     */
+    private static final String FIRST_FRAME = "First frame:";
+
+    /**
+     * Ways of building the view, as values of the system property languagegame.view.
+     */
+    private static final String[] VIEWS = {"code", "fxml"};
+
+    /**
+     * Private variable that stores the command which starts a new JVM, without the main class.
+     */
+    private final List<String> java;
+
+    /**
+     * Private map that stores the measured times of every view, keyed by view and time.
+     */
+    private final Map<String, List<Long>> times = new LinkedHashMap<>();
+
+    /**
+     * Constructor for a new benchmark which starts the client like this JVM was started.
+     */
+    public StartupBenchmark() {
+        java = new ArrayList<>();
+        java.add(ProcessHandle.current().info().command().orElse("java"));
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // options of a debugger or a profiler would slow down every run
+            if (!argument.startsWith("-agentlib") && !argument.startsWith("-javaagent")) {
+                java.add(argument);
+            }
+        }
+        java.add("-cp");
+        java.add(System.getProperty("java.class.path"));
+        java.add("-Dlanguagegame.startup.benchmark=true");
+    }
+
+    /**
+     * Method starts the client the given number of times with every view and prints the results.
+     * @param runs is the number of runs of every view.
+     * @throws IOException if a JVM could not be started or did not report its first frame.
+     * @throws InterruptedException if the thread was interrupted while waiting for a JVM.
+     */
+    public void run(int runs) throws IOException, InterruptedException {
+        for (int i = 0; i < runs; i++) {
+            for (String view : VIEWS) {
+                runOnce(view);
+            }
+        }
+        System.out.printf("%-14s %8s %8s %8s%n", "first frame", "min ms", "p50 ms", "max ms");
+        for (Map.Entry<String, List<Long>> entry : times.entrySet()) {
+            List<Long> values = entry.getValue();
+            Collections.sort(values);
+            System.out.printf("%-14s %8d %8d %8d%n", entry.getKey(), values.get(0), values.get(values.size() / 2),
+                    values.get(values.size() - 1));
+        }
+    }
+
+    /**
+     * Private method starts the client once and records the times it prints.
+     * @param view is the way the view is built.
+     * @throws IOException if the JVM could not be started or did not report its first frame.
+     * @throws InterruptedException if the thread was interrupted while waiting for the JVM.
+     */
+    private void runOnce(String view) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(java);
+        command.add("-Dlanguagegame.view=" + view);
+        command.add("Main");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String report = null;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(FIRST_FRAME)) {
+                    report = line;
+                }
+            }
+        }
+        process.waitFor();
+        if (report == null) {
+            throw new IOException("The client with view " + view + " did not report its first frame!");
+        }
+        // the view which was really built, in case the client fell back to the FXML
+        String built = view;
+        for (String field : report.substring(FIRST_FRAME.length()).trim().split(" ")) {
+            String[] pair = field.split("=", 2);
+            if (pair[0].equals("view")) {
+                built = pair[1];
+            }
+            else {
+                times.computeIfAbsent(built + "." + pair[0], key -> new ArrayList<>()).add(Long.parseLong(pair[1]));
+            }
+        }
+    }
+
+    /**
+     * Main method to run the benchmark from the command line.
+     * @param args is the optional number of runs of every view, 10 by default.
+     */
+    public static void main(String[] args) {
+        try {
+            int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+            System.out.println("Starting the client " + runs + " times with every view: "
+                    + String.join(" ", Arrays.asList(VIEWS)));
+            new StartupBenchmark().run(runs);
+        } catch (Exception e) {
+            System.out.println("Benchmark failed: " + e);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package client;
+
+import lib.JsonMessageCodec;
+import lib.Message;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Single I/O thread of the client which serves any number of game sessions on one selector, so a client which
+ * plays, spectates several lobbies or watches a whole tournament needs neither a thread nor a pair of streams per
+ * connection. Every session keeps its own state in a {@link GameSession}; the loop only connects, reads and writes
+ * the channels and runs the tasks other threads hand in. Other threads never touch a channel or a selection key,
+ * they put a task into the queue and wake the selector up, so all state of the sessions is only used by the loop
+ * thread. The listeners of the sessions are called on the loop thread and must not block.
+ * Most clients use the {@link #shared()} loop, which runs until the JVM exits.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class ClientEventLoop implements Runnable, AutoCloseable {
+
+    /**
+     * Private selector of all channels of the sessions.
+     */
+    private final Selector selector;
+
+    /**
+     * Private queue of the tasks other threads have handed in.
+     */
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Private variable that stores the loop thread.
+     */
+    private final Thread thread;
+
+    /**
+     * Private variable to determine whether the loop should be running or should be stopped.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Private codec the received messages of all sessions are decoded with. Only used by the loop thread.
+     */
+    private final JsonMessageCodec json = new JsonMessageCodec();
+
+    /**
+     * Private holder the received messages of all sessions are decoded into. Only used by the loop thread.
+     */
+    private final Message holder = new Message();
+
+    /**
+     * Holder of the shared loop, which is only created when it is used the first time.
+     */
+    private static final class Shared {
+
+        /**
+         * The shared loop.
+         */
+        private static final ClientEventLoop LOOP = create();
+
+        /**
+         * Private method creates and starts the shared loop.
+         * @return the started loop.
+         */
+        private static ClientEventLoop create() {
+            try {
+                return new ClientEventLoop("ClientEventLoop").start();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Constructor for a new loop, which must be started.
+     * @param name is the name of the loop thread.
+     * @throws IOException if the selector could not be opened.
+     */
+    public ClientEventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Method returns the loop shared by all sessions of this client.
+     * @return the started shared loop.
+     */
+    public static ClientEventLoop shared() {
+        return Shared.LOOP;
+    }
+
+    /**
+     * Method starts the loop thread.
+     * @return this loop.
+     */
+    public ClientEventLoop start() {
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Method opens a session on a channel which is already connected, like the channels of the ConnectionManager.
+     * The session starts in the legacy mode. It is served as soon as {@link GameSession#start()} is called,
+     * so the caller can store the session before its listener is called the first time.
+     * @param channel is the connected channel, which is switched to the non-blocking mode.
+     * @param listener is the receiver of the messages and of the end of the session.
+     * @return the new session, which is not started yet.
+     * @throws IOException if the channel could not be switched to the non-blocking mode.
+     */
+    public GameSession open(SocketChannel channel, GameSession.Listener listener) throws IOException {
+        channel.configureBlocking(false);
+        return new GameSession(this, channel, listener);
+    }
+
+    /**
+     * Method connects to a server without blocking any thread and opens a session on the connection.
+     * If the returned future is completed by the caller before the connection is established, for example with
+     * a timeout, the connection is closed as soon as it is established or has failed.
+     * @param address is the address of the server.
+     * @param listener is the receiver of the messages and of the end of the session.
+     * @return a future which completes with the new session, or exceptionally if the connection failed.
+     */
+    public CompletableFuture<GameSession> connect(InetSocketAddress address, GameSession.Listener listener) {
+        CompletableFuture<GameSession> future = new CompletableFuture<>();
+        execute(() -> {
+            GameSession session = null;
+            try {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                session = new GameSession(this, channel, listener);
+                session.setConnectFuture(future);
+                channel.connect(address);
+                register(session);
+            } catch (IOException e) {
+                if (session != null) {
+                    session.close(e);
+                }
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Method runs the given task on the loop thread, after the tasks handed in before.
+     * @param task is the task, which must not block.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Method returns whether the calling thread is the loop thread.
+     * @return true, if the caller runs on the loop thread.
+     */
+    public boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Method returns the codec the received messages are decoded with on the loop thread.
+     * @return the codec of the loop thread.
+     */
+    JsonMessageCodec getJson() {
+        return json;
+    }
+
+    /**
+     * Method returns the holder the received messages are decoded into on the loop thread. A handler must copy
+     * what it keeps, because the holder is reused for the next message.
+     * @return the holder of the loop thread.
+     */
+    Message getHolder() {
+        return holder;
+    }
+
+    /**
+     * Method of the loop thread registers the channel of a new session with the selector.
+     * @param session is the new session.
+     */
+    void register(GameSession session) {
+        try {
+            session.register(selector);
+        } catch (IOException e) {
+            session.close(e);
+        }
+    }
+
+    /**
+     * Method of the loop thread: waits for ready channels and for tasks and serves them until the loop is closed.
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                runTasks();
+                if (tasks.isEmpty()) {
+                    selector.select();
+                }
+                else {
+                    // a task has handed in another task without waking the selector up
+                    selector.selectNow();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    serve(key);
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                System.out.println("Selector failed!");
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                ((GameSession) key.attachment()).close(new IOException("Client event loop is closed!"));
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.out.println("IOException occured!");
+            }
+        }
+    }
+
+    /**
+     * Private method of the loop thread serves one ready channel. A session which fails is closed, the other
+     * sessions go on.
+     * @param key is the selection key of the channel.
+     */
+    private void serve(SelectionKey key) {
+        GameSession session = (GameSession) key.attachment();
+        try {
+            if (key.isConnectable()) {
+                session.finishConnect();
+            }
+            if (key.isValid() && key.isReadable()) {
+                session.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                session.flush();
+            }
+        } catch (IOException e) {
+            session.close(e);
+        } catch (RuntimeException e) {
+            // a bug in a listener must not stop the sessions of the other listeners
+            System.out.println("Session failed: " + e);
+            session.close(new IOException(e));
+        }
+    }
+
+    /**
+     * Private method of the loop thread runs the tasks handed in so far.
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.out.println("Task failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * Method stops the loop and closes all its sessions.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+}
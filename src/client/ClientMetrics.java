@@ -0,0 +1,365 @@
+package client;
+
+import lib.Envelope;
+import lib.JsonHashMapParser;
+import lib.LatencyHistogram;
+import org.json.simple.JSONValue;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics of the client, which tell whether a game feels laggy because of the network, the decoding or the GUI.
+ * The client records for every message its type and size, how long decoding took and how long it took from
+ * reading the message until its handler ran on the JavaFX thread. It also records how long the player took from
+ * the question being shown until the answer was written and flushed, the round trip times of the heartbeat, how
+ * long the JavaFX event queue lags behind and how often the connection was resumed. Recording takes no lock and
+ * allocates nothing, so every thread may record.
+ * The metrics can be read with JMX and dumped periodically to a local file, as CSV or, for a file name ending
+ * with ".json", as one JSON object per line.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class ClientMetrics implements ClientMetricsMXBean {
+
+    /**
+     * Name the metrics are registered with at the platform MBean server.
+     */
+    public static final String OBJECT_NAME = "languagegame:type=ClientMetrics";
+
+    /**
+     * All message types, indexed by ordinal.
+     */
+    private static final JsonHashMapParser.Type[] TYPES = JsonHashMapParser.Type.values();
+
+    /**
+     * Private histogram of the time spent decoding a received message.
+     */
+    private final LatencyHistogram decode = new LatencyHistogram("decode");
+
+    /**
+     * Private histogram of the time from reading a message until the GUI has handled its event on the JavaFX thread.
+     */
+    private final LatencyHistogram readToFx = new LatencyHistogram("readToFx");
+
+    /**
+     * Private histogram of the round trip times of the heartbeat.
+     */
+    private final LatencyHistogram roundTrip = new LatencyHistogram("roundTrip");
+
+    /**
+     * Private histogram of the time a task waits in the JavaFX event queue.
+     */
+    private final LatencyHistogram fxLag = new LatencyHistogram("fxLag");
+
+    /**
+     * Private histogram of the time from showing a question until the answer was written and flushed.
+     */
+    private final LatencyHistogram questionToAnswer = new LatencyHistogram("questionToAnswer");
+
+    /**
+     * Private histogram of the time from sending the answer until it was written and flushed.
+     */
+    private final LatencyHistogram answerToFlush = new LatencyHistogram("answerToFlush");
+
+    /**
+     * Private list of all histograms in the order of the reports.
+     */
+    private final List<LatencyHistogram> latencies = List.of(decode, readToFx, roundTrip, fxLag,
+            questionToAnswer, answerToFlush);
+
+    /**
+     * Private array that stores the number of received messages, indexed by the ordinal of their type.
+     */
+    private final AtomicLongArray messagesIn = new AtomicLongArray(TYPES.length);
+
+    /**
+     * Private array that stores the number of received bytes, indexed by the ordinal of the message type.
+     */
+    private final AtomicLongArray bytesIn = new AtomicLongArray(TYPES.length);
+
+    /**
+     * Private array that stores the number of sent messages, indexed by the ordinal of their type.
+     */
+    private final AtomicLongArray messagesOut = new AtomicLongArray(TYPES.length);
+
+    /**
+     * Private array that stores the number of sent bytes, indexed by the ordinal of the message type.
+     */
+    private final AtomicLongArray bytesOut = new AtomicLongArray(TYPES.length);
+
+    /**
+     * Private variable that stores the number of successful reconnects.
+     */
+    private final AtomicLong reconnects = new AtomicLong();
+
+    /**
+     * Private variable to store, if the metrics are registered at the platform MBean server.
+     */
+    private volatile boolean registered;
+
+    /**
+     * Private scheduler of the probe of the JavaFX event queue and of the dumps.
+     */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ClientMetrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Method records a received message.
+     * @param type is the type of the message.
+     * @param bytes is the size of the message on the wire.
+     */
+    public void received(JsonHashMapParser.Type type, long bytes) {
+        messagesIn.incrementAndGet(type.ordinal());
+        bytesIn.addAndGet(type.ordinal(), bytes);
+    }
+
+    /**
+     * Method records a decoded message.
+     * @param envelope is the envelope of the decoded message.
+     */
+    public void decoded(Envelope envelope) {
+        decode.recordNanos(envelope.getDecodeNanos());
+    }
+
+    /**
+     * Method records an event which the GUI has handled on the JavaFX thread.
+     * @param event is the handled event.
+     */
+    public void delivered(GameEvent event) {
+        readToFx.recordNanos(System.nanoTime() - event.getReceivedNanos());
+    }
+
+    /**
+     * Method records a sent message.
+     * @param receipt is the receipt of the written message.
+     */
+    public void sent(Receipt receipt) {
+        JsonHashMapParser.Type type = receipt.getMessage().getType();
+        messagesOut.incrementAndGet(type.ordinal());
+        bytesOut.addAndGet(type.ordinal(), receipt.getBytes());
+    }
+
+    /**
+     * Method records a sent answer.
+     * @param shownNanos is the System.nanoTime when the question was shown.
+     * @param receipt is the receipt of the written answer.
+     */
+    public void answered(long shownNanos, Receipt receipt) {
+        questionToAnswer.recordNanos(receipt.getSentNanos() - shownNanos);
+        answerToFlush.recordNanos(receipt.getSentNanos() - receipt.getEnqueuedNanos());
+    }
+
+    /**
+     * Method records the round trip time of a PING/PONG exchange.
+     * @param millis is the round trip time in milliseconds.
+     */
+    public void roundTrip(long millis) {
+        roundTrip.record(millis * 1000);
+    }
+
+    /**
+     * Method records a successful reconnect.
+     */
+    public void reconnected() {
+        reconnects.incrementAndGet();
+    }
+
+    /**
+     * Method registers the metrics at the platform MBean server.
+     * @throws JMException if the metrics could not be registered, for example because they are registered already.
+     */
+    public void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        registered = true;
+    }
+
+    /**
+     * Method removes the metrics from the platform MBean server, if this instance has registered them, so other
+     * metrics can be registered in their place.
+     * @throws JMException if the metrics could not be removed.
+     */
+    public void unregister() throws JMException {
+        if (registered) {
+            registered = false;
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        }
+    }
+
+    /**
+     * Method starts to measure the lag of the JavaFX event queue: a task is put into the queue periodically and
+     * records how long it waited.
+     * @param fxExecutor is the executor of the JavaFX thread, normally Platform::runLater.
+     * @param periodMillis is the time in milliseconds between two measurements.
+     */
+    public void startFxProbe(Executor fxExecutor, long periodMillis) {
+        scheduler.scheduleAtFixedRate(() -> {
+            long posted = System.nanoTime();
+            fxExecutor.execute(() -> fxLag.recordNanos(System.nanoTime() - posted));
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Method starts to append the metrics periodically to a file.
+     * @param file is the file, which gets JSON lines if its name ends with ".json" and CSV rows otherwise.
+     * @param periodMillis is the time in milliseconds between two dumps.
+     */
+    public void startDump(Path file, long periodMillis) {
+        scheduler.scheduleAtFixedRate(() -> dump(file), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Method stops the probe and the dumps.
+     */
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Method appends the current metrics to a file. A new CSV file gets a header row first.
+     * @param file is the file, which gets a JSON line if its name ends with ".json" and a CSV row otherwise.
+     */
+    public void dump(Path file) {
+        Map<String, Object> snapshot = snapshot();
+        boolean json = file.getFileName().toString().endsWith(".json");
+        try {
+            boolean header = !json && (!Files.exists(file) || Files.size(file) == 0);
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                if (json) {
+                    out.write(JSONValue.toJSONString(snapshot));
+                }
+                else {
+                    if (header) {
+                        out.write(String.join(",", snapshot.keySet()));
+                        out.newLine();
+                    }
+                    StringBuilder row = new StringBuilder();
+                    for (Object value : snapshot.values()) {
+                        if (row.length() > 0) {
+                            row.append(',');
+                        }
+                        row.append(value);
+                    }
+                    out.write(row.toString());
+                }
+                out.newLine();
+            }
+        } catch (IOException e) {
+            System.out.println("Could not write metrics to " + file + "!");
+        }
+    }
+
+    /**
+     * Method returns all metrics in a flat map with a fixed order of keys, as they are dumped.
+     * @return the metrics, keyed by name.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("time", System.currentTimeMillis());
+        snapshot.put("reconnects", reconnects.get());
+        snapshot.putAll(getLatencies());
+        for (JsonHashMapParser.Type type : TYPES) {
+            int i = type.ordinal();
+            snapshot.put("in." + type.name() + ".messages", messagesIn.get(i));
+            snapshot.put("in." + type.name() + ".bytes", bytesIn.get(i));
+            snapshot.put("out." + type.name() + ".messages", messagesOut.get(i));
+            snapshot.put("out." + type.name() + ".bytes", bytesOut.get(i));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Method returns the number of successful reconnects after a lost connection.
+     * @return number of reconnects.
+     */
+    @Override
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    /**
+     * Method returns the number of received messages per message type.
+     * @return number of messages, keyed by type.
+     */
+    @Override
+    public Map<String, Long> getMessagesIn() {
+        return byType(messagesIn);
+    }
+
+    /**
+     * Method returns the number of sent messages per message type.
+     * @return number of messages, keyed by type.
+     */
+    @Override
+    public Map<String, Long> getMessagesOut() {
+        return byType(messagesOut);
+    }
+
+    /**
+     * Method returns the number of received bytes per message type, including the framing.
+     * @return number of bytes, keyed by type.
+     */
+    @Override
+    public Map<String, Long> getBytesIn() {
+        return byType(bytesIn);
+    }
+
+    /**
+     * Method returns the number of sent bytes per message type, including the framing.
+     * @return number of bytes, keyed by type.
+     */
+    @Override
+    public Map<String, Long> getBytesOut() {
+        return byType(bytesOut);
+    }
+
+    /**
+     * Method returns count, mean, median, 99th percentile and maximum of every latency in microseconds.
+     * @return the values, keyed by latency and value, for example "decode.p99".
+     */
+    @Override
+    public Map<String, Double> getLatencies() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (LatencyHistogram histogram : latencies) {
+            String name = histogram.getName();
+            values.put(name + ".count", (double) histogram.getCount());
+            values.put(name + ".mean", Math.round(histogram.getMean() * 10) / 10.0);
+            values.put(name + ".p50", (double) histogram.getValueAtPercentile(50));
+            values.put(name + ".p99", (double) histogram.getValueAtPercentile(99));
+            values.put(name + ".max", (double) histogram.getMax());
+        }
+        return values;
+    }
+
+    /**
+     * Private method copies counters into a map keyed by message type.
+     * @param counters are the counters, indexed by the ordinal of the type.
+     * @return the counters, keyed by the name of the type.
+     */
+    private static Map<String, Long> byType(AtomicLongArray counters) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (JsonHashMapParser.Type type : TYPES) {
+            values.put(type.name(), counters.get(type.ordinal()));
+        }
+        return values;
+    }
+}
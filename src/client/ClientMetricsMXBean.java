@@ -0,0 +1,47 @@
+package client;
+
+import java.util.Map;
+
+/**
+ * Management interface of the client metrics, which JMX clients like JConsole or VisualVM show under the
+ * name {@link ClientMetrics#OBJECT_NAME}. All latencies are in microseconds.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public interface ClientMetricsMXBean {
+
+    /**
+     * Method returns the number of successful reconnects after a lost connection.
+     * @return number of reconnects.
+     */
+    long getReconnects();
+
+    /**
+     * Method returns the number of received messages per message type.
+     * @return number of messages, keyed by type.
+     */
+    Map<String, Long> getMessagesIn();
+
+    /**
+     * Method returns the number of sent messages per message type.
+     * @return number of messages, keyed by type.
+     */
+    Map<String, Long> getMessagesOut();
+
+    /**
+     * Method returns the number of received bytes per message type, including the framing.
+     * @return number of bytes, keyed by type.
+     */
+    Map<String, Long> getBytesIn();
+
+    /**
+     * Method returns the number of sent bytes per message type, including the framing.
+     * @return number of bytes, keyed by type.
+     */
+    Map<String, Long> getBytesOut();
+
+    /**
+     * Method returns count, mean, median, 99th percentile and maximum of every latency.
+     * @return the values, keyed by latency and value, for example "decode.p99".
+     */
+    Map<String, Double> getLatencies();
+}
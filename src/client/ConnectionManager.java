@@ -0,0 +1,287 @@
+package client;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Opens the connection to a game server without blocking the JavaFX thread. The client may name several servers;
+ * every server is resolved to all its addresses, and the attempts race against each other in the style of
+ * Happy Eyeballs: the next address is tried after a short delay or as soon as an attempt has failed, and the first
+ * connection which is established wins while all others are closed. Addresses of IPv6 and IPv4 take turns, so a
+ * broken network of one family does not delay the other. The manager also computes the jittered backoff between
+ * the attempts to reconnect after a connection was lost.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class ConnectionManager {
+
+    /**
+     * Default time in milliseconds until all attempts of a connect are given up.
+     */
+    public static final int DEFAULT_TIMEOUT = 3000;
+
+    /**
+     * Default delay in milliseconds before the next address is tried, while the former attempts are still running.
+     */
+    public static final long DEFAULT_STAGGER = 250;
+
+    /**
+     * Backoff in milliseconds of the first reconnect attempt.
+     */
+    private static final long BACKOFF_BASE = 500;
+
+    /**
+     * Maximum backoff in milliseconds between two reconnect attempts.
+     */
+    private static final long BACKOFF_CAP = 10000;
+
+    /**
+     * Private variable that stores the time in milliseconds until all attempts of a connect are given up.
+     */
+    private final int timeoutMillis;
+
+    /**
+     * Private variable that stores the delay in milliseconds before the next address is tried.
+     */
+    private final long staggerMillis;
+
+    /**
+     * Private executor which runs the connects, so no caller has to wait for them.
+     */
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "ConnectionManager");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor for a new manager with the default timeout and delay.
+     */
+    public ConnectionManager() {
+        this(DEFAULT_TIMEOUT, DEFAULT_STAGGER);
+    }
+
+    /**
+     * Constructor for a new manager.
+     * @param timeoutMillis is the time in milliseconds until all attempts of a connect are given up.
+     * @param staggerMillis is the delay in milliseconds before the next address is tried.
+     */
+    public ConnectionManager(int timeoutMillis, long staggerMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.staggerMillis = staggerMillis;
+    }
+
+    /**
+     * Method parses a list of servers, separated by commas or spaces. A server is a host name or an address,
+     * optionally followed by a colon and a port; an IPv6 address with a port must be put in brackets.
+     * @param servers is the list of servers, for example "game1.example.org, 192.168.2.10:10002, [::1]:10001".
+     * @param defaultPort is the port of the servers without a port.
+     * @return the unresolved endpoints of the servers.
+     * @throws IllegalArgumentException if the list is empty or a port is invalid.
+     */
+    public static List<InetSocketAddress> parseEndpoints(String servers, int defaultPort) {
+        List<InetSocketAddress> endpoints = new ArrayList<>();
+        for (String server : servers.trim().split("[,\\s]+")) {
+            if (server.isEmpty()) {
+                continue;
+            }
+            String host = server;
+            int port = defaultPort;
+            if (server.startsWith("[")) {
+                int end = server.indexOf(']');
+                if (end < 0) {
+                    throw new IllegalArgumentException("Invalid server " + server + "!");
+                }
+                host = server.substring(1, end);
+                if (server.length() > end + 1) {
+                    port = parsePort(server.substring(end + 1), server);
+                }
+            }
+            else if (server.indexOf(':') >= 0 && server.indexOf(':') == server.lastIndexOf(':')) {
+                // exactly one colon separates the port, more colons are an IPv6 address without a port
+                host = server.substring(0, server.indexOf(':'));
+                port = parsePort(server.substring(server.indexOf(':')), server);
+            }
+            endpoints.add(InetSocketAddress.createUnresolved(host, port));
+        }
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("No server!");
+        }
+        return endpoints;
+    }
+
+    /**
+     * Private method parses the port part of a server.
+     * @param part is the port with its leading colon.
+     * @param server is the whole server for the error message.
+     * @return the port.
+     * @throws IllegalArgumentException if the port is invalid.
+     */
+    private static int parsePort(String part, String server) {
+        try {
+            int port = Integer.parseInt(part.substring(1));
+            if (part.charAt(0) == ':' && port > 0 && port <= 65535) {
+                return port;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid port of server " + server + "!");
+    }
+
+    /**
+     * Method returns the time to wait before a reconnect attempt: a random time up to an exponentially growing
+     * limit, so many clients which lost their connection at once don't reconnect at the same moment.
+     * @param attempt is the number of the attempt, starting with 0.
+     * @return the backoff in milliseconds.
+     */
+    public static long backoffMillis(int attempt) {
+        long limit = Math.min(BACKOFF_CAP, BACKOFF_BASE << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(limit / 2, limit + 1);
+    }
+
+    /**
+     * Method connects to the first server which answers, on a thread of the manager.
+     * @param endpoints are the endpoints of the servers in the order of preference.
+     * @return a future which completes with the connected blocking channel, or exceptionally if no server answered.
+     */
+    public CompletableFuture<SocketChannel> connect(List<InetSocketAddress> endpoints) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return connectNow(endpoints);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Method connects to the first server which answers and blocks until the connection is established.
+     * @param endpoints are the endpoints of the servers in the order of preference.
+     * @return the connected channel in blocking mode.
+     * @throws IOException if no server answered in time, the error of the last attempt.
+     */
+    public SocketChannel connectNow(List<InetSocketAddress> endpoints) throws IOException {
+        List<InetSocketAddress> addresses = resolve(endpoints);
+        List<SocketChannel> attempts = new ArrayList<>();
+        SocketChannel winner = null;
+        IOException last = null;
+        long deadline = now() + timeoutMillis;
+        try (Selector selector = Selector.open()) {
+            int next = 0;
+            long nextStart = now();
+            while (winner == null) {
+                long now = now();
+                if (next < addresses.size() && (now >= nextStart || selector.keys().isEmpty())) {
+                    // starts the next attempt
+                    SocketChannel channel = SocketChannel.open();
+                    attempts.add(channel);
+                    try {
+                        channel.configureBlocking(false);
+                        if (channel.connect(addresses.get(next++))) {
+                            winner = channel;
+                            break;
+                        }
+                        channel.register(selector, SelectionKey.OP_CONNECT);
+                        nextStart = now + staggerMillis;
+                    } catch (IOException e) {
+                        last = e;
+                        channel.close();
+                        continue;
+                    }
+                }
+                if (selector.keys().isEmpty() && next >= addresses.size()) {
+                    throw last != null ? last : new ConnectException("No server answered!");
+                }
+                if (now >= deadline) {
+                    throw new SocketTimeoutException("No server answered in time!");
+                }
+                long wakeUp = next < addresses.size() ? Math.min(nextStart, deadline) : deadline;
+                selector.select(Math.max(1, wakeUp - now));
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext() && winner == null) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    try {
+                        if (channel.finishConnect()) {
+                            winner = channel;
+                        }
+                    } catch (IOException e) {
+                        // this attempt failed, so the next one starts at once
+                        last = e;
+                        key.cancel();
+                        channel.close();
+                        nextStart = now();
+                    }
+                }
+            }
+        } finally {
+            for (SocketChannel channel : attempts) {
+                if (channel != winner) {
+                    channel.close();
+                }
+            }
+        }
+        // the selector is closed, so the channel can leave the non-blocking mode until a session registers it again
+        winner.configureBlocking(true);
+        return winner;
+    }
+
+    /**
+     * Private method resolves the endpoints to all their addresses, IPv6 and IPv4 addresses taking turns.
+     * @param endpoints are the endpoints of the servers in the order of preference.
+     * @return the resolved addresses in the order they are tried.
+     * @throws UnknownHostException if no endpoint could be resolved.
+     */
+    private static List<InetSocketAddress> resolve(List<InetSocketAddress> endpoints) throws UnknownHostException {
+        List<InetSocketAddress> v6 = new ArrayList<>();
+        List<InetSocketAddress> v4 = new ArrayList<>();
+        UnknownHostException last = null;
+        for (InetSocketAddress endpoint : endpoints) {
+            try {
+                for (InetAddress address : InetAddress.getAllByName(endpoint.getHostString())) {
+                    (address instanceof Inet6Address ? v6 : v4).add(new InetSocketAddress(address, endpoint.getPort()));
+                }
+            } catch (UnknownHostException e) {
+                last = e;
+            }
+        }
+        if (v6.isEmpty() && v4.isEmpty()) {
+            throw last != null ? last : new UnknownHostException("No server!");
+        }
+        List<InetSocketAddress> addresses = new ArrayList<>(v6.size() + v4.size());
+        for (int i = 0; i < Math.max(v6.size(), v4.size()); i++) {
+            if (i < v6.size()) {
+                addresses.add(v6.get(i));
+            }
+            if (i < v4.size()) {
+                addresses.add(v4.get(i));
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * Private method returns the current time for the deadlines.
+     * @return monotonic time in milliseconds.
+     */
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+}
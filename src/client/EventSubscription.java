@@ -0,0 +1,243 @@
+package client;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Subscription of one subscriber to the events of a {@link GameClient}. The events wait in a queue until the
+ * subscriber has requested them, and are delivered by the executor of the subscriber, in the order they were
+ * published, by at most one task at any time. While they wait, a newer event replaces or merges the older events
+ * it makes obsolete, see {@link GameEvent#conflate(GameEvent)}, so a slow subscriber, like a GUI whose thread
+ * is busy, gets the current state instead of a growing backlog, and never slows down the client or the other
+ * subscribers.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+final class EventSubscription implements Flow.Subscription {
+
+    /**
+     * Private variable that stores the subscriber.
+     */
+    private final Flow.Subscriber<? super GameEvent> subscriber;
+
+    /**
+     * Private variable that stores the executor which delivers the events, like Platform::runLater.
+     */
+    private final Executor executor;
+
+    /**
+     * Private list of the subscriptions of the client, which this subscription leaves when it is cancelled.
+     */
+    private final List<EventSubscription> subscriptions;
+
+    /**
+     * Private queue of the waiting events. Guarded by this.
+     */
+    private final ArrayDeque<GameEvent> waiting = new ArrayDeque<>();
+
+    /**
+     * Private variable that stores the number of requested events which were not delivered yet. Guarded by this.
+     */
+    private long demand;
+
+    /**
+     * Private variable to store, if a delivery is waiting in the executor or running. Guarded by this.
+     */
+    private boolean scheduled;
+
+    /**
+     * Private variable to store, if the subscription is cancelled or has ended. Guarded by this.
+     */
+    private boolean cancelled;
+
+    /**
+     * Private variable to store, if no more events are published. Guarded by this.
+     */
+    private boolean completed;
+
+    /**
+     * Private variable that stores the error the subscriber gets next, or null. Guarded by this.
+     */
+    private Throwable error;
+
+    /**
+     * Private variable that stores the number of events which were replaced before they were delivered.
+     * Guarded by this.
+     */
+    private long dropped;
+
+    /**
+     * Constructor for a new subscription.
+     * @param subscriber is the subscriber.
+     * @param executor is the executor which delivers the events.
+     * @param subscriptions is the list of the subscriptions of the client.
+     */
+    EventSubscription(Flow.Subscriber<? super GameEvent> subscriber, Executor executor,
+                      List<EventSubscription> subscriptions) {
+        this.subscriber = subscriber;
+        this.executor = executor;
+        this.subscriptions = subscriptions;
+    }
+
+    /**
+     * Method puts a published event into the queue, which replaces the waiting events it makes obsolete.
+     * @param event is the event.
+     */
+    void offer(GameEvent event) {
+        boolean schedule;
+        synchronized (this) {
+            if (cancelled || completed) {
+                return;
+            }
+            for (Iterator<GameEvent> it = waiting.iterator(); it.hasNext(); ) {
+                GameEvent merged = event.conflate(it.next());
+                if (merged != null) {
+                    it.remove();
+                    event = merged;
+                    dropped++;
+                }
+            }
+            waiting.add(event);
+            schedule = demand > 0 && !scheduled;
+            scheduled |= schedule;
+        }
+        if (schedule) {
+            schedule();
+        }
+    }
+
+    /**
+     * Method ends the subscription after the waiting events, because the client publishes no more events.
+     */
+    void complete() {
+        boolean schedule;
+        synchronized (this) {
+            if (cancelled || completed) {
+                return;
+            }
+            completed = true;
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule) {
+            schedule();
+        }
+    }
+
+    /**
+     * Method adds to the number of events the subscriber takes.
+     * @param n is the number of events, which must be positive; a subscriber which takes every event at once
+     *          requests Long.MAX_VALUE.
+     */
+    @Override
+    public void request(long n) {
+        boolean schedule;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            if (n <= 0) {
+                cancelled = true;
+                waiting.clear();
+                error = new IllegalArgumentException("Requested " + n + " events, but must request at least one!");
+            }
+            else {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            schedule = !scheduled && (error != null || completed || !waiting.isEmpty());
+            scheduled |= schedule;
+        }
+        if (schedule) {
+            schedule();
+        }
+        if (n <= 0) {
+            subscriptions.remove(this);
+        }
+    }
+
+    /**
+     * Method cancels the subscription, so the waiting events are dropped and no more events are delivered.
+     */
+    @Override
+    public void cancel() {
+        synchronized (this) {
+            cancelled = true;
+            waiting.clear();
+        }
+        subscriptions.remove(this);
+    }
+
+    /**
+     * Method returns the number of events which were replaced before they were delivered.
+     * @return number of dropped events.
+     */
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Private method hands the delivery to the executor. If the executor takes no more tasks, the subscription
+     * is cancelled.
+     */
+    private void schedule() {
+        try {
+            executor.execute(this::deliver);
+        } catch (RejectedExecutionException | IllegalStateException e) {
+            System.out.println("Subscriber can't take events: " + e);
+            cancel();
+        }
+    }
+
+    /**
+     * Private method of the executor delivers the waiting events as long as the subscriber requests them, and then
+     * the end of the subscription or an error. A subscriber which throws an exception is cancelled.
+     */
+    private void deliver() {
+        while (true) {
+            GameEvent event = null;
+            Throwable failure = null;
+            synchronized (this) {
+                if (error != null) {
+                    failure = error;
+                    error = null;
+                }
+                else if (cancelled) {
+                    scheduled = false;
+                    return;
+                }
+                else if (demand > 0 && !waiting.isEmpty()) {
+                    event = waiting.poll();
+                    if (demand != Long.MAX_VALUE) {
+                        demand--;
+                    }
+                }
+                else if (completed && waiting.isEmpty()) {
+                    // no delivery is scheduled after the end
+                    cancelled = true;
+                }
+                else {
+                    scheduled = false;
+                    return;
+                }
+            }
+            try {
+                if (failure != null) {
+                    subscriber.onError(failure);
+                    return;
+                }
+                if (event == null) {
+                    subscriber.onComplete();
+                    return;
+                }
+                subscriber.onNext(event);
+            } catch (RuntimeException e) {
+                System.out.println("Subscriber failed: " + e);
+                cancel();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,975 @@
+package client;
+
+import lib.ClockEstimator;
+import lib.DeflateCodec;
+import lib.Envelope;
+import lib.JsonHashMapParser;
+import lib.JsonMessageCodec;
+import lib.Message;
+import lib.MessageCodec;
+import lib.MessageDispatcher;
+import lib.MessageFormatException;
+import lib.PrefetchQueue;
+import lib.ScoreBoard;
+import lib.Transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless core of a client, which plays one game without a GUI. The client joins the game with the nickname
+ * handshake, switches its session to the framed mode, keeps the heartbeat running, resumes a lost connection,
+ * keeps the questions the server sends ahead of time and the sequence of the score changes, and publishes what
+ * happens as typed {@link GameEvent}s. Any number of subscribers, like the GUI, a bot or an observer, take the
+ * events at their own pace with the demand of their {@link Flow.Subscription}. Answers are sent without blocking.
+ * <p>
+ * All messages are decoded and handled on the thread of the {@link ClientEventLoop}, so thousands of clients share
+ * one thread and a few objects each, and no client depends on the speed of a subscriber.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class GameClient implements GameSession.Listener, Flow.Publisher<GameEvent>, AutoCloseable {
+
+    /**
+     * Time in milliseconds the client tries to reconnect after the connection was lost. The server keeps the
+     * place of the player a little longer.
+     */
+    public static final long RECONNECT_MILLIS = 25000;
+
+    /**
+     * Longest time in milliseconds a question waits for the start of its round, in case the clock of the server
+     * was estimated badly.
+     */
+    public static final long MAX_START_DELAY_MILLIS = 1000;
+
+    /**
+     * Private registry of the handlers of the messages the server sends, shared by all clients.
+     */
+    private static final MessageDispatcher<GameClient> DISPATCHER = createDispatcher();
+
+    /**
+     * Private loop which reads and writes the connection of the client.
+     */
+    private final ClientEventLoop loop;
+
+    /**
+     * Private metrics of the messages, or null if they are not measured.
+     */
+    private final ClientMetrics metrics;
+
+    /**
+     * Private manager which connects to the first answering server off the caller thread.
+     */
+    private final ConnectionManager connectionManager = new ConnectionManager();
+
+    /**
+     * Private list of the subscriptions to the events of the client.
+     */
+    private final List<EventSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Private variable that stores the session with the connected server, or null if the client is not in a game.
+     * Messages of a session which was replaced, because the player left the game or the client reconnected,
+     * are ignored.
+     */
+    private volatile GameSession session;
+
+    /**
+     * Private variable that stores the servers of the game, which are also used to reconnect.
+     */
+    private volatile List<InetSocketAddress> endpoints;
+
+    /**
+     * Private variable that stores the nickname of the player, which is also used to reconnect.
+     */
+    private volatile String nickname;
+
+    /**
+     * Private variable that stores the session token the server has sent, or null if there is none.
+     */
+    private volatile String sessionToken;
+
+    /**
+     * Private variable that stores the name of the codec offered for the framed mode, or null to stay in the
+     * legacy mode.
+     */
+    private volatile String codec = JsonMessageCodec.NAME;
+
+    /**
+     * Private variable to store, if the client offers to compress large messages.
+     */
+    private volatile boolean compression = true;
+
+    /**
+     * Private variable that stores the number of questions the client asks to get ahead of time.
+     */
+    private volatile int prefetchDepth;
+
+    /**
+     * Private variable to store, if the client asks for a session token, so a lost connection can be resumed.
+     */
+    private volatile boolean resume = true;
+
+    /**
+     * Private variable that stores the file or directory the received messages are recorded to, or null.
+     */
+    private volatile Path recording;
+
+    /**
+     * Private log the received messages of the current game are recorded to, or null.
+     */
+    private volatile SessionLog sessionLog;
+
+    /**
+     * Private heartbeat which tracks the round trip time and the clock of the server and finds a dead link.
+     * Only runs against servers which have sent a session token, because older servers don't answer a PING.
+     */
+    private final Heartbeat heartbeat = new Heartbeat(new ClockEstimator());
+
+    /**
+     * Private queue of the questions the server has sent ahead of time. Only used by the loop thread.
+     */
+    private final PrefetchQueue prefetchQueue = new PrefetchQueue();
+
+    /**
+     * Private variable that stores the sequence number of the last published score list, or -1 if it is not
+     * known. Only used by the loop thread.
+     */
+    private long scoreSequence = -1;
+
+    /**
+     * Private variable to store, if the client has asked the server for a full score list which has not arrived
+     * yet. Only used by the loop thread.
+     */
+    private boolean scoreSnapshotRequested;
+
+    /**
+     * Private variable that stores the System.nanoTime when the message which is handled was received.
+     * Only used by the loop thread.
+     */
+    private long receivedNanos;
+
+    /**
+     * Private variable that stores the System.nanoTime when the last question is shown, or 0.
+     */
+    private volatile long questionNanos;
+
+    /**
+     * Private variable that stores the number of received messages.
+     */
+    private volatile long messagesReceived;
+
+    /**
+     * Private variable that stores the number of sent messages.
+     */
+    private volatile long messagesSent;
+
+    /**
+     * Private variable to store, if the client is closed and publishes no more events.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructor for a new client on the shared loop, without metrics.
+     */
+    public GameClient() {
+        this(ClientEventLoop.shared(), null);
+    }
+
+    /**
+     * Constructor for a new client.
+     * @param loop is the loop which serves the connection of the client.
+     * @param metrics are the metrics of the messages, or null if they are not measured.
+     */
+    public GameClient(ClientEventLoop loop, ClientMetrics metrics) {
+        this.loop = loop;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Method sets the codec the client offers for the framed mode. Only takes effect for the next connect.
+     * @param codec is the name of the codec, or null to stay in the legacy mode like an old client.
+     * @return this client.
+     */
+    public GameClient setCodec(String codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    /**
+     * Method sets whether the client offers to compress large messages. Only takes effect for the next connect.
+     * @param compression is true, if the compression should be offered.
+     * @return this client.
+     */
+    public GameClient setCompression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * Method sets the number of questions the client asks to get ahead of time. Only takes effect for the next
+     * connect.
+     * @param prefetchDepth is the number of questions, or 0 to get every question when its round starts.
+     * @return this client.
+     */
+    public GameClient setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = prefetchDepth;
+        return this;
+    }
+
+    /**
+     * Method sets whether the client asks for a session token, which resumes a lost connection and starts the
+     * heartbeat. Only takes effect for the next connect.
+     * @param resume is true, if a lost connection should be resumed.
+     * @return this client.
+     */
+    public GameClient setResume(boolean resume) {
+        this.resume = resume;
+        return this;
+    }
+
+    /**
+     * Method sets where the received messages of every game are recorded to. Only takes effect for the next
+     * connect.
+     * @param recording is a file or a directory for a new file per game, or null to record nothing.
+     * @return this client.
+     */
+    public GameClient setRecording(Path recording) {
+        this.recording = recording;
+        return this;
+    }
+
+    /**
+     * Method subscribes to the events of the client, which are delivered on the common ForkJoinPool.
+     * @param subscriber is the subscriber.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super GameEvent> subscriber) {
+        subscribe(subscriber, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Method subscribes to the events of the client, which are delivered by the given executor. A subscriber which
+     * must run on a certain thread, like the GUI, takes Platform::runLater; a subscriber which never blocks may take
+     * Runnable::run, so it gets the events on the loop thread at once.
+     * @param subscriber is the subscriber.
+     * @param executor is the executor which delivers the events.
+     */
+    public void subscribe(Flow.Subscriber<? super GameEvent> subscriber, Executor executor) {
+        Objects.requireNonNull(subscriber);
+        Objects.requireNonNull(executor);
+        EventSubscription subscription = new EventSubscription(subscriber, executor, subscriptions);
+        subscriber.onSubscribe(subscription);
+        subscriptions.add(subscription);
+        if (closed) {
+            subscription.complete();
+            subscriptions.remove(subscription);
+        }
+    }
+
+    /**
+     * Method connects to the first server which answers and joins the game. The connection is opened off the
+     * caller thread.
+     * @param servers are the endpoints of the servers in the order of preference, which are also used to reconnect.
+     * @param nickname is the nickname of the player.
+     * @return a future which completes when the connection is established, or exceptionally if no server answered.
+     */
+    public CompletableFuture<Void> connect(List<InetSocketAddress> servers, String nickname) {
+        return connectionManager.connect(servers).thenAccept(channel -> {
+            try {
+                GameSession s = loop.open(channel, this);
+                connected(s, servers, nickname);
+                s.start();
+                join();
+            } catch (IOException e) {
+                closeQuietly(channel);
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Method connects to one server on the loop, without any thread waiting for the connect, and joins the game.
+     * This is the cheapest way to connect many clients at once.
+     * @param server is the endpoint of the server, which is also used to reconnect.
+     * @param nickname is the nickname of the player.
+     * @return a future which completes when the connection is established, or exceptionally if it failed or timed out.
+     */
+    public CompletableFuture<Void> connect(InetSocketAddress server, String nickname) {
+        return loop.connect(server, this)
+                .orTimeout(ConnectionManager.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS)
+                .thenAccept(s -> {
+                    // the session is started and this runs on the loop thread before the first read
+                    connected(s, List.of(server), nickname);
+                    join();
+                });
+    }
+
+    /**
+     * Private method makes a new session the session of the client, before it is served for the first time.
+     * @param s is the new session.
+     * @param servers are the endpoints of the servers.
+     * @param nickname is the nickname of the player.
+     */
+    private void connected(GameSession s, List<InetSocketAddress> servers, String nickname) {
+        GameSession old = session;
+        if (old != null) {
+            old.close();
+        }
+        this.endpoints = servers;
+        this.nickname = nickname;
+        this.sessionToken = null;
+        this.questionNanos = 0;
+        runInLoop(() -> {
+            prefetchQueue.clear();
+            scoreSequence = -1;
+            scoreSnapshotRequested = false;
+        });
+        session = s;
+        startRecording();
+        publish(new GameEvent.ConnectionChanged(System.nanoTime(), GameEvent.ConnectionChanged.State.CONNECTED, null));
+    }
+
+    /**
+     * Private method sends the NICKNAME message which joins the game with all offers of this client.
+     */
+    private void join() {
+        send(nicknameMessage(resume ? "" : null));
+    }
+
+    /**
+     * Method joins the game with another nickname, after the server has rejected the nickname. Only the nickname
+     * is sent, because the offers were answered already.
+     * @param nickname is the new nickname.
+     * @return a future which completes as soon as the message was written.
+     */
+    public CompletableFuture<Receipt> rejoin(String nickname) {
+        this.nickname = nickname;
+        Message m = new Message().clear(JsonHashMapParser.Type.NICKNAME);
+        m.putText("Nickname", nickname);
+        if (resume) {
+            m.putText(Transport.SESSION_KEY, "");
+        }
+        return send(m);
+    }
+
+    /**
+     * Private method creates the NICKNAME message which joins the game or resumes the place in the game.
+     * @param token is the session token to resume with, an empty String to ask for a token, or null.
+     * @return the NICKNAME message with all offers of this client.
+     */
+    private Message nicknameMessage(String token) {
+        Message m = new Message().clear(JsonHashMapParser.Type.NICKNAME);
+        m.putText("Nickname", nickname);
+        final String offered = codec;
+        if (offered != null) {
+            m.putText(Transport.HANDSHAKE_KEY, Transport.Mode.FRAMED.getModeString());
+            m.putText(MessageCodec.HANDSHAKE_KEY, offered);
+            if (compression) {
+                m.putText(DeflateCodec.HANDSHAKE_KEY, DeflateCodec.NAME);
+            }
+        }
+        m.putText(ScoreBoard.HANDSHAKE_KEY, "true");
+        if (prefetchDepth > 0) {
+            m.putText(PrefetchQueue.HANDSHAKE_KEY, String.valueOf(prefetchDepth));
+        }
+        if (token != null) {
+            m.putText(Transport.SESSION_KEY, token);
+        }
+        return m;
+    }
+
+    /**
+     * Method sends an answer to the current question. The time the player took is measured from when the last
+     * question is shown.
+     * @param answer is the answer.
+     * @return a future which completes as soon as the answer was written, or exceptionally if it could not be sent.
+     */
+    public CompletableFuture<Receipt> answer(String answer) {
+        return answer(answer, questionNanos);
+    }
+
+    /**
+     * Method sends an answer to the current question.
+     * @param answer is the answer.
+     * @param shownNanos is the System.nanoTime when the question was shown to the player, or 0 if it is not known.
+     * @return a future which completes as soon as the answer was written, or exceptionally if it could not be sent.
+     */
+    public CompletableFuture<Receipt> answer(String answer, long shownNanos) {
+        Message m = new Message().clear(JsonHashMapParser.Type.ANSWER);
+        m.putText("Answer", answer);
+        if (shownNanos != 0) {
+            // the server makes up for a slow network with the time the player took
+            m.putNumber(ClockEstimator.DURATION_KEY, Math.max(0, System.nanoTime() - shownNanos) / 1000000);
+        }
+        return send(m);
+    }
+
+    /**
+     * Method leaves the game. The client can join a game again afterwards.
+     */
+    public void leave() {
+        // closing the session, so the loop ignores everything the server still sends
+        GameSession s = session;
+        session = null;
+        sessionToken = null;
+        heartbeat.stop();
+        if (s != null) {
+            s.close();
+        }
+        stopRecording();
+    }
+
+    /**
+     * Method leaves the game and ends the subscriptions after their waiting events.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        leave();
+        for (EventSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+        subscriptions.clear();
+    }
+
+    /**
+     * Method returns whether the client is in a game.
+     * @return true, if the client has a session.
+     */
+    public boolean isConnected() {
+        return session != null;
+    }
+
+    /**
+     * Method returns the nickname of the player.
+     * @return the nickname, or null if the client has not joined a game yet.
+     */
+    public String getNickname() {
+        return nickname;
+    }
+
+    /**
+     * Method returns the estimator of the clock of the server.
+     * @return the estimator, which has no samples before the server has answered a PING.
+     */
+    public ClockEstimator getClock() {
+        return heartbeat.getClock();
+    }
+
+    /**
+     * Method returns the number of messages the client has received.
+     * @return number of messages.
+     */
+    public long getMessagesReceived() {
+        return messagesReceived;
+    }
+
+    /**
+     * Method returns the number of messages the client has sent.
+     * @return number of messages.
+     */
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    /**
+     * Method of the loop thread handles a message of the server.
+     * @param s is the session the message was received on.
+     * @param envelope is the envelope of the message, which only has its type decoded.
+     * @param bytes is the number of bytes the message took on the wire.
+     * @throws IOException if the session could not be upgraded.
+     */
+    @Override
+    public void onMessage(GameSession s, Envelope envelope, long bytes) throws IOException {
+        if (s != session) {
+            // the player has left the game or the client has reconnected, so the message is outdated
+            return;
+        }
+        final SessionLog log = sessionLog;
+        if (log != null) {
+            try {
+                log.append(envelope, bytes);
+            } catch (IOException e) {
+                System.out.println("Could not record the message!");
+                stopRecording();
+            }
+        }
+        deliver(envelope, bytes);
+    }
+
+    /**
+     * Private method of the loop thread decodes a received or played back message and hands it to its handler.
+     * @param envelope is the envelope of the message, which only has its type decoded.
+     * @param bytes is the number of bytes the message took on the wire.
+     * @throws IOException if the session could not be upgraded.
+     */
+    private void deliver(Envelope envelope, long bytes) throws IOException {
+        messagesReceived++;
+        if (metrics != null) {
+            metrics.received(envelope.getType(), bytes);
+        }
+        receivedNanos = envelope.getReceivedNanos();
+        try {
+            // a message of an unknown type is rejected by the dispatcher
+            Message m = envelope.decode(loop.getHolder(), loop.getJson());
+            if (metrics != null) {
+                metrics.decoded(envelope);
+            }
+            DISPATCHER.dispatch(this, m);
+        } catch (MessageFormatException e) {
+            System.out.println("ParseException occured!");
+        }
+    }
+
+    /**
+     * Method of the loop thread handles the end of a session. A lost connection is resumed, if the server has sent
+     * a session token.
+     * @param s is the closed session.
+     * @param cause is the reason, or null if the player has left the game.
+     */
+    @Override
+    public void onClosed(GameSession s, IOException cause) {
+        if (s != session || cause == null) {
+            return;
+        }
+        if (sessionToken != null) {
+            // the server keeps the place of the player, so the client connects again
+            publish(new GameEvent.ConnectionChanged(System.nanoTime(),
+                    GameEvent.ConnectionChanged.State.RECONNECTING, cause));
+            reconnect(s, System.nanoTime() + RECONNECT_MILLIS * 1000000, 0);
+            return;
+        }
+        if (cause instanceof EOFException) {
+            System.out.println("Server has closed the connection!");
+        }
+        else {
+            System.out.println("IOException occured!");
+        }
+        session = null;
+        heartbeat.stop();
+        stopRecording();
+        publish(new GameEvent.ConnectionChanged(System.nanoTime(), GameEvent.ConnectionChanged.State.CLOSED, cause));
+    }
+
+    /**
+     * Private method connects again after the connection of a session was lost and resumes the place in the game
+     * with the session token. The attempts wait a random, growing time, so the clients of a server which went down
+     * don't all reconnect at the same moment. No thread waits during the backoff, and the loop thread never waits
+     * for a connect.
+     * @param lost is the session whose connection was lost.
+     * @param giveUp is the System.nanoTime when the attempts are given up.
+     * @param attempt is the number of the attempt, starting with 0.
+     */
+    private void reconnect(GameSession lost, long giveUp, int attempt) {
+        CompletableFuture.runAsync(() -> { },
+                CompletableFuture.delayedExecutor(ConnectionManager.backoffMillis(attempt), TimeUnit.MILLISECONDS))
+                .thenCompose(v -> connectionManager.connect(endpoints))
+                .whenComplete((channel, e) -> {
+                    if (session != lost) {
+                        // the player has left the game in the meantime
+                        if (channel != null) {
+                            closeQuietly(channel);
+                        }
+                        return;
+                    }
+                    if (e == null) {
+                        try {
+                            GameSession s = loop.open(channel, this);
+                            session = s;
+                            heartbeat.reset();
+                            s.start();
+                            send(nicknameMessage(sessionToken));
+                            if (metrics != null) {
+                                metrics.reconnected();
+                            }
+                            publish(new GameEvent.ConnectionChanged(System.nanoTime(),
+                                    GameEvent.ConnectionChanged.State.CONNECTED, null));
+                            return;
+                        } catch (IOException ex) {
+                            closeQuietly(channel);
+                        }
+                    }
+                    System.out.println("Reconnect failed!");
+                    if (System.nanoTime() < giveUp) {
+                        reconnect(lost, giveUp, attempt + 1);
+                    }
+                    else {
+                        connectionLost(lost, e instanceof CompletionException && e.getCause() instanceof IOException
+                                ? (IOException) e.getCause() : new IOException("Reconnect failed!", e));
+                    }
+                });
+    }
+
+    /**
+     * Private method gives up a session whose connection could not be resumed, so the place in the game is lost.
+     * @param lost is the session whose connection was lost.
+     * @param cause is the reason of the last failed attempt.
+     */
+    private void connectionLost(GameSession lost, IOException cause) {
+        if (session != lost) {
+            return;
+        }
+        session = null;
+        sessionToken = null;
+        heartbeat.stop();
+        stopRecording();
+        publish(new GameEvent.ConnectionChanged(System.nanoTime(), GameEvent.ConnectionChanged.State.LOST, cause));
+    }
+
+    /**
+     * Private method starts to record the received messages of a new game, if recording is switched on.
+     */
+    private void startRecording() {
+        stopRecording();
+        final Path path = recording;
+        if (path != null) {
+            try {
+                sessionLog = SessionLog.create(path);
+            } catch (IOException e) {
+                System.out.println("Could not create the session log!");
+            }
+        }
+    }
+
+    /**
+     * Private method stops recording the received messages.
+     */
+    private void stopRecording() {
+        final SessionLog log = sessionLog;
+        sessionLog = null;
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.out.println("IOException occured!");
+            }
+        }
+    }
+
+    /**
+     * Method plays a recorded session log back without a server on the calling thread. The messages are handled on
+     * the loop thread and published like received messages, so a lag can be reproduced and the subscribers can be
+     * measured with recorded traffic. The client should not be in a game meanwhile.
+     * @param replay is the session log.
+     * @param speed is the factor of the playback speed, or 0 to play the messages back as fast as possible.
+     * @return the number of played back messages.
+     * @throws IOException if the log could not be read.
+     * @throws InterruptedException if the thread was interrupted while it waited for the next message.
+     */
+    public long replay(SessionReplay replay, double speed) throws IOException, InterruptedException {
+        return replay.replay((envelope, bytes) -> loop.execute(() -> {
+            try {
+                deliver(envelope, bytes);
+            } catch (IOException e) {
+                System.out.println("IOException occured!");
+            }
+        }), speed);
+    }
+
+    /**
+     * Private method runs a task on the loop thread, at once if the caller is the loop thread.
+     * @param task is the task.
+     */
+    private void runInLoop(Runnable task) {
+        if (loop.inLoop()) {
+            task.run();
+        }
+        else {
+            loop.execute(task);
+        }
+    }
+
+    /**
+     * Private method hands an event to all subscribers.
+     * @param event is the event.
+     */
+    private void publish(GameEvent event) {
+        for (EventSubscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * Private method to send a message to the server. The message is only handed to the session,
+     * so this method never blocks. The message must not be changed afterwards.
+     * @param m is the message which should be sent to the server.
+     * @return a future which completes as soon as the message was written.
+     */
+    private CompletableFuture<Receipt> send(Message m) {
+        final GameSession s = session;
+        if (s == null) {
+            // during a replay nothing is sent at all
+            return CompletableFuture.failedFuture(new IOException("Not connected!"));
+        }
+        return s.send(m).whenComplete((receipt, e) -> {
+            if (e == null) {
+                messagesSent++;
+                if (metrics != null) {
+                    metrics.sent(receipt);
+                }
+            }
+        });
+    }
+
+    /**
+     * Private method closes a channel which is not used.
+     * @param channel is the channel.
+     */
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("IOException occured!");
+        }
+    }
+
+    /**
+     * Private method creates the registry of the handlers of the messages the server sends.
+     * @return the dispatcher with a handler for every message type of the server.
+     */
+    private static MessageDispatcher<GameClient> createDispatcher() {
+        return new MessageDispatcher<GameClient>()
+                .register(JsonHashMapParser.Type.NICKNAME, GameClient::handleNickname)
+                .register(JsonHashMapParser.Type.PONG, GameClient::handlePong)
+                .register(JsonHashMapParser.Type.QUESTION, GameClient::handleQuestion)
+                .register(JsonHashMapParser.Type.PREFETCH, GameClient::handlePrefetch)
+                .register(JsonHashMapParser.Type.ROUND, GameClient::handleRound)
+                .register(JsonHashMapParser.Type.SCORE, GameClient::handleScore)
+                .register(JsonHashMapParser.Type.SCORE_DELTA, GameClient::handleScoreDelta)
+                .register(JsonHashMapParser.Type.ERROR, GameClient::handleError)
+                .register(JsonHashMapParser.Type.WINNER, GameClient::handleWinner)
+                .register(JsonHashMapParser.Type.LANGUAGE, GameClient::handleLanguage);
+    }
+
+    /**
+     * Private method handles the acknowledgement of the nickname handshake and the session token.
+     * @param message is the received NICKNAME message.
+     * @throws IOException if the session could not be upgraded, a MessageFormatException if the server names a
+     * transport mode this client does not know.
+     */
+    private void handleNickname(Message message) throws IOException {
+        final GameSession s = session;
+        if (s == null) {
+            // a played back handshake has no connection to upgrade
+            return;
+        }
+
+        // the server sends the session token after the player has joined
+        final String token = message.getText(Transport.SESSION_KEY);
+        if (token != null) {
+            sessionToken = token;
+            heartbeat.start(this::sendPing, this::heartbeatTimeout);
+        }
+
+        // the server has accepted the offered transport mode during the nickname handshake,
+        // so switch to the framed mode before the next message is read
+        final String mode = message.getText(Transport.HANDSHAKE_KEY);
+        if (mode == null || s.getMode() != Transport.Mode.OBJECT_STREAM) {
+            return;
+        }
+        final Transport.Mode accepted;
+        try {
+            accepted = Transport.Mode.fromString(mode);
+        } catch (IllegalArgumentException e) {
+            // the server has not switched to a mode this client knows, so the session stays in the legacy mode
+            throw new MessageFormatException("Unknown transport mode " + mode + "!");
+        }
+        if (accepted != Transport.Mode.FRAMED) {
+            return;
+        }
+        final String name = message.getText(MessageCodec.HANDSHAKE_KEY);
+        final MessageCodec codec;
+        try {
+            codec = MessageCodec.forName(name);
+        } catch (IllegalArgumentException e) {
+            // the server already writes frames of a codec this client can't decode
+            throw new IOException("Server accepted the unknown codec " + name + "!", e);
+        }
+        s.upgrade(DeflateCodec.wrap(codec, message.getText(DeflateCodec.HANDSHAKE_KEY), GameSession.MAX_MESSAGE_SIZE));
+    }
+
+    /**
+     * Private method handles the answer of the server to a PING.
+     * @param message is the received PONG message.
+     */
+    private void handlePong(Message message) {
+        if (session == null) {
+            // a played back PONG answers no PING of this client
+            return;
+        }
+        long roundTrip = heartbeat.received(message);
+        if (roundTrip >= 0 && metrics != null) {
+            metrics.roundTrip(roundTrip);
+        }
+    }
+
+    /**
+     * Private method of the heartbeat thread sends a PING on the current session. The heartbeat keeps running
+     * when the client reconnects, so the session is looked up for every PING.
+     * @param m is the PING message.
+     */
+    private void sendPing(Message m) {
+        send(m);
+    }
+
+    /**
+     * Private method of the heartbeat thread closes the session when the server has stopped answering,
+     * so the client notices the lost connection and reconnects.
+     */
+    private void heartbeatTimeout() {
+        System.out.println("Server does not answer!");
+        final GameSession s = session;
+        if (s != null) {
+            s.close(new SocketTimeoutException("Server does not answer!"));
+        }
+    }
+
+    /**
+     * Private method handles a new question, which is shown at once.
+     * @param message is the received QUESTION message.
+     * @throws MessageFormatException if the message has no question.
+     */
+    private void handleQuestion(Message message) throws MessageFormatException {
+        publishQuestion(message.requireText("Question"), receivedNanos);
+    }
+
+    /**
+     * Private method handles a question the server has sent ahead of time, which is kept until its round starts.
+     * @param message is the received PREFETCH message.
+     * @throws MessageFormatException if the message has no round or no question.
+     */
+    private void handlePrefetch(Message message) throws MessageFormatException {
+        final int roundIndex = message.indexOf(PrefetchQueue.ROUND_KEY);
+        if (roundIndex < 0 || !message.isNumber(roundIndex)) {
+            throw new MessageFormatException("PREFETCH message without " + PrefetchQueue.ROUND_KEY + "!");
+        }
+        prefetchQueue.offer(message.getNumber(roundIndex), message.requireText("Question"));
+    }
+
+    /**
+     * Private method handles the start of a round whose question was sent ahead of time. The question is shown at
+     * the start the server has announced, converted to the clock of this client, or at once if the clock of the
+     * server is not known or the start is over.
+     * @param message is the received ROUND message.
+     * @throws MessageFormatException if the message has no round.
+     */
+    private void handleRound(Message message) throws MessageFormatException {
+        final int roundIndex = message.indexOf(PrefetchQueue.ROUND_KEY);
+        if (roundIndex < 0 || !message.isNumber(roundIndex)) {
+            throw new MessageFormatException("ROUND message without " + PrefetchQueue.ROUND_KEY + "!");
+        }
+        final String s = prefetchQueue.activate(message.getNumber(roundIndex));
+        if (s == null) {
+            System.out.println("Question of round " + message.getNumber(roundIndex) + " is missing!");
+            return;
+        }
+        final int startIndex = message.indexOf(PrefetchQueue.START_KEY);
+        final ClockEstimator clock = heartbeat.getClock();
+        long delay = 0;
+        if (startIndex >= 0 && message.isNumber(startIndex) && clock.getSamples() > 0) {
+            delay = clock.toClientTime(message.getNumber(startIndex)) - receivedNanos / 1000000;
+        }
+        publishQuestion(s, receivedNanos + Math.max(0, Math.min(delay, MAX_START_DELAY_MILLIS)) * 1000000);
+    }
+
+    /**
+     * Private method publishes a new question.
+     * @param term is the term the players must translate.
+     * @param showAtNanos is the System.nanoTime when the question is shown.
+     */
+    private void publishQuestion(String term, long showAtNanos) {
+        questionNanos = showAtNanos;
+        publish(new GameEvent.Question(receivedNanos, term, showAtNanos));
+    }
+
+    /**
+     * Private method handles a full list of players and their points.
+     * @param message is the received SCORE message.
+     */
+    private void handleScore(Message message) {
+        // a new server also sends the sequence number of its last SCORE_DELTA
+        final int sequenceIndex = message.indexOf(ScoreBoard.SEQUENCE_KEY);
+        scoreSequence = sequenceIndex < 0 ? -1 : message.getNumber(sequenceIndex);
+        scoreSnapshotRequested = false;
+
+        // names and points are copied, because the message holder is reused for the next message
+        Map<String, Integer> scores = new LinkedHashMap<>();
+        for (int i = 0; i < message.size(); i++) {
+            if (i != sequenceIndex) {
+                scores.put(message.getKey(i), (int) message.getNumber(i));
+            }
+        }
+        publish(new GameEvent.ScoreUpdate(receivedNanos, scores, true));
+    }
+
+    /**
+     * Private method handles the changes of the list of players since the last SCORE_DELTA.
+     * @param message is the received SCORE_DELTA message.
+     */
+    private void handleScoreDelta(Message message) {
+        // the server has sent only the players which joined, left or got points
+        final int sequenceIndex = message.indexOf(ScoreBoard.SEQUENCE_KEY);
+        final long sequence = sequenceIndex < 0 ? -1 : message.getNumber(sequenceIndex);
+        if (scoreSequence < 0 || sequence != scoreSequence + 1) {
+            // a delta is missing, so the list of the subscribers can't be updated
+            // ask the server for a full list once and ignore the deltas until it has arrived
+            if (!scoreSnapshotRequested) {
+                scoreSnapshotRequested = true;
+                scoreSequence = -1;
+                send(new Message().clear(JsonHashMapParser.Type.SCORE));
+            }
+            return;
+        }
+        scoreSequence = sequence;
+
+        // a player without points has left the game
+        Map<String, Integer> changes = new LinkedHashMap<>();
+        for (int i = 0; i < message.size(); i++) {
+            if (i != sequenceIndex) {
+                changes.put(message.getKey(i), message.isNumber(i) ? (int) message.getNumber(i) : null);
+            }
+        }
+        publish(new GameEvent.ScoreUpdate(receivedNanos, changes, false));
+    }
+
+    /**
+     * Private method handles the error that the nickname is already used.
+     * @param message is the received ERROR message.
+     */
+    private void handleError(Message message) {
+        publish(new GameEvent.NicknameRejected(receivedNanos, nickname));
+    }
+
+    /**
+     * Private method handles the winner of the game.
+     * @param message is the received WINNER message.
+     * @throws MessageFormatException if the message has no winner.
+     */
+    private void handleWinner(Message message) throws MessageFormatException {
+        publish(new GameEvent.Winner(receivedNanos, message.requireText("Winner")));
+    }
+
+    /**
+     * Private method handles the language the questions must be translated to.
+     * @param message is the received LANGUAGE message.
+     * @throws MessageFormatException if the message has no language.
+     */
+    private void handleLanguage(Message message) throws MessageFormatException {
+        publish(new GameEvent.Language(receivedNanos, message.requireText("Language")));
+    }
+}
@@ -0,0 +1,339 @@
+package client;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Event of a game, which a {@link GameClient} publishes to its subscribers. Events which carry a whole state, like
+ * the current question or the language, replace an older event of their kind which a slow subscriber has not taken
+ * yet, and score updates are merged; all other events are always delivered. Events never change.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public abstract class GameEvent {
+
+    /**
+     * Private variable that stores the System.nanoTime when the message of the event was received.
+     */
+    private final long receivedNanos;
+
+    /**
+     * Constructor for a new event.
+     * @param receivedNanos is the System.nanoTime when the message of the event was received.
+     */
+    GameEvent(long receivedNanos) {
+        this.receivedNanos = receivedNanos;
+    }
+
+    /**
+     * Method returns when the message of the event was received.
+     * @return the System.nanoTime when the message was received.
+     */
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    /**
+     * Method combines this event with an older event a subscriber has not taken yet.
+     * @param older is the older event.
+     * @return the event which replaces both, or null if both must be delivered.
+     */
+    GameEvent conflate(GameEvent older) {
+        return null;
+    }
+
+    /**
+     * Event of a new question, which the players must translate.
+     */
+    public static final class Question extends GameEvent {
+
+        /**
+         * Private variable that stores the term.
+         */
+        private final String term;
+
+        /**
+         * Private variable that stores the System.nanoTime when the question is shown.
+         */
+        private final long showAtNanos;
+
+        /**
+         * Constructor for a new question.
+         * @param receivedNanos is the System.nanoTime when the message was received.
+         * @param term is the term the players must translate.
+         * @param showAtNanos is the System.nanoTime when the question is shown.
+         */
+        public Question(long receivedNanos, String term, long showAtNanos) {
+            super(receivedNanos);
+            this.term = term;
+            this.showAtNanos = showAtNanos;
+        }
+
+        /**
+         * Method returns the term the players must translate.
+         * @return the term.
+         */
+        public String getTerm() {
+            return term;
+        }
+
+        /**
+         * Method returns when the question is shown. A question the server has sent ahead of time is shown at the
+         * start of its round, which may be a little later than the event is published.
+         * @return the System.nanoTime when the question is shown.
+         */
+        public long getShowAtNanos() {
+            return showAtNanos;
+        }
+
+        /**
+         * Method replaces an older question.
+         * @param older is the older event.
+         * @return this question, or null.
+         */
+        @Override
+        GameEvent conflate(GameEvent older) {
+            return older instanceof Question ? this : null;
+        }
+    }
+
+    /**
+     * Event of the language the questions must be translated to.
+     */
+    public static final class Language extends GameEvent {
+
+        /**
+         * Private variable that stores the language.
+         */
+        private final String language;
+
+        /**
+         * Constructor for a new language.
+         * @param receivedNanos is the System.nanoTime when the message was received.
+         * @param language is the language.
+         */
+        public Language(long receivedNanos, String language) {
+            super(receivedNanos);
+            this.language = language;
+        }
+
+        /**
+         * Method returns the language the questions must be translated to.
+         * @return the language.
+         */
+        public String getLanguage() {
+            return language;
+        }
+
+        /**
+         * Method replaces an older language.
+         * @param older is the older event.
+         * @return this language, or null.
+         */
+        @Override
+        GameEvent conflate(GameEvent older) {
+            return older instanceof Language ? this : null;
+        }
+    }
+
+    /**
+     * Event of changed points: the new points of the players, or null for a player who has left the game.
+     * A complete list replaces the list of the subscriber.
+     */
+    public static final class ScoreUpdate extends GameEvent {
+
+        /**
+         * Private map that stores the changes in the order the server sent them.
+         */
+        private final Map<String, Integer> changes;
+
+        /**
+         * Private variable to store, if the changes are a complete list.
+         */
+        private final boolean replaceAll;
+
+        /**
+         * Constructor for a new update.
+         * @param receivedNanos is the System.nanoTime when the message was received.
+         * @param changes are the new points of the players, or null for a player who has left, which must not be
+         *                changed afterwards.
+         * @param replaceAll is true, if the changes are a complete list.
+         */
+        public ScoreUpdate(long receivedNanos, Map<String, Integer> changes, boolean replaceAll) {
+            super(receivedNanos);
+            this.changes = Collections.unmodifiableMap(changes);
+            this.replaceAll = replaceAll;
+        }
+
+        /**
+         * Method returns the changes.
+         * @return the new points of the players, or null for a player who has left the game.
+         */
+        public Map<String, Integer> getChanges() {
+            return changes;
+        }
+
+        /**
+         * Method returns whether the changes are a complete list which replaces the list of the subscriber.
+         * @return true, if the changes are a complete list.
+         */
+        public boolean isReplaceAll() {
+            return replaceAll;
+        }
+
+        /**
+         * Method merges this update into an older update. A complete list replaces the older update.
+         * @param older is the older event.
+         * @return the merged update, or null.
+         */
+        @Override
+        GameEvent conflate(GameEvent older) {
+            if (!(older instanceof ScoreUpdate)) {
+                return null;
+            }
+            if (replaceAll) {
+                return this;
+            }
+            ScoreUpdate o = (ScoreUpdate) older;
+            Map<String, Integer> merged = new LinkedHashMap<>(o.changes);
+            for (Map.Entry<String, Integer> change : changes.entrySet()) {
+                if (o.replaceAll && change.getValue() == null) {
+                    // a complete list has no player who has left
+                    merged.remove(change.getKey());
+                }
+                else {
+                    merged.put(change.getKey(), change.getValue());
+                }
+            }
+            return new ScoreUpdate(o.getReceivedNanos(), merged, o.replaceAll);
+        }
+    }
+
+    /**
+     * Event of the end of a game.
+     */
+    public static final class Winner extends GameEvent {
+
+        /**
+         * Private variable that stores the nickname of the winner.
+         */
+        private final String nickname;
+
+        /**
+         * Constructor for a new winner.
+         * @param receivedNanos is the System.nanoTime when the message was received.
+         * @param nickname is the nickname of the winner.
+         */
+        public Winner(long receivedNanos, String nickname) {
+            super(receivedNanos);
+            this.nickname = nickname;
+        }
+
+        /**
+         * Method returns the nickname of the winner.
+         * @return the nickname.
+         */
+        public String getNickname() {
+            return nickname;
+        }
+    }
+
+    /**
+     * Event of a nickname which another player already uses, so the player must join with another nickname.
+     */
+    public static final class NicknameRejected extends GameEvent {
+
+        /**
+         * Private variable that stores the rejected nickname.
+         */
+        private final String nickname;
+
+        /**
+         * Constructor for a new rejection.
+         * @param receivedNanos is the System.nanoTime when the message was received.
+         * @param nickname is the rejected nickname.
+         */
+        public NicknameRejected(long receivedNanos, String nickname) {
+            super(receivedNanos);
+            this.nickname = nickname;
+        }
+
+        /**
+         * Method returns the rejected nickname.
+         * @return the nickname.
+         */
+        public String getNickname() {
+            return nickname;
+        }
+    }
+
+    /**
+     * Event of a changed connection to the server.
+     */
+    public static final class ConnectionChanged extends GameEvent {
+
+        /**
+         * Enum class for the states of the connection.
+         */
+        public enum State {
+            /**
+             * Enum marks an established connection, also after a reconnect.
+             */
+            CONNECTED,
+
+            /**
+             * Enum marks a lost connection, which the client tries to resume.
+             */
+            RECONNECTING,
+
+            /**
+             * Enum marks a lost connection, which could not be resumed, so the place in the game is lost.
+             */
+            LOST,
+
+            /**
+             * Enum marks a connection the server has closed or which broke, without a session to resume.
+             */
+            CLOSED
+        }
+
+        /**
+         * Private variable that stores the new state.
+         */
+        private final State state;
+
+        /**
+         * Private variable that stores the reason of a lost or closed connection, or null.
+         */
+        private final IOException cause;
+
+        /**
+         * Constructor for a new change.
+         * @param receivedNanos is the System.nanoTime when the connection changed.
+         * @param state is the new state.
+         * @param cause is the reason of a lost or closed connection, or null.
+         */
+        public ConnectionChanged(long receivedNanos, State state, IOException cause) {
+            super(receivedNanos);
+            this.state = state;
+            this.cause = cause;
+        }
+
+        /**
+         * Method returns the new state of the connection.
+         * @return the state.
+         */
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * Method returns the reason of a lost or closed connection.
+         * @return the reason, or null.
+         */
+        public IOException getCause() {
+            return cause;
+        }
+    }
+}
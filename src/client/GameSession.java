@@ -0,0 +1,604 @@
+package client;
+
+import lib.Envelope;
+import lib.JsonHashMapParser;
+import lib.JsonMessageCodec;
+import lib.LegacyFraming;
+import lib.Message;
+import lib.MessageCodec;
+import lib.MessageFormatException;
+import lib.Transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * State of one connection of the client to a game server, served by a {@link ClientEventLoop}. A session reads and
+ * writes its channel without blocking, like the ClientConnection of the server: it starts in the legacy mode,
+ * writes the header of the object stream and reads the header the server writes, and its listener switches it to
+ * the framed mode with {@link #upgrade(MessageCodec)} when the server accepts the offer. Every received message
+ * is handed to the listener as an envelope, which only has its type decoded.
+ * Messages may be sent from any thread: they are encoded and written by the loop thread in the order they were
+ * sent, and the future of every message completes when it was written. All other state is only used by the loop
+ * thread, so no session needs a thread of its own.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class GameSession {
+
+    /**
+     * Maximum number of bytes of an incoming message, the largest frame of the framed mode.
+     */
+    public static final int MAX_MESSAGE_SIZE = Transport.MAX_FRAME_SIZE;
+
+    /**
+     * Number of messages which may wait to be written.
+     */
+    public static final int QUEUE_CAPACITY = 64;
+
+    /**
+     * Initial size of the read buffer.
+     */
+    private static final int INITIAL_READ_SIZE = 1024;
+
+    /**
+     * Interface for the receiver of the messages of a session. Its methods are called on the loop thread
+     * and must not block.
+     */
+    public interface Listener {
+
+        /**
+         * Method handles one received message.
+         * @param session is the session the message was received on.
+         * @param envelope is the envelope of the message.
+         * @param bytes is the number of bytes the message took on the wire, including the framing.
+         * @throws IOException if the session must be closed.
+         */
+        void onMessage(GameSession session, Envelope envelope, long bytes) throws IOException;
+
+        /**
+         * Method handles the end of a session. It is called once, also for a session which was never connected.
+         * @param session is the closed session.
+         * @param cause is the reason, like an EOFException if the server has closed the connection,
+         *              or null if the session was closed with {@link #close()}.
+         */
+        void onClosed(GameSession session, IOException cause);
+    }
+
+    /**
+     * Private variable that stores the loop which serves this session.
+     */
+    private final ClientEventLoop loop;
+
+    /**
+     * Private variable that stores the non-blocking channel of the session.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Private variable that stores the receiver of the messages.
+     */
+    private final Listener listener;
+
+    /**
+     * Private variable that stores the selection key of the channel, or null if it is not registered yet.
+     */
+    private SelectionKey key;
+
+    /**
+     * Private future of a session opened by ClientEventLoop.connect, or null.
+     */
+    private CompletableFuture<GameSession> connectFuture;
+
+    /**
+     * Private buffer in write mode the incoming bytes are read into.
+     */
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_SIZE);
+
+    /**
+     * Private queue of the encoded messages which wait to be written.
+     */
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+
+    /**
+     * Private variable that stores the mode of the session.
+     */
+    private volatile Transport.Mode mode = Transport.Mode.OBJECT_STREAM;
+
+    /**
+     * Private variable to store, if the header of the legacy stream of the server was read.
+     */
+    private boolean legacyHeaderRead;
+
+    /**
+     * Private codec for the legacy mode, which always carries JSON.
+     */
+    private final JsonMessageCodec json = new JsonMessageCodec();
+
+    /**
+     * Private codec for the framed mode.
+     */
+    private MessageCodec codec = json;
+
+    /**
+     * Private reusable array for decoding legacy Strings.
+     */
+    private char[] chars = new char[INITIAL_READ_SIZE];
+
+    /**
+     * Private list of the Strings of the legacy stream in the order of their handles, for TC_REFERENCE. It is
+     * emptied by every TC_RESET and, like the handle table of an ObjectInputStream, otherwise grows with the stream.
+     * A String which was no valid modified UTF-8 is stored as null.
+     */
+    private final ArrayList<String> handles = new ArrayList<>();
+
+    /**
+     * Private reusable buffer messages are encoded into.
+     */
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(INITIAL_READ_SIZE);
+
+    /**
+     * Private variable that stores the number of bytes written so far.
+     */
+    private volatile long bytesSent;
+
+    /**
+     * Private variable that stores the number of bytes consumed so far.
+     */
+    private volatile long bytesReceived;
+
+    /**
+     * Private variable to store, if the session is closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructor for a new session. Queues the header of the legacy stream, because the server waits for it
+     * before it can read the first message.
+     * @param loop is the loop which serves the session.
+     * @param channel is the non-blocking channel.
+     * @param listener is the receiver of the messages.
+     */
+    GameSession(ClientEventLoop loop, SocketChannel channel, Listener listener) {
+        this.loop = loop;
+        this.channel = channel;
+        this.listener = listener;
+        ByteBuffer header = ByteBuffer.allocate(LegacyFraming.HEADER_SIZE);
+        LegacyFraming.putHeader(header);
+        header.flip();
+        pending.add(new Pending(header, null));
+    }
+
+    /**
+     * Method starts to serve a session opened with ClientEventLoop.open. The messages sent before are written
+     * as soon as the session is served.
+     */
+    public void start() {
+        loop.execute(() -> loop.register(this));
+    }
+
+    /**
+     * Method sends a message to the server without blocking. The message must not be changed afterwards.
+     * @param message is the message to send.
+     * @return a future which completes as soon as the message was written, or exceptionally
+     * if too many messages wait or the session is closed.
+     */
+    public CompletableFuture<Receipt> send(Message message) {
+        Receipt receipt = new Receipt(message, System.nanoTime());
+        if (closed) {
+            receipt.fail(new IOException("Session is closed!"));
+        }
+        else {
+            loop.execute(() -> enqueue(receipt));
+        }
+        return receipt.getFuture();
+    }
+
+    /**
+     * Method switches this session to the framed mode. Must be called by the listener on the loop thread, when it
+     * handles the acknowledgement of the handshake, so the next message is already read in the framed mode.
+     * @param codec is the codec agreed on for the framed mode.
+     */
+    public void upgrade(MessageCodec codec) {
+        if (!loop.inLoop()) {
+            throw new IllegalStateException("Session must be upgraded on the loop thread!");
+        }
+        this.mode = Transport.Mode.FRAMED;
+        this.codec = codec;
+    }
+
+    /**
+     * Method closes the session. The listener gets no cause, so it knows that the session was closed on purpose.
+     */
+    public void close() {
+        close(null);
+    }
+
+    /**
+     * Method closes the session, because of the given reason. May be called from any thread; the session is
+     * closed by the loop thread after the messages sent before were handed to it.
+     * @param cause is the reason the listener gets, or null if the session was closed on purpose.
+     */
+    public void close(IOException cause) {
+        if (!loop.inLoop()) {
+            loop.execute(() -> close(cause));
+            return;
+        }
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("IOException occured!");
+        }
+        codec.release();
+        Pending p;
+        while ((p = pending.poll()) != null) {
+            if (p.receipt != null) {
+                p.receipt.fail(new IOException("Session is closed!"));
+            }
+        }
+        if (connectFuture != null) {
+            connectFuture.completeExceptionally(cause != null ? cause : new IOException("Session is closed!"));
+        }
+        listener.onClosed(this, cause);
+    }
+
+    /**
+     * Method returns whether the session is closed.
+     * @return true, if the session is closed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Method returns the mode of this session.
+     * @return the transport mode.
+     */
+    public Transport.Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Method returns the number of bytes this session has written so far, including the framing.
+     * @return number of bytes sent.
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Method returns the number of bytes this session has consumed so far, including the framing.
+     * @return number of bytes received.
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Method sets the future ClientEventLoop.connect completes when the connection is established.
+     * @param connectFuture is the future.
+     */
+    void setConnectFuture(CompletableFuture<GameSession> connectFuture) {
+        this.connectFuture = connectFuture;
+    }
+
+    /**
+     * Method of the loop thread registers the channel with the selector of the loop.
+     * @param selector is the selector of the loop.
+     * @throws IOException if the channel could not be registered.
+     */
+    void register(Selector selector) throws IOException {
+        if (closed) {
+            return;
+        }
+        boolean connected = channel.isConnected();
+        key = channel.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+        if (connected) {
+            connected();
+        }
+    }
+
+    /**
+     * Method of the loop thread finishes a connect which was started without blocking.
+     * @throws IOException if the connection could not be established.
+     */
+    void finishConnect() throws IOException {
+        if (channel.finishConnect()) {
+            key.interestOps(SelectionKey.OP_READ);
+            connected();
+        }
+    }
+
+    /**
+     * Private method of the loop thread writes the messages sent so far and completes the future of a connect.
+     * @throws IOException if writing failed.
+     */
+    private void connected() throws IOException {
+        flush();
+        if (connectFuture != null && !connectFuture.complete(this)) {
+            // the caller has given up before the connection was established
+            close();
+        }
+    }
+
+    /**
+     * Private method of the loop thread encodes a message in the mode of this session and queues it.
+     * @param receipt is the receipt of the message.
+     */
+    private void enqueue(Receipt receipt) {
+        if (closed) {
+            receipt.fail(new IOException("Session is closed!"));
+            return;
+        }
+        if (pending.size() >= QUEUE_CAPACITY) {
+            receipt.fail(new IOException("Outbound queue is full!"));
+            return;
+        }
+        encodeBuffer.clear();
+        if (mode == Transport.Mode.FRAMED) {
+            encodeBuffer.position(Transport.HEADER_SIZE);
+            encodeBuffer = codec.encode(receipt.getMessage(), encodeBuffer);
+            encodeBuffer.putInt(0, encodeBuffer.position() - Transport.HEADER_SIZE);
+        }
+        else {
+            String s = json.toJsonString(receipt.getMessage());
+            long length = LegacyFraming.objectLength(s);
+            if (encodeBuffer.capacity() < length) {
+                encodeBuffer = ByteBuffer.allocate((int) length);
+            }
+            LegacyFraming.putString(encodeBuffer, s);
+        }
+        encodeBuffer.flip();
+        ByteBuffer copy = ByteBuffer.allocate(encodeBuffer.remaining());
+        copy.put(encodeBuffer).flip();
+        pending.add(new Pending(copy, receipt));
+        try {
+            flush();
+        } catch (IOException e) {
+            close(e);
+        }
+    }
+
+    /**
+     * Method of the loop thread writes as many waiting bytes as the channel takes without blocking.
+     * @throws IOException if writing failed.
+     */
+    void flush() throws IOException {
+        if (key == null || !channel.isConnected()) {
+            // the bytes are written as soon as the connection is established
+            return;
+        }
+        Pending p;
+        while ((p = pending.peek()) != null) {
+            bytesSent += channel.write(p.buffer);
+            if (p.buffer.hasRemaining()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            pending.poll();
+            if (p.receipt != null) {
+                p.receipt.complete(p.buffer.limit());
+            }
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Method of the loop thread reads the available bytes and hands every complete message to the listener.
+     * @throws IOException if the connection was closed or broke the protocol.
+     */
+    void read() throws IOException {
+        if (channel.read(readBuffer) < 0) {
+            throw new EOFException("Server has closed the connection!");
+        }
+        readBuffer.flip();
+        try {
+            while (!closed) {
+                if (mode == Transport.Mode.OBJECT_STREAM && !legacyHeaderRead) {
+                    if (!readLegacyHeader()) {
+                        break;
+                    }
+                }
+                int start = readBuffer.position();
+                Envelope envelope;
+                try {
+                    envelope = mode == Transport.Mode.FRAMED ? readFrame() : readLegacy();
+                } catch (MessageFormatException e) {
+                    if (mode == Transport.Mode.FRAMED && !codec.isStateless()) {
+                        // the codec may have changed its state for the broken frame, so later frames can't be trusted
+                        throw new IOException("Broken frame of the server: " + e.getMessage(), e);
+                    }
+                    // the message is skipped, the connection is still intact
+                    bytesReceived += readBuffer.position() - start;
+                    System.out.println("ParseException occured!");
+                    continue;
+                }
+                if (envelope == null) {
+                    readBuffer.position(start);
+                    break;
+                }
+                long bytes = readBuffer.position() - start;
+                bytesReceived += bytes;
+                listener.onMessage(this, envelope, bytes);
+            }
+        } finally {
+            readBuffer.compact();
+        }
+        if (!readBuffer.hasRemaining()) {
+            if (readBuffer.capacity() >= MAX_MESSAGE_SIZE + Transport.HEADER_SIZE + 8) {
+                throw new IOException("Message of the server is too long!");
+            }
+            ByteBuffer bigger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+            readBuffer.flip();
+            bigger.put(readBuffer);
+            readBuffer = bigger;
+        }
+    }
+
+    /**
+     * Private method decodes the type of the next frame of the framed mode. A JSON frame is copied into the
+     * envelope, a frame of another codec is decoded into a new message.
+     * @return the envelope, or null if more bytes are needed.
+     * @throws IOException if the frame is invalid.
+     */
+    private Envelope readFrame() throws IOException {
+        if (readBuffer.remaining() < Transport.HEADER_SIZE) {
+            return null;
+        }
+        int length = readBuffer.getInt(readBuffer.position());
+        if (length < 0 || length > MAX_MESSAGE_SIZE) {
+            throw new IOException("Invalid frame length " + length + "!");
+        }
+        if (readBuffer.remaining() < Transport.HEADER_SIZE + length) {
+            return null;
+        }
+        readBuffer.position(readBuffer.position() + Transport.HEADER_SIZE);
+        ByteBuffer frame = readBuffer.slice();
+        frame.limit(length);
+        readBuffer.position(readBuffer.position() + length);
+        long start = System.nanoTime();
+        if (!(codec instanceof JsonMessageCodec)) {
+            Message message = new Message();
+            codec.decode(frame, message);
+            return Envelope.ofMessage(message, System.nanoTime() - start);
+        }
+        JsonHashMapParser.Type type = json.peekType(frame);
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        return Envelope.ofJson(type, bytes, System.nanoTime() - start);
+    }
+
+    /**
+     * Private method reads the header the server writes once at the start of its legacy stream.
+     * @return true, if the header was read, false if more bytes are needed.
+     * @throws IOException if the header is invalid.
+     */
+    private boolean readLegacyHeader() throws IOException {
+        if (readBuffer.remaining() < LegacyFraming.HEADER_SIZE) {
+            return false;
+        }
+        if (readBuffer.getShort() != LegacyFraming.STREAM_MAGIC
+                || readBuffer.getShort() != LegacyFraming.STREAM_VERSION) {
+            throw new IOException("Invalid stream header!");
+        }
+        bytesReceived += LegacyFraming.HEADER_SIZE;
+        legacyHeaderRead = true;
+        return true;
+    }
+
+    /**
+     * Private method decodes the type of the next String object of the legacy mode.
+     * @return the envelope, or null if more bytes are needed.
+     * @throws IOException if the stream is invalid.
+     */
+    private Envelope readLegacy() throws IOException {
+        while (readBuffer.hasRemaining() && readBuffer.get(readBuffer.position()) == LegacyFraming.TC_RESET) {
+            readBuffer.get();
+            handles.clear();
+        }
+        if (!readBuffer.hasRemaining()) {
+            return null;
+        }
+        byte tag = readBuffer.get();
+        long length;
+        if (tag == LegacyFraming.TC_STRING) {
+            if (readBuffer.remaining() < 2) {
+                return null;
+            }
+            length = readBuffer.getShort() & 0xFFFF;
+        }
+        else if (tag == LegacyFraming.TC_LONGSTRING) {
+            if (readBuffer.remaining() < 8) {
+                return null;
+            }
+            length = readBuffer.getLong();
+        }
+        else if (tag == LegacyFraming.TC_REFERENCE) {
+            if (readBuffer.remaining() < 4) {
+                return null;
+            }
+            return referencedEnvelope(readBuffer.getInt() - LegacyFraming.BASE_WIRE_HANDLE);
+        }
+        else {
+            throw new IOException("Unsupported object tag " + tag + "!");
+        }
+        if (length < 0 || length > MAX_MESSAGE_SIZE) {
+            throw new IOException("Invalid String length " + length + "!");
+        }
+        if (readBuffer.remaining() < length) {
+            return null;
+        }
+        if (chars.length < length) {
+            chars = new char[(int) length];
+        }
+        String s = LegacyFraming.getModifiedUtf8(readBuffer, (int) length, chars);
+        // every String gets a handle, also an invalid one, so the following handles stay in step with the server
+        handles.add(s);
+        if (s == null) {
+            throw new MessageFormatException("Invalid modified UTF-8!");
+        }
+        long start = System.nanoTime();
+        JsonHashMapParser.Type type = json.peekType(s);
+        return Envelope.ofJson(type, s, System.nanoTime() - start);
+    }
+
+    /**
+     * Private method decodes the type of a String of the legacy stream which the server has sent again as a back
+     * reference.
+     * @param index is the handle of the String minus the base handle.
+     * @return the envelope.
+     * @throws IOException if the handle is unknown, or the String was no valid modified UTF-8,
+     * as a MessageFormatException.
+     */
+    private Envelope referencedEnvelope(int index) throws IOException {
+        if (index < 0 || index >= handles.size()) {
+            throw new IOException("Unknown object handle " + index + "!");
+        }
+        String s = handles.get(index);
+        if (s == null) {
+            throw new MessageFormatException("Invalid modified UTF-8!");
+        }
+        long start = System.nanoTime();
+        JsonHashMapParser.Type type = json.peekType(s);
+        return Envelope.ofJson(type, s, System.nanoTime() - start);
+    }
+
+    /**
+     * Encoded message which waits to be written.
+     */
+    private static final class Pending {
+
+        /**
+         * Private buffer in read mode with the bytes of the message.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * Private receipt of the message, or null for the header of the stream.
+         */
+        private final Receipt receipt;
+
+        /**
+         * Constructor for a new waiting message.
+         * @param buffer is the buffer in read mode.
+         * @param receipt is the receipt of the message, or null.
+         */
+        Pending(ByteBuffer buffer, Receipt receipt) {
+            this.buffer = buffer;
+            this.receipt = receipt;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package client;
+
+import lib.ClockEstimator;
+import lib.JsonHashMapParser;
+import lib.Message;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Heartbeat of a connection. Sends a PING periodically and feeds every PONG into a ClockEstimator, so the client
+ * always knows the round trip time and the offset of the server clock. If the server has answered before but
+ * stops answering, the connection is considered lost, which finds a dead link long before TCP does.
+ * The PONG must be handed over by the loop thread as soon as it is read, not after the JavaFX thread has
+ * delivered it, or the round trip would include the lag of the GUI.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class Heartbeat {
+
+    /**
+     * Default time in milliseconds between two PING messages.
+     */
+    public static final long DEFAULT_PERIOD = 2000;
+
+    /**
+     * Default time in milliseconds without a PONG after which the connection is considered lost.
+     */
+    public static final long DEFAULT_TIMEOUT = 6000;
+
+    /**
+     * Private variable that stores the estimator the samples are fed into.
+     */
+    private final ClockEstimator clock;
+
+    /**
+     * Private variable that stores the time in milliseconds between two PING messages.
+     */
+    private final long periodMillis;
+
+    /**
+     * Private variable that stores the time in milliseconds without a PONG after which the connection is lost.
+     */
+    private final long timeoutMillis;
+
+    /**
+     * Private scheduler which sends the PING messages of all heartbeats, so the many clients of a bot swarm
+     * don't need a thread each.
+     */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Private variable that stores the periodic task, or null if the heartbeat is stopped.
+     */
+    private ScheduledFuture<?> task;
+
+    /**
+     * Private variable that stores the client clock in milliseconds of the last PONG, or 0 if the server
+     * has not answered on this connection so far.
+     */
+    private volatile long lastPong;
+
+    /**
+     * Constructor for a new heartbeat with the default period and timeout.
+     * @param clock is the estimator the samples are fed into.
+     */
+    public Heartbeat(ClockEstimator clock) {
+        this(clock, DEFAULT_PERIOD, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Constructor for a new heartbeat.
+     * @param clock is the estimator the samples are fed into.
+     * @param periodMillis is the time in milliseconds between two PING messages.
+     * @param timeoutMillis is the time in milliseconds without a PONG after which the connection is lost.
+     */
+    public Heartbeat(ClockEstimator clock, long periodMillis, long timeoutMillis) {
+        this.clock = clock;
+        this.periodMillis = periodMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Method starts to send PING messages, if the heartbeat is not running yet.
+     * @param sender sends a PING message to the server without blocking.
+     * @param onTimeout is called on the heartbeat thread when the server has stopped answering.
+     */
+    public synchronized void start(Consumer<Message> sender, Runnable onTimeout) {
+        if (task != null) {
+            return;
+        }
+        lastPong = 0;
+        task = SCHEDULER.scheduleAtFixedRate(() -> {
+            long now = now();
+            long last = lastPong;
+            if (last != 0 && now - last > timeoutMillis) {
+                // no further timeout until the server answers on the next connection
+                lastPong = 0;
+                onTimeout.run();
+                return;
+            }
+            sender.accept(new Message().clear(JsonHashMapParser.Type.PING).putNumber(ClockEstimator.SENT_KEY, now));
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Method stops sending PING messages.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Method forgets the last PONG, so a new connection gets the whole timeout until its first PONG.
+     */
+    public void reset() {
+        lastPong = 0;
+    }
+
+    /**
+     * Method feeds a received PONG into the estimator.
+     * @param pong is the PONG message, read just now.
+     * @return the round trip time of the sample in milliseconds, or -1 if the PONG is malformed.
+     */
+    public long received(Message pong) {
+        long now = now();
+        int sentIndex = pong.indexOf(ClockEstimator.SENT_KEY);
+        int serverIndex = pong.indexOf(ClockEstimator.SERVER_TIME_KEY);
+        if (sentIndex < 0 || serverIndex < 0 || !pong.isNumber(sentIndex) || !pong.isNumber(serverIndex)) {
+            return -1;
+        }
+        lastPong = now;
+        return clock.sample(pong.getNumber(sentIndex), pong.getNumber(serverIndex), now);
+    }
+
+    /**
+     * Method returns the estimator the samples are fed into.
+     * @return the estimator.
+     */
+    public ClockEstimator getClock() {
+        return clock;
+    }
+
+    /**
+     * Private method returns the clock of the client.
+     * @return monotonic time in milliseconds.
+     */
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+}
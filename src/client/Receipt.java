@@ -0,0 +1,107 @@
+package client;
+
+import lib.Message;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Receipt for a message sent on a {@link GameSession}, which stores its timestamps. Its future completes with the
+ * receipt as soon as the message was written, or exceptionally if it could not be written.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class Receipt {
+
+    /**
+     * Private variable that stores the message.
+     */
+    private final Message message;
+
+    /**
+     * Private variable that stores the System.nanoTime when the message was handed to the session.
+     */
+    private final long enqueuedNanos;
+
+    /**
+     * Private variable that stores the System.nanoTime when the message was written and flushed.
+     */
+    private volatile long sentNanos;
+
+    /**
+     * Private variable that stores the number of bytes the message took on the wire.
+     */
+    private volatile long bytes;
+
+    /**
+     * Private future which completes when the message was written.
+     */
+    private final CompletableFuture<Receipt> future = new CompletableFuture<>();
+
+    /**
+     * Constructor for a new receipt.
+     * @param message is the message.
+     * @param enqueuedNanos is the System.nanoTime when the message was handed to the session.
+     */
+    Receipt(Message message, long enqueuedNanos) {
+        this.message = message;
+        this.enqueuedNanos = enqueuedNanos;
+    }
+
+    /**
+     * Method marks the message as written and flushed and completes the future.
+     * @param bytes is the number of bytes the message took on the wire.
+     */
+    void complete(long bytes) {
+        this.sentNanos = System.nanoTime();
+        this.bytes = bytes;
+        future.complete(this);
+    }
+
+    /**
+     * Method completes the future exceptionally, because the message could not be written.
+     * @param e is the reason.
+     */
+    void fail(IOException e) {
+        future.completeExceptionally(e);
+    }
+
+    /**
+     * Method returns the future which completes when the message was written.
+     * @return the future.
+     */
+    CompletableFuture<Receipt> getFuture() {
+        return future;
+    }
+
+    /**
+     * Method returns the message.
+     * @return the message.
+     */
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * Method returns the System.nanoTime when the message was handed to the session.
+     * @return timestamp in nanoseconds.
+     */
+    public long getEnqueuedNanos() {
+        return enqueuedNanos;
+    }
+
+    /**
+     * Method returns the System.nanoTime when the message was written and flushed.
+     * @return timestamp in nanoseconds.
+     */
+    public long getSentNanos() {
+        return sentNanos;
+    }
+
+    /**
+     * Method returns the number of bytes the message took on the wire, including the framing.
+     * @return number of bytes.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+}
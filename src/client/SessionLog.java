@@ -0,0 +1,201 @@
+package client;
+
+import lib.Envelope;
+import lib.JsonMessageCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Append-only log of the messages a client receives, which {@link SessionReplay} plays back without a server.
+ * The log is a memory-mapped file, so recording a message is a copy into memory and never waits for the disk:
+ * the file grows by regions of {@link #REGION_SIZE} bytes, and the operating system writes the pages in the
+ * background.
+ * <p>
+ * The file starts with a header of the magic number "LGSL", the version and the wall clock in milliseconds when the
+ * recording started. Every record has the length of the payload as four bytes, the number of bytes the message took
+ * on the wire as four bytes, the time in nanoseconds since the recording started as eight bytes, and then the
+ * message as UTF-8 JSON. The length is written last, so a record which was not written completely, because the
+ * client was killed, reads as the end of the log: the file behind the last record is filled with zeros.
+ * This class is thread safe.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class SessionLog implements Closeable {
+
+    /**
+     * Magic number at the start of a log, "LGSL".
+     */
+    static final int MAGIC = 0x4C47534C;
+
+    /**
+     * Version of the file format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Number of bytes of the header of the file.
+     */
+    static final int HEADER_SIZE = 16;
+
+    /**
+     * Number of bytes of the header of a record.
+     */
+    static final int RECORD_HEADER_SIZE = 16;
+
+    /**
+     * Number of bytes the file grows by when the mapped region is full.
+     */
+    public static final int REGION_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Extension of the log files.
+     */
+    public static final String EXTENSION = ".lglog";
+
+    /**
+     * Private variable that stores the channel of the file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Private variable that stores the mapped region the next record is written to.
+     */
+    private MappedByteBuffer region;
+
+    /**
+     * Private variable that stores the position of the mapped region in the file.
+     */
+    private long regionStart;
+
+    /**
+     * Private variable that stores the System.nanoTime when the recording started.
+     */
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * Private codec the messages which are already decoded are encoded with.
+     */
+    private final JsonMessageCodec json = new JsonMessageCodec();
+
+    /**
+     * Private reusable buffer the messages which are already decoded are encoded into.
+     */
+    private final ByteBuffer scratch = ByteBuffer.allocate(16 * 1024);
+
+    /**
+     * Private variable that stores the number of recorded messages.
+     */
+    private long count;
+
+    /**
+     * Private variable to store, if the log is closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructor for a new log, which replaces the given file.
+     * @param file is the file of the log.
+     * @throws IOException if the file could not be created or mapped.
+     */
+    public SessionLog(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            map(0, HEADER_SIZE);
+            region.putInt(MAGIC);
+            region.putInt(VERSION);
+            region.putLong(System.currentTimeMillis());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Method creates a new log. If the given path is a directory, the log is a new file in this directory which
+     * is named after the current time.
+     * @param path is the file of the log or the directory of the logs.
+     * @return the new log.
+     * @throws IOException if the file could not be created or mapped.
+     */
+    public static SessionLog create(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            String name = "session-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            path = path.resolve(name + EXTENSION);
+        }
+        return new SessionLog(path);
+    }
+
+    /**
+     * Method appends a received message to the log.
+     * @param envelope is the envelope of the message.
+     * @param bytes is the number of bytes the message took on the wire.
+     * @throws IOException if the file could not grow.
+     */
+    public synchronized void append(Envelope envelope, long bytes) throws IOException {
+        if (closed) {
+            return;
+        }
+        ByteBuffer payload = envelope.toJson(json, scratch);
+        int length = payload.remaining();
+        if (region.remaining() < RECORD_HEADER_SIZE + length) {
+            map(regionStart + region.position(), RECORD_HEADER_SIZE + length);
+        }
+        int start = region.position();
+        region.position(start + 4);
+        region.putInt((int) Math.min(Integer.MAX_VALUE, bytes));
+        region.putLong(envelope.getReceivedNanos() - startNanos);
+        region.put(payload);
+        // the length is written last, so a reader never sees a record which is not complete
+        region.putInt(start, length);
+        count++;
+    }
+
+    /**
+     * Private method maps the next region of the file, which starts at the given position. The regions overlap,
+     * so the records are written one after the other without a gap.
+     * @param position is the position in the file the region starts at.
+     * @param needed is the number of bytes the region must have at least.
+     * @throws IOException if the file could not be mapped.
+     */
+    private void map(long position, int needed) throws IOException {
+        regionStart = position;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(REGION_SIZE, needed));
+    }
+
+    /**
+     * Method returns the number of recorded messages.
+     * @return number of messages.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Method closes the log. The file is cut behind the last record, if the operating system allows to cut a
+     * mapped file; otherwise the zeros behind the last record stay.
+     * @throws IOException if the file could not be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        region.force();
+        try {
+            channel.truncate(regionStart + region.position());
+        } catch (IOException e) {
+            System.out.println("Could not cut the session log!");
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,187 @@
+package client;
+
+import lib.Envelope;
+import lib.JsonHashMapParser;
+import lib.JsonMessageCodec;
+import lib.MessageFormatException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a {@link SessionLog} back without a server. Every recorded message is handed to the target as a new
+ * envelope, like the session hands a received message to its listener, so the messages take the same way through
+ * the decoding, the dispatcher, the events and the GUI as they did when they were recorded. The messages are
+ * played back in the recorded rhythm, faster by a given factor, or as fast as the target takes them, which
+ * reproduces a lag report or measures the pipeline of the client with the traffic of a real tournament.
+ * <p>
+ * Usage: {@code SessionReplay logFile} prints the number of messages and bytes of every type in a log.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class SessionReplay {
+
+    /**
+     * Speed argument which plays the messages back as fast as the target takes them.
+     */
+    public static final String MAX_SPEED = "max";
+
+    /**
+     * Interface for the receiver of the played back messages.
+     */
+    public interface Target {
+
+        /**
+         * Method handles one played back message.
+         * @param envelope is the envelope of the message, which only has its type decoded.
+         * @param bytes is the number of bytes the message took on the wire when it was recorded.
+         * @throws IOException if the message could not be handled.
+         */
+        void deliver(Envelope envelope, long bytes) throws IOException;
+    }
+
+    /**
+     * Private variable that stores the mapped file of the log.
+     */
+    private final MappedByteBuffer log;
+
+    /**
+     * Private variable that stores the wall clock in milliseconds when the recording started.
+     */
+    private final long recordedMillis;
+
+    /**
+     * Private codec the types of the messages are decoded with.
+     */
+    private final JsonMessageCodec json = new JsonMessageCodec();
+
+    /**
+     * Constructor for a new replay of the given log.
+     * @param file is the file of the log.
+     * @throws IOException if the file could not be mapped or is no session log.
+     */
+    public SessionReplay(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (log.remaining() < SessionLog.HEADER_SIZE || log.getInt() != SessionLog.MAGIC) {
+            throw new IOException(file + " is no session log!");
+        }
+        if (log.getInt() != SessionLog.VERSION) {
+            throw new IOException("Unsupported version of " + file + "!");
+        }
+        recordedMillis = log.getLong();
+    }
+
+    /**
+     * Method returns the factor of the playback speed for the given argument.
+     * @param speed is a factor like "1", "4" or "4x", or {@link #MAX_SPEED}.
+     * @return the factor, or 0 for the maximum speed.
+     * @throws IllegalArgumentException if the argument is no positive factor.
+     */
+    public static double parseSpeed(String speed) {
+        String s = speed.trim().toLowerCase();
+        if (s.equals(MAX_SPEED)) {
+            return 0;
+        }
+        if (s.endsWith("x")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        double factor = Double.parseDouble(s);
+        if (!(factor > 0) || Double.isInfinite(factor)) {
+            throw new IllegalArgumentException("No valid speed: " + speed);
+        }
+        return factor;
+    }
+
+    /**
+     * Method returns the wall clock when the recording started.
+     * @return time in milliseconds since the epoch.
+     */
+    public long getRecordedMillis() {
+        return recordedMillis;
+    }
+
+    /**
+     * Method plays the log back on the calling thread. A message whose type is unknown is skipped.
+     * @param target is the receiver of the messages.
+     * @param speed is the factor of the playback speed, or 0 to play the messages back as fast as possible.
+     * @return the number of played back messages.
+     * @throws IOException if the target failed.
+     * @throws InterruptedException if the thread was interrupted while it waited for the next message.
+     */
+    public long replay(Target target, double speed) throws IOException, InterruptedException {
+        ByteBuffer in = log.duplicate();
+        in.position(SessionLog.HEADER_SIZE);
+        long start = System.nanoTime();
+        long count = 0;
+        while (in.remaining() >= SessionLog.RECORD_HEADER_SIZE) {
+            int length = in.getInt();
+            if (length <= 0 || in.remaining() < SessionLog.RECORD_HEADER_SIZE - 4 + length) {
+                // the rest of the log was never written
+                break;
+            }
+            int bytes = in.getInt();
+            long offsetNanos = in.getLong();
+            byte[] payload = new byte[length];
+            in.get(payload);
+            if (speed > 0) {
+                long due = start + (long) (offsetNanos / speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            }
+            JsonHashMapParser.Type type;
+            try {
+                type = json.peekType(ByteBuffer.wrap(payload));
+            } catch (MessageFormatException e) {
+                System.out.println("ParseException occured!");
+                continue;
+            }
+            target.deliver(Envelope.ofJson(type, payload, 0), bytes);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Main method prints the number of messages and bytes of every type in a log.
+     * @param args is the file of the log.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: SessionReplay logFile");
+            return;
+        }
+        try {
+            SessionReplay replay = new SessionReplay(Paths.get(args[0]));
+            Map<JsonHashMapParser.Type, long[]> types = new EnumMap<>(JsonHashMapParser.Type.class);
+            long start = System.nanoTime();
+            long count = replay.replay((envelope, bytes) -> {
+                long[] sum = types.computeIfAbsent(envelope.getType(), t -> new long[2]);
+                sum[0]++;
+                sum[1] += bytes;
+            }, 0);
+            double millis = (System.nanoTime() - start) / 1e6;
+            System.out.println(String.format("%d messages recorded at %tF %<tT, read in %.1f ms",
+                    count, replay.getRecordedMillis(), millis));
+            for (Map.Entry<JsonHashMapParser.Type, long[]> entry : types.entrySet()) {
+                System.out.println(String.format("%-12s %8d messages %12d bytes", entry.getKey().getTypeString(),
+                        entry.getValue()[0], entry.getValue()[1]));
+            }
+        } catch (IOException | InterruptedException e) {
+            System.out.println("Could not read the session log: " + e.getMessage());
+        }
+    }
+}
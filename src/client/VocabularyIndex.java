@@ -0,0 +1,431 @@
+package client;
+
+import lib.TextNormalizer;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Vocabulary of a language in a compact trie, which is read from a memory-mapped file. The trie is keyed by the
+ * folded words of TextNormalizer, so the player can type without accents and in any case, and it keeps the
+ * original spelling of every word. The file is mapped, not read: opening even a large dictionary takes no time and
+ * no heap, and the operating system only loads the pages a lookup touches.
+ * A word list is a UTF-8 text file with one word or phrase per line, the most frequent first, because the
+ * completions of a prefix are returned in this order. Empty lines and lines starting with # are ignored.
+ * The index file of a word list is built once with {@link #build(List, Path)}, or from the command line.
+ * The file starts with a header of four ints: magic, version, number of words and offset of the root node.
+ * Every node consists of a flags byte, a short with the number of children, an int with the smallest rank of all
+ * words below the node, for a word node the rank and the offset of its original spelling as two ints, and for every
+ * child its char and its offset, sorted by char. The original spellings follow the nodes, each as a short with the
+ * number of its UTF-8 bytes and the bytes.
+ * This class is thread safe, because the buffer is only read with absolute methods.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class VocabularyIndex {
+
+    /**
+     * File extension of an index file.
+     */
+    public static final String INDEX_EXTENSION = ".idx";
+
+    /**
+     * File extension of a word list.
+     */
+    public static final String LIST_EXTENSION = ".txt";
+
+    /**
+     * First int of an index file, "LGVI".
+     */
+    private static final int MAGIC = 0x4C475649;
+
+    /**
+     * Version of the file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the header in bytes.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Flag of a node which ends a word.
+     */
+    private static final byte WORD = 1;
+
+    /**
+     * Private buffer of the mapped file.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Private variable that stores the number of words.
+     */
+    private final int size;
+
+    /**
+     * Private variable that stores the offset of the root node.
+     */
+    private final int root;
+
+    /**
+     * Constructor for an index of a mapped file.
+     * @param buffer is the buffer of the file.
+     * @throws IOException if the buffer is no index file.
+     */
+    private VocabularyIndex(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("No vocabulary index!");
+        }
+        this.buffer = buffer;
+        this.size = buffer.getInt(8);
+        this.root = buffer.getInt(12);
+    }
+
+    /**
+     * Method maps an index file.
+     * @param file is the index file.
+     * @return the index.
+     * @throws IOException if the file could not be mapped or is no index file.
+     */
+    public static VocabularyIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return new VocabularyIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Method opens the index of a language in a directory. If there is only a word list of the language,
+     * or the word list is newer than the index, the index is built first.
+     * @param directory is the directory with the files named after the languages, like "English.idx".
+     * @param language is the language.
+     * @return the index, or null if the directory has neither an index nor a word list of the language.
+     * @throws IOException if the files could not be read or written.
+     */
+    public static VocabularyIndex forLanguage(Path directory, String language) throws IOException {
+        // the language comes from the server, so it must not lead out of the directory
+        String name = language.replaceAll("[^\\p{L}\\p{N}_-]", "");
+        if (name.isEmpty()) {
+            return null;
+        }
+        Path index = directory.resolve(name + INDEX_EXTENSION);
+        Path list = directory.resolve(name + LIST_EXTENSION);
+        if (Files.isRegularFile(list) && (!Files.isRegularFile(index)
+                || Files.getLastModifiedTime(list).compareTo(Files.getLastModifiedTime(index)) > 0)) {
+            build(readList(list), index);
+        }
+        return Files.isRegularFile(index) ? open(index) : null;
+    }
+
+    /**
+     * Method reads a word list.
+     * @param list is the word list.
+     * @return the words, the most frequent first.
+     * @throws IOException if the word list could not be read.
+     */
+    public static List<String> readList(Path list) throws IOException {
+        List<String> words = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(list, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = TextNormalizer.clean(line);
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    words.add(line);
+                }
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Method returns the number of words.
+     * @return number of words.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method returns the original spelling of a word.
+     * @param text is the word as the player has typed it.
+     * @return the word as it is spelled in the word list, or null if it is not in the word list.
+     */
+    public String lookup(String text) {
+        int node = find(TextNormalizer.fold(text));
+        return node >= 0 && (buffer.get(node) & WORD) != 0 ? readWord(buffer.getInt(node + 11)) : null;
+    }
+
+    /**
+     * Method returns the most frequent words which start with a prefix.
+     * @param prefix is the beginning of a word as the player has typed it.
+     * @param max is the largest number of words returned.
+     * @return the original spellings of the words, the most frequent first.
+     */
+    public List<String> complete(String prefix, int max) {
+        List<String> words = new ArrayList<>();
+        String key = TextNormalizer.fold(prefix);
+        int node = key.isEmpty() ? -1 : find(key);
+        if (node < 0) {
+            return words;
+        }
+        // best first search: a node is queued with the smallest rank below it, a word with its own rank,
+        // and the lowest bit tells them apart
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+        queue.add(entry(buffer.getInt(node + 3), node, false));
+        while (!queue.isEmpty() && words.size() < max) {
+            long next = queue.poll();
+            int offset = (int) (next & 0xFFFFFFFFL) >>> 1;
+            if ((next & 1) != 0) {
+                words.add(readWord(offset));
+                continue;
+            }
+            if ((buffer.get(offset) & WORD) != 0) {
+                queue.add(entry(buffer.getInt(offset + 7), buffer.getInt(offset + 11), true));
+            }
+            int children = buffer.getShort(offset + 1) & 0xFFFF;
+            int child = childrenStart(offset);
+            for (int i = 0; i < children; i++, child += 6) {
+                int childOffset = buffer.getInt(child + 2);
+                queue.add(entry(buffer.getInt(childOffset + 3), childOffset, false));
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Method builds an index file from words. A word whose folded key equals the key of an earlier word is left out.
+     * The file is written next to its final place and then moved there, so a reader never maps a half written file.
+     * @param words are the words, the most frequent first.
+     * @param file is the index file.
+     * @throws IOException if the file could not be written.
+     */
+    public static void build(List<String> words, Path file) throws IOException {
+        Node trie = new Node();
+        int count = 0;
+        for (String word : words) {
+            String key = TextNormalizer.fold(word);
+            if (key.isEmpty()) {
+                continue;
+            }
+            Node node = trie;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.children.computeIfAbsent(key.charAt(i), c -> new Node());
+            }
+            if (node.word == null) {
+                node.word = TextNormalizer.clean(word).getBytes(StandardCharsets.UTF_8);
+                node.rank = count++;
+            }
+        }
+
+        // every node gets its offset in breadth first order, then the original spellings follow
+        List<Node> nodes = new ArrayList<>();
+        ArrayDeque<Node> open = new ArrayDeque<>();
+        open.add(trie);
+        int offset = HEADER_SIZE;
+        while (!open.isEmpty()) {
+            Node node = open.poll();
+            node.offset = offset;
+            offset += 7 + (node.word != null ? 8 : 0) + 6 * node.children.size();
+            nodes.add(node);
+            open.addAll(node.children.values());
+        }
+        for (Node node : nodes) {
+            if (node.word != null) {
+                node.wordOffset = offset;
+                offset += 2 + Math.min(node.word.length, 0xFFFF);
+            }
+        }
+        best(trie);
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeInt(trie.offset);
+            for (Node node : nodes) {
+                out.writeByte(node.word != null ? WORD : 0);
+                out.writeShort(node.children.size());
+                out.writeInt(node.best);
+                if (node.word != null) {
+                    out.writeInt(node.rank);
+                    out.writeInt(node.wordOffset);
+                }
+                for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+                    out.writeChar(child.getKey());
+                    out.writeInt(child.getValue().offset);
+                }
+            }
+            for (Node node : nodes) {
+                if (node.word != null) {
+                    int length = Math.min(node.word.length, 0xFFFF);
+                    out.writeShort(length);
+                    out.write(node.word, 0, length);
+                }
+            }
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Private method finds the node of a folded key.
+     * @param key is the folded key.
+     * @return the offset of the node, or -1 if no word starts with the key.
+     */
+    private int find(String key) {
+        int node = root;
+        for (int i = 0; i < key.length() && node >= 0; i++) {
+            node = child(node, key.charAt(i));
+        }
+        return node;
+    }
+
+    /**
+     * Private method finds a child of a node by binary search.
+     * @param node is the offset of the node.
+     * @param c is the char of the child.
+     * @return the offset of the child, or -1 if the node has no such child.
+     */
+    private int child(int node, char c) {
+        int start = childrenStart(node);
+        int low = 0;
+        int high = (buffer.getShort(node + 1) & 0xFFFF) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char label = buffer.getChar(start + middle * 6);
+            if (label < c) {
+                low = middle + 1;
+            }
+            else if (label > c) {
+                high = middle - 1;
+            }
+            else {
+                return buffer.getInt(start + middle * 6 + 2);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Private method returns where the children of a node start.
+     * @param node is the offset of the node.
+     * @return the offset of the first child entry.
+     */
+    private int childrenStart(int node) {
+        return node + 7 + ((buffer.get(node) & WORD) != 0 ? 8 : 0);
+    }
+
+    /**
+     * Private method reads an original spelling.
+     * @param offset is the offset of the spelling.
+     * @return the spelling.
+     */
+    private String readWord(int offset) {
+        byte[] bytes = new byte[buffer.getShort(offset) & 0xFFFF];
+        buffer.get(offset + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Private method packs an entry of the best first search into a long, which sorts by rank.
+     * @param rank is the rank of the word or the smallest rank below the node.
+     * @param offset is the offset of the node or of the spelling of the word.
+     * @param word is true for a word, false for a node.
+     * @return the entry.
+     */
+    private static long entry(int rank, int offset, boolean word) {
+        return ((long) rank << 32) | ((long) offset << 1) | (word ? 1 : 0);
+    }
+
+    /**
+     * Private method computes the smallest rank below every node.
+     * @param node is the root of the subtree.
+     * @return the smallest rank below the node.
+     */
+    private static int best(Node node) {
+        int best = node.word != null ? node.rank : Integer.MAX_VALUE;
+        for (Node child : node.children.values()) {
+            best = Math.min(best, best(child));
+        }
+        node.best = best;
+        return best;
+    }
+
+    /**
+     * Node of the trie while an index is built.
+     */
+    private static class Node {
+
+        /**
+         * Children of the node, sorted by char.
+         */
+        private final TreeMap<Character, Node> children = new TreeMap<>();
+
+        /**
+         * UTF-8 bytes of the original spelling, or null if no word ends at this node.
+         */
+        private byte[] word;
+
+        /**
+         * Rank of the word.
+         */
+        private int rank;
+
+        /**
+         * Smallest rank below the node.
+         */
+        private int best;
+
+        /**
+         * Offset of the node in the file.
+         */
+        private int offset;
+
+        /**
+         * Offset of the original spelling in the file.
+         */
+        private int wordOffset;
+    }
+
+    /**
+     * Main method to build an index file from a word list.
+     * @param args are the word list and the index file.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: VocabularyIndex <word list> <index file>");
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            build(readList(Paths.get(args[0])), Paths.get(args[1]));
+            VocabularyIndex index = open(Paths.get(args[1]));
+            System.out.println("Indexed " + index.size() + " words in " + (System.nanoTime() - start) / 1000000
+                    + " ms.");
+        } catch (IOException e) {
+            System.out.println("Could not build the index: " + e.getMessage());
+        }
+    }
+}
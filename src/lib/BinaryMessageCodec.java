@@ -0,0 +1,276 @@
+package lib;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary codec for the messages of the protocol, meant for connections with little bandwidth.
+ * A message is encoded as:
+ * <ul>
+ *     <li>one byte with the ordinal of its JsonHashMapParser.Type,</li>
+ *     <li>the number of key-value pairs as a varint,</li>
+ *     <li>for every pair the key and the value.</li>
+ * </ul>
+ * A key is a varint: <code>(id &lt;&lt; 1) | 1</code> references a String sent before on this connection,
+ * <code>length &lt;&lt; 1</code> is followed by the UTF-8 bytes of a new String, which gets the next free id on both
+ * sides. So the nicknames of a Score table only go over the wire once per connection.
+ * A value is a varint whose lowest two bits give its kind: 0 is null, 1 is a text whose UTF-8 byte length is stored in
+ * the upper bits and whose bytes follow, 2 is a zigzag encoded number stored in the upper bits and 3 is a number
+ * which follows as eight bytes.
+ * Both directions keep their own dictionary, so every connection needs its own codec instance and encode and decode
+ * must only be called by one thread at a time.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class BinaryMessageCodec implements MessageCodec {
+
+    /**
+     * Name of this codec in the nickname handshake.
+     */
+    public static final String NAME = "Binary";
+
+    /**
+     * Maximum number of Strings in a dictionary. Further Strings are always sent as literals.
+     */
+    public static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    /**
+     * Kind of a null value.
+     */
+    private static final int KIND_NULL = 0;
+
+    /**
+     * Kind of a text value.
+     */
+    private static final int KIND_TEXT = 1;
+
+    /**
+     * Kind of a number value stored in the varint.
+     */
+    private static final int KIND_NUMBER = 2;
+
+    /**
+     * Kind of a number value stored in eight bytes.
+     */
+    private static final int KIND_LONG = 3;
+
+    /**
+     * Maximum number of bytes of a varint.
+     */
+    private static final int MAX_VARINT_SIZE = 10;
+
+    /**
+     * Private array of all types, indexed by their ordinal.
+     */
+    private static final JsonHashMapParser.Type[] TYPES = JsonHashMapParser.Type.values();
+
+    /**
+     * Private dictionary of the Strings this codec has encoded, mapped to their ids.
+     */
+    private final Map<String, Integer> encodeDictionary = new HashMap<>();
+
+    /**
+     * Private dictionary of the Strings this codec has decoded, indexed by their ids.
+     */
+    private String[] decodeDictionary = new String[64];
+
+    /**
+     * Private variable that stores the number of Strings in decodeDictionary.
+     */
+    private int decodeDictionarySize;
+
+    /**
+     * Private reusable array for decoding UTF-8 Strings.
+     */
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Method returns the name of this codec in the nickname handshake.
+     * @return name of this codec.
+     */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Method decodes one complete binary message.
+     * @param payload contains exactly the bytes of one message, from its position to its limit.
+     * @param into is the holder the message is decoded into. Its former content is removed.
+     * @throws IOException if the message is malformed, as a MessageFormatException.
+     */
+    @Override
+    public void decode(ByteBuffer payload, Message into) throws IOException {
+        try {
+            int tag = payload.get() & 0xFF;
+            if (tag >= TYPES.length) {
+                throw new MessageFormatException("Unknown type tag " + tag + "!");
+            }
+            into.clear(TYPES[tag]);
+            long pairs = getVarint(payload);
+            for (long i = 0; i < pairs; i++) {
+                String key = getKey(payload);
+                long header = getVarint(payload);
+                switch ((int) (header & 3)) {
+                    case KIND_NULL:
+                        into.putText(key, null);
+                        break;
+                    case KIND_TEXT:
+                        into.putText(key, getText(payload, header >>> 2));
+                        break;
+                    case KIND_NUMBER:
+                        long zigzag = header >>> 2;
+                        into.putNumber(key, (zigzag >>> 1) ^ -(zigzag & 1));
+                        break;
+                    default:
+                        into.putNumber(key, payload.getLong());
+                }
+            }
+            if (payload.hasRemaining()) {
+                throw new MessageFormatException("Unexpected content after the message!");
+            }
+        } catch (BufferUnderflowException e) {
+            throw new MessageFormatException("Truncated message!");
+        }
+    }
+
+    /**
+     * Method encodes the given message and appends its bytes to the given buffer.
+     * @param message is the message to encode.
+     * @param out is the buffer in write mode the bytes are appended to.
+     * @return the buffer which contains the bytes, which is a new and larger buffer if out was too small.
+     */
+    @Override
+    public ByteBuffer encode(Message message, ByteBuffer out) {
+        out = JsonMessageCodec.ensure(out, 1 + MAX_VARINT_SIZE);
+        out.put((byte) message.getType().ordinal());
+        putVarint(out, message.size());
+        for (int i = 0; i < message.size(); i++) {
+            out = putKey(out, message.getKey(i));
+            if (message.isNumber(i)) {
+                long value = message.getNumber(i);
+                long zigzag = (value << 1) ^ (value >> 63);
+                out = JsonMessageCodec.ensure(out, MAX_VARINT_SIZE + 8);
+                if (zigzag >>> 62 == 0) {
+                    putVarint(out, (zigzag << 2) | KIND_NUMBER);
+                }
+                else {
+                    putVarint(out, KIND_LONG);
+                    out.putLong(value);
+                }
+            }
+            else if (message.getText(i) == null) {
+                out = JsonMessageCodec.ensure(out, 1);
+                putVarint(out, KIND_NULL);
+            }
+            else {
+                String text = message.getText(i);
+                int length = Utf8.length(text);
+                out = JsonMessageCodec.ensure(out, MAX_VARINT_SIZE + length);
+                putVarint(out, ((long) length << 2) | KIND_TEXT);
+                Utf8.put(out, text);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Private method writes a key, either as a reference into the dictionary or as a new String.
+     * @param out is the buffer in write mode.
+     * @param key is the key.
+     * @return the buffer which contains the bytes.
+     */
+    private ByteBuffer putKey(ByteBuffer out, String key) {
+        Integer id = encodeDictionary.get(key);
+        if (id != null) {
+            out = JsonMessageCodec.ensure(out, MAX_VARINT_SIZE);
+            putVarint(out, ((long) id << 1) | 1);
+            return out;
+        }
+        if (encodeDictionary.size() < MAX_DICTIONARY_SIZE) {
+            encodeDictionary.put(key, encodeDictionary.size());
+        }
+        int length = Utf8.length(key);
+        out = JsonMessageCodec.ensure(out, MAX_VARINT_SIZE + length);
+        putVarint(out, (long) length << 1);
+        Utf8.put(out, key);
+        return out;
+    }
+
+    /**
+     * Private method reads a key, either as a reference into the dictionary or as a new String.
+     * @param in is the buffer in read mode.
+     * @return the key.
+     * @throws MessageFormatException if the key is malformed.
+     */
+    private String getKey(ByteBuffer in) throws MessageFormatException {
+        long header = getVarint(in);
+        if ((header & 1) == 1) {
+            long id = header >>> 1;
+            if (id >= decodeDictionarySize) {
+                throw new MessageFormatException("Unknown dictionary id " + id + "!");
+            }
+            return decodeDictionary[(int) id];
+        }
+        String key = getText(in, header >>> 1);
+        if (decodeDictionarySize < MAX_DICTIONARY_SIZE) {
+            if (decodeDictionarySize == decodeDictionary.length) {
+                String[] bigger = new String[decodeDictionary.length * 2];
+                System.arraycopy(decodeDictionary, 0, bigger, 0, decodeDictionarySize);
+                decodeDictionary = bigger;
+            }
+            decodeDictionary[decodeDictionarySize++] = key;
+        }
+        return key;
+    }
+
+    /**
+     * Private method reads a UTF-8 String of the given length.
+     * @param in is the buffer in read mode.
+     * @param length is the number of bytes of the String.
+     * @return the String.
+     * @throws MessageFormatException if the length is larger than the rest of the message.
+     */
+    private String getText(ByteBuffer in, long length) throws MessageFormatException {
+        if (length > in.remaining()) {
+            throw new MessageFormatException("Truncated message!");
+        }
+        if (scratch.length < length) {
+            scratch = new byte[(int) Math.max(length, scratch.length * 2L)];
+        }
+        return Utf8.get(in, (int) length, scratch);
+    }
+
+    /**
+     * Method writes an unsigned varint, seven bits per byte with the lowest bits first.
+     * @param out is the buffer in write mode, which has at least ten bytes left.
+     * @param value is the value, treated as unsigned.
+     */
+    static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Method reads an unsigned varint.
+     * @param in is the buffer in read mode.
+     * @return the value.
+     * @throws MessageFormatException if the varint is longer than ten bytes.
+     */
+    static long getVarint(ByteBuffer in) throws MessageFormatException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new MessageFormatException("Malformed varint!");
+    }
+}
@@ -0,0 +1,143 @@
+package lib;
+
+/**
+ * Estimates the round trip time to the server and the offset of the server clock from PING/PONG exchanges.
+ * A client sends a PING with its clock in {@link #SENT_KEY}, the server answers with a PONG which echoes this value
+ * and adds its own clock in {@link #SERVER_TIME_KEY}. Like NTP, the estimator assumes that both ways take the same
+ * time, so the server read its clock half a round trip after the PING was sent. The smoothed round trip time and its
+ * variation follow RFC 6298. The offset is taken from the sample with the smallest round trip of the last
+ * {@link #WINDOW} samples, because a fast exchange has the least room for an asymmetric delay.
+ * Both clocks are monotonic milliseconds, so the offset only relates the two clocks and is no wall clock time.
+ * This class is thread safe.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class ClockEstimator {
+
+    /**
+     * Key of the PING and PONG messages with the clock of the client when the PING was sent.
+     */
+    public static final String SENT_KEY = "Sent";
+
+    /**
+     * Key of the PONG message with the clock of the server when the PING was answered.
+     */
+    public static final String SERVER_TIME_KEY = "Server";
+
+    /**
+     * Key of the ANSWER message with the time in milliseconds from showing the question until submitting the answer.
+     */
+    public static final String DURATION_KEY = "Duration";
+
+    /**
+     * Number of the last samples the offset is chosen from.
+     */
+    public static final int WINDOW = 8;
+
+    /**
+     * Private array that stores the round trip times of the last samples in milliseconds.
+     */
+    private final long[] roundTrips = new long[WINDOW];
+
+    /**
+     * Private array that stores the offsets of the last samples in milliseconds.
+     */
+    private final long[] offsets = new long[WINDOW];
+
+    /**
+     * Private variable that stores the number of samples so far.
+     */
+    private long samples;
+
+    /**
+     * Private variable that stores the smoothed round trip time in milliseconds.
+     */
+    private double smoothedRoundTrip;
+
+    /**
+     * Private variable that stores the variation of the round trip time in milliseconds.
+     */
+    private double roundTripVariation;
+
+    /**
+     * Method adds the sample of one PING/PONG exchange.
+     * @param sentMillis is the clock of the client when the PING was sent.
+     * @param serverMillis is the clock of the server when the PING was answered.
+     * @param receivedMillis is the clock of the client when the PONG was received.
+     * @return the round trip time of the sample in milliseconds, or -1 if the sample is invalid.
+     */
+    public synchronized long sample(long sentMillis, long serverMillis, long receivedMillis) {
+        long roundTrip = receivedMillis - sentMillis;
+        if (roundTrip < 0) {
+            return -1;
+        }
+        int slot = (int) (samples % WINDOW);
+        roundTrips[slot] = roundTrip;
+        offsets[slot] = serverMillis - (sentMillis + roundTrip / 2);
+        if (samples == 0) {
+            smoothedRoundTrip = roundTrip;
+            roundTripVariation = roundTrip / 2.0;
+        }
+        else {
+            roundTripVariation = 0.75 * roundTripVariation + 0.25 * Math.abs(smoothedRoundTrip - roundTrip);
+            smoothedRoundTrip = 0.875 * smoothedRoundTrip + 0.125 * roundTrip;
+        }
+        samples++;
+        return roundTrip;
+    }
+
+    /**
+     * Method returns the number of samples so far.
+     * @return number of samples.
+     */
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Method returns the smoothed round trip time.
+     * @return time in milliseconds, or 0 if there is no sample.
+     */
+    public synchronized double getRoundTripMillis() {
+        return smoothedRoundTrip;
+    }
+
+    /**
+     * Method returns the variation of the round trip time.
+     * @return time in milliseconds, or 0 if there is no sample.
+     */
+    public synchronized double getRoundTripVariationMillis() {
+        return roundTripVariation;
+    }
+
+    /**
+     * Method returns the offset of the server clock, taken from the sample with the smallest round trip.
+     * @return server clock minus client clock in milliseconds, or 0 if there is no sample.
+     */
+    public synchronized long getOffsetMillis() {
+        int best = -1;
+        for (int i = 0; i < Math.min(samples, WINDOW); i++) {
+            if (best < 0 || roundTrips[i] < roundTrips[best]) {
+                best = i;
+            }
+        }
+        return best < 0 ? 0 : offsets[best];
+    }
+
+    /**
+     * Method converts a time of the client clock into the server clock.
+     * @param clientMillis is the time of the client clock.
+     * @return the estimated time of the server clock.
+     */
+    public long toServerTime(long clientMillis) {
+        return clientMillis + getOffsetMillis();
+    }
+
+    /**
+     * Method converts a time of the server clock into the client clock.
+     * @param serverMillis is the time of the server clock.
+     * @return the estimated time of the client clock.
+     */
+    public long toClientTime(long serverMillis) {
+        return serverMillis - getOffsetMillis();
+    }
+}
@@ -0,0 +1,233 @@
+package lib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Decorator which compresses the messages of another codec with deflate, meant for players who pay for bandwidth.
+ * Every message starts with one byte: {@link #RAW} is followed by the bytes of the inner codec unchanged,
+ * {@link #DEFLATED} by the deflated bytes of the inner codec. Messages shorter than the threshold stay raw,
+ * because deflate only pays off for larger messages, like a full SCORE table or a long question.
+ * Both directions keep their deflate stream across messages and only flush it at the end of a message, so a
+ * message can refer back to the earlier messages: the nicknames of a SCORE table which was sent before cost only
+ * a few bits. So, like the binary codec, every connection needs its own instance and the messages must be decoded
+ * in the order they were encoded. The deflater and the inflater are only created for the first large message,
+ * because they take native memory, and are freed by {@link #release()}.
+ * Compression is agreed on during the nickname handshake with the key {@link #HANDSHAKE_KEY}, independent of the
+ * inner codec.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class DeflateCodec implements MessageCodec {
+
+    /**
+     * Key of the NICKNAME message which carries the offered or the accepted compression.
+     */
+    public static final String HANDSHAKE_KEY = "Compression";
+
+    /**
+     * Name of this compression in the nickname handshake.
+     */
+    public static final String NAME = "Deflate";
+
+    /**
+     * Default number of bytes from which a message is compressed.
+     */
+    public static final int DEFAULT_THRESHOLD = 256;
+
+    /**
+     * Default maximum number of bytes a message may inflate to, the largest frame of the framed mode.
+     */
+    public static final int DEFAULT_MAX_INFLATED_SIZE = Transport.MAX_FRAME_SIZE;
+
+    /**
+     * First byte of a message which is not compressed.
+     */
+    static final byte RAW = 0;
+
+    /**
+     * First byte of a compressed message.
+     */
+    static final byte DEFLATED = 1;
+
+    /**
+     * Private variable that stores the codec whose messages are compressed.
+     */
+    private final MessageCodec inner;
+
+    /**
+     * Private variable that stores the number of bytes from which a message is compressed.
+     */
+    private final int threshold;
+
+    /**
+     * Private variable that stores the maximum number of bytes a received message may inflate to.
+     */
+    private final int maxInflatedSize;
+
+    /**
+     * Private deflate stream of the encoded messages, or null if no message was compressed so far.
+     */
+    private Deflater deflater;
+
+    /**
+     * Private inflate stream of the decoded messages, or null if no compressed message was received so far.
+     */
+    private Inflater inflater;
+
+    /**
+     * Private reusable buffer the inner codec encodes into.
+     */
+    private ByteBuffer plain = ByteBuffer.allocate(1024);
+
+    /**
+     * Private reusable buffer a compressed message is inflated into.
+     */
+    private ByteBuffer inflated = ByteBuffer.allocate(1024);
+
+    /**
+     * Constructor for a new codec with the default threshold and the default maximum inflated size.
+     * @param inner is the codec whose messages are compressed.
+     */
+    public DeflateCodec(MessageCodec inner) {
+        this(inner, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructor for a new codec with the default maximum inflated size.
+     * @param inner is the codec whose messages are compressed.
+     * @param threshold is the number of bytes from which a message is compressed.
+     */
+    public DeflateCodec(MessageCodec inner, int threshold) {
+        this(inner, threshold, DEFAULT_MAX_INFLATED_SIZE);
+    }
+
+    /**
+     * Constructor for a new codec.
+     * @param inner is the codec whose messages are compressed.
+     * @param threshold is the number of bytes from which a message is compressed.
+     * @param maxInflatedSize is the maximum number of bytes a received message may inflate to, which should be
+     *                        the largest message the receiver accepts without compression.
+     */
+    public DeflateCodec(MessageCodec inner, int threshold, int maxInflatedSize) {
+        this.inner = inner;
+        this.threshold = threshold;
+        this.maxInflatedSize = maxInflatedSize;
+    }
+
+    /**
+     * Method wraps a codec, if the compression was agreed on in the handshake.
+     * @param inner is the agreed codec.
+     * @param compression is the agreed compression from the handshake, or null.
+     * @param maxInflatedSize is the maximum number of bytes a received message may inflate to.
+     * @return a DeflateCodec around the codec, or the codec itself if there is no compression.
+     */
+    public static MessageCodec wrap(MessageCodec inner, String compression, int maxInflatedSize) {
+        return NAME.equals(compression) ? new DeflateCodec(inner, DEFAULT_THRESHOLD, maxInflatedSize) : inner;
+    }
+
+    /**
+     * Method returns the name of the inner codec, because the compression is agreed on with its own key.
+     * @return name of the inner codec.
+     */
+    @Override
+    public String getName() {
+        return inner.getName();
+    }
+
+    /**
+     * Method decodes one complete message, which is inflated first if it is compressed. A message which inflates
+     * to more than the maximum inflated size is rejected before more memory is taken, so a small frame can't
+     * blow up the memory of the receiver.
+     * @param payload contains exactly the bytes of one message, from its position to its limit.
+     * @param into is the holder the message is decoded into. Its former content is removed.
+     * @throws IOException if the message is malformed or too large, as a MessageFormatException.
+     */
+    @Override
+    public void decode(ByteBuffer payload, Message into) throws IOException {
+        if (!payload.hasRemaining()) {
+            throw new MessageFormatException("Empty message!");
+        }
+        byte kind = payload.get();
+        if (kind == RAW) {
+            inner.decode(payload, into);
+            return;
+        }
+        if (kind != DEFLATED) {
+            throw new MessageFormatException("Unknown compression " + kind + "!");
+        }
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        inflater.setInput(payload);
+        inflated.clear();
+        try {
+            // the stream was flushed at the end of the message, so all its bytes come out before the input is used up
+            while (true) {
+                inflater.inflate(inflated);
+                if (inflated.position() > maxInflatedSize) {
+                    throw new MessageFormatException("Compressed message inflates to more than " + maxInflatedSize
+                            + " bytes!");
+                }
+                if (inflated.hasRemaining()) {
+                    break;
+                }
+                inflated = JsonMessageCodec.ensure(inflated, inflated.capacity());
+            }
+        } catch (DataFormatException e) {
+            throw new MessageFormatException("Corrupt compressed message!");
+        }
+        inflated.flip();
+        inner.decode(inflated, into);
+    }
+
+    /**
+     * Method encodes the given message with the inner codec and appends it to the given buffer, compressed if it
+     * has at least the threshold size.
+     * @param message is the message to encode.
+     * @param out is the buffer in write mode the bytes are appended to.
+     * @return the buffer which contains the bytes, which is a new and larger buffer if out was too small.
+     */
+    @Override
+    public ByteBuffer encode(Message message, ByteBuffer out) {
+        plain.clear();
+        plain = inner.encode(message, plain);
+        plain.flip();
+        out = JsonMessageCodec.ensure(out, 1);
+        if (plain.remaining() < threshold) {
+            out.put(RAW);
+            out = JsonMessageCodec.ensure(out, plain.remaining());
+            out.put(plain);
+            return out;
+        }
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+        out.put(DEFLATED);
+        deflater.setInput(plain);
+        out = JsonMessageCodec.ensure(out, plain.remaining() / 2 + 16);
+        // a sync flush is complete when it did not fill the whole output buffer
+        while (true) {
+            deflater.deflate(out, Deflater.SYNC_FLUSH);
+            if (out.hasRemaining()) {
+                return out;
+            }
+            out = JsonMessageCodec.ensure(out, out.capacity());
+        }
+    }
+
+    /**
+     * Method frees the native memory of the deflate streams. The codec must not be used afterwards.
+     */
+    @Override
+    public void release() {
+        if (deflater != null) {
+            deflater.end();
+        }
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package lib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Received message of which only the type is decoded. The pairs stay in their JSON form until the message is
+ * delivered, so a message which is replaced by a newer one before it is delivered is never decoded.
+ * Messages of the binary codec are decoded when they are received, because its dictionary must see every message
+ * in order; their envelope already carries the decoded message. The envelope records when the message was received
+ * and how long decoding took, on the receiving and on the delivering thread together.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public final class Envelope {
+
+    /**
+     * Private variable that stores the type of the message.
+     */
+    private final JsonHashMapParser.Type type;
+
+    /**
+     * Private variable that stores the decoded message, or null if the message is not decoded yet.
+     */
+    private final Message message;
+
+    /**
+     * Private variable that stores the UTF-8 bytes of the JSON message, or null.
+     */
+    private final byte[] bytes;
+
+    /**
+     * Private variable that stores the JSON String of the message, or null.
+     */
+    private final String text;
+
+    /**
+     * Private variable that stores the System.nanoTime when the message was received.
+     */
+    private final long receivedNanos = System.nanoTime();
+
+    /**
+     * Private variable that stores the time in nanoseconds spent decoding the message so far.
+     */
+    private long decodeNanos;
+
+    /**
+     * Private constructor for a new envelope.
+     * @param type is the type of the message.
+     * @param message is the decoded message, or null.
+     * @param bytes are the UTF-8 bytes of the JSON message, or null.
+     * @param text is the JSON String of the message, or null.
+     * @param decodeNanos is the time in nanoseconds the receiving thread spent decoding.
+     */
+    private Envelope(JsonHashMapParser.Type type, Message message, byte[] bytes, String text, long decodeNanos) {
+        this.type = type;
+        this.message = message;
+        this.bytes = bytes;
+        this.text = text;
+        this.decodeNanos = decodeNanos;
+    }
+
+    /**
+     * Method creates an envelope for a message which is already decoded.
+     * @param message is the decoded message, which must not be reused.
+     * @return the envelope.
+     */
+    public static Envelope ofMessage(Message message) {
+        return ofMessage(message, 0);
+    }
+
+    /**
+     * Method creates an envelope for a message which is already decoded.
+     * @param message is the decoded message, which must not be reused.
+     * @param decodeNanos is the time in nanoseconds decoding took.
+     * @return the envelope.
+     */
+    public static Envelope ofMessage(Message message, long decodeNanos) {
+        return new Envelope(message.getType(), message, null, null, decodeNanos);
+    }
+
+    /**
+     * Method creates an envelope for a JSON message received by the framed transport.
+     * @param type is the type of the message.
+     * @param bytes are the UTF-8 bytes of the message, which must not be changed.
+     * @param decodeNanos is the time in nanoseconds decoding the type took.
+     * @return the envelope.
+     */
+    public static Envelope ofJson(JsonHashMapParser.Type type, byte[] bytes, long decodeNanos) {
+        return new Envelope(type, null, bytes, null, decodeNanos);
+    }
+
+    /**
+     * Method creates an envelope for a JSON message received by the legacy transport.
+     * @param type is the type of the message.
+     * @param text is the JSON String of the message.
+     * @param decodeNanos is the time in nanoseconds decoding the type took.
+     * @return the envelope.
+     */
+    public static Envelope ofJson(JsonHashMapParser.Type type, String text, long decodeNanos) {
+        return new Envelope(type, null, null, text, decodeNanos);
+    }
+
+    /**
+     * Method returns the type of the message.
+     * @return the type.
+     */
+    public JsonHashMapParser.Type getType() {
+        return type;
+    }
+
+    /**
+     * Method returns when the message was received.
+     * @return the System.nanoTime when the envelope was created.
+     */
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    /**
+     * Method returns the time spent decoding the message, read by the delivering thread after decode.
+     * @return time in nanoseconds.
+     */
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /**
+     * Method decodes the message.
+     * @param holder is the holder a JSON message is decoded into.
+     * @param json is the codec of the calling thread a JSON message is decoded with.
+     * @return the decoded message: the holder, or the message of an envelope which was decoded before.
+     * @throws IOException if the message is malformed, as a MessageFormatException.
+     */
+    public Message decode(Message holder, JsonMessageCodec json) throws IOException {
+        if (message != null) {
+            return message;
+        }
+        long start = System.nanoTime();
+        if (bytes != null) {
+            json.decode(ByteBuffer.wrap(bytes), holder);
+        }
+        else {
+            json.decode(text, holder);
+        }
+        decodeNanos += System.nanoTime() - start;
+        return holder;
+    }
+
+    /**
+     * Method returns the message as UTF-8 JSON without decoding its pairs, for example to record it.
+     * A message which is already decoded is encoded again.
+     * @param json is the codec of the calling thread a decoded message is encoded with.
+     * @param out is a reusable buffer a decoded message is encoded into.
+     * @return a buffer in read mode with the JSON, which must not be changed: the bytes of this envelope or out,
+     * or a new and larger buffer if out was too small.
+     */
+    public ByteBuffer toJson(JsonMessageCodec json, ByteBuffer out) {
+        if (bytes != null) {
+            return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        }
+        if (text != null) {
+            return StandardCharsets.UTF_8.encode(text);
+        }
+        out.clear();
+        return json.encode(message, out).flip();
+    }
+}
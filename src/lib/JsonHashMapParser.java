@@ -8,6 +8,8 @@ import java.util.Map;
 
 /**
  * Class to parse HashMaps into JSON objects.
+ * The client and the codecs no longer use the Parser, which builds several maps per message.
+ * It stays as a compatibility shim for code that still works with HashMaps, see MessageCodec and Message instead.
  * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
  */
 public class JsonHashMapParser {
@@ -15,10 +17,12 @@ public class JsonHashMapParser {
     /**
      * Enum class to give the created JSON object a special type.
      * The server and the client check the type and behave appropriate to the found type.
+     * The BinaryMessageCodec sends the ordinal of a type, so new types must be added at the end.
      */
     public enum Type {
         /**
          * Enum marks the JSON object as a list of players and their points.
+         * A client sends an empty SCORE to ask the server for a full list.
          */
         SCORE("Score"),
 
@@ -49,8 +53,48 @@ public class JsonHashMapParser {
 
         /**
          * Enum marks the JSON object as the nickname the client sends to the server for connection.
+         * A server which accepts the transport mode offered with the nickname sends this type back to the client.
          */
-        NICKNAME("Nickname");
+        NICKNAME("Nickname"),
+
+        /**
+         * Enum marks the JSON object as the players which joined, left or changed their points since the last
+         * SCORE_DELTA, together with a sequence number (see ScoreBoard).
+         */
+        SCORE_DELTA("ScoreDelta"),
+
+        /**
+         * Enum marks the JSON object as a heartbeat of a client, which the server answers with a PONG
+         * (see ClockEstimator).
+         */
+        PING("Ping"),
+
+        /**
+         * Enum marks the JSON object as the answer of the server to a PING, with the clock of the server.
+         */
+        PONG("Pong"),
+
+        /**
+         * Enum marks the JSON object as a question of a later round, which the server sends ahead of time
+         * (see PrefetchQueue).
+         */
+        PREFETCH("Prefetch"),
+
+        /**
+         * Enum marks the JSON object as the start of a round whose question was sent ahead of time.
+         */
+        ROUND("Round");
+
+        /**
+         * Map that stores every type by its type String, so a received type is found with one hash lookup.
+         */
+        private static final Map<String, Type> BY_TYPE_STRING = new HashMap<>();
+
+        static {
+            for (Type type : values()) {
+                BY_TYPE_STRING.put(type.typeString, type);
+            }
+        }
 
         /**
          * Variable that stores the type of this enum as a String.
@@ -79,31 +123,9 @@ public class JsonHashMapParser {
          * @return the type of the given String typeString as an enum type.
          */
         public static Type fromString(final String typeString) {
-            Type type;
-            switch (typeString) {
-                case "Score":
-                    type = SCORE;
-                    break;
-                case "Question":
-                    type = QUESTION;
-                    break;
-                case "Winner":
-                    type = WINNER;
-                    break;
-                case "Answer":
-                    type = ANSWER;
-                    break;
-                case "Error":
-                    type = ERROR;
-                    break;
-                case "Language":
-                    type = LANGUAGE;
-                    break;
-                case "Nickname":
-                    type = NICKNAME;
-                    break;
-                default:
-                    throw new IllegalArgumentException("No such a type!");
+            Type type = typeString == null ? null : BY_TYPE_STRING.get(typeString);
+            if (type == null) {
+                throw new IllegalArgumentException("No such a type!");
             }
             return type;
         }
@@ -0,0 +1,754 @@
+package lib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Codec for the JSON messages of the protocol. Reads the Type field and the flat key-value pairs of a message
+ * straight from the UTF-8 bytes (or from the String of the legacy transport) into a reusable Message holder,
+ * without building a JSONObject or a HashMap. Keys and short texts, like the nicknames of a Score message,
+ * are taken from a small cache, so a repeated nickname does not allocate a new String.
+ * Encoding keeps no state, so the encode methods may be used by several threads.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class JsonMessageCodec implements MessageCodec {
+
+    /**
+     * Key of the field which stores the type of a message.
+     */
+    public static final String TYPE_KEY = "Type";
+
+    /**
+     * Name of this codec in the nickname handshake.
+     */
+    public static final String NAME = "Json";
+
+    /**
+     * Number of slots of the String cache. Must be a power of two.
+     */
+    private static final int CACHE_SIZE = 1024;
+
+    /**
+     * Maximum length of a text value which is looked up in the String cache.
+     */
+    private static final int MAX_CACHED_LENGTH = 32;
+
+    /**
+     * Marks the end of the input.
+     */
+    private static final int END = -1;
+
+    /**
+     * Private variable that stores the bytes which are decoded at the moment, or null.
+     */
+    private ByteBuffer bytes;
+
+    /**
+     * Private variable that stores the text which is decoded at the moment, or null.
+     */
+    private CharSequence chars;
+
+    /**
+     * Private variable that stores the position within chars.
+     */
+    private int charPosition;
+
+    /**
+     * Private variable that stores the low surrogate of a decoded four byte UTF-8 sequence, or END.
+     */
+    private int pendingChar = END;
+
+    /**
+     * Private variable that stores the current character of the input.
+     */
+    private int current;
+
+    /**
+     * Private buffer a String of the input is collected in.
+     */
+    private char[] text = new char[256];
+
+    /**
+     * Private variable that stores the length of the String in text.
+     */
+    private int textLength;
+
+    /**
+     * Private cache of Strings decoded before.
+     */
+    private final String[] cache = new String[CACHE_SIZE];
+
+    /**
+     * Method returns the name of this codec in the nickname handshake.
+     * @return name of this codec.
+     */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Method returns that a JSON message is encoded without a reference to earlier messages.
+     * @return true.
+     */
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
+    /**
+     * Method decodes one complete message from its UTF-8 bytes.
+     * @param payload contains exactly the bytes of one message, from its position to its limit.
+     * @param into is the holder the message is decoded into. Its former content is removed.
+     * @throws IOException if the message is malformed, as a MessageFormatException.
+     */
+    @Override
+    public void decode(ByteBuffer payload, Message into) throws IOException {
+        this.bytes = payload;
+        this.chars = null;
+        try {
+            parse(into);
+        } finally {
+            this.bytes = null;
+        }
+    }
+
+    /**
+     * Method decodes one complete message from a String, as it is received by the legacy transport.
+     * @param json is the message as a JSON String.
+     * @param into is the holder the message is decoded into. Its former content is removed.
+     * @throws IOException if the message is malformed, as a MessageFormatException.
+     */
+    public void decode(CharSequence json, Message into) throws IOException {
+        this.chars = json;
+        this.charPosition = 0;
+        try {
+            parse(into);
+        } finally {
+            this.chars = null;
+        }
+    }
+
+    /**
+     * Method returns the type of a message from its UTF-8 bytes without decoding its pairs.
+     * The position of the payload is not changed. Messages of this codec start with their type,
+     * so the type is usually found after the first key.
+     * @param payload contains exactly the bytes of one message, from its position to its limit.
+     * @return the type of the message.
+     * @throws MessageFormatException if the message has no known type or is malformed before its type.
+     */
+    public JsonHashMapParser.Type peekType(ByteBuffer payload) throws MessageFormatException {
+        this.bytes = payload.duplicate();
+        this.chars = null;
+        try {
+            return skimType();
+        } finally {
+            this.bytes = null;
+        }
+    }
+
+    /**
+     * Method returns the type of a message from a String without decoding its pairs.
+     * @param json is the message as a JSON String.
+     * @return the type of the message.
+     * @throws MessageFormatException if the message has no known type or is malformed before its type.
+     */
+    public JsonHashMapParser.Type peekType(CharSequence json) throws MessageFormatException {
+        this.chars = json;
+        this.charPosition = 0;
+        try {
+            return skimType();
+        } finally {
+            this.chars = null;
+        }
+    }
+
+    /**
+     * Method encodes the given message as UTF-8 JSON and appends its bytes to the given buffer.
+     * @param message is the message to encode.
+     * @param out is the buffer in write mode the bytes are appended to.
+     * @return the buffer which contains the bytes, which is a new and larger buffer if out was too small.
+     */
+    @Override
+    public ByteBuffer encode(Message message, ByteBuffer out) {
+        out = putAscii(out, "{\"" + TYPE_KEY + "\":");
+        out = putString(out, message.getType().getTypeString());
+        for (int i = 0; i < message.size(); i++) {
+            out = putAscii(out, ",");
+            out = putString(out, message.getKey(i));
+            out = putAscii(out, ":");
+            if (message.isNumber(i)) {
+                out = putAscii(out, Long.toString(message.getNumber(i)));
+            }
+            else if (message.getText(i) == null) {
+                out = putAscii(out, "null");
+            }
+            else {
+                out = putString(out, message.getText(i));
+            }
+        }
+        return putAscii(out, "}");
+    }
+
+    /**
+     * Method encodes the given message as a JSON String, as it is sent by the legacy transport.
+     * @param message is the message to encode.
+     * @return the message as a JSON String.
+     */
+    public String toJsonString(Message message) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append("{\"").append(TYPE_KEY).append("\":");
+        appendString(sb, message.getType().getTypeString());
+        for (int i = 0; i < message.size(); i++) {
+            sb.append(',');
+            appendString(sb, message.getKey(i));
+            sb.append(':');
+            if (message.isNumber(i)) {
+                sb.append(message.getNumber(i));
+            }
+            else if (message.getText(i) == null) {
+                sb.append("null");
+            }
+            else {
+                appendString(sb, message.getText(i));
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    // ------ decoding ----------------------------------------------------------
+
+    /**
+     * Private method parses a flat JSON object from the current input into the given holder.
+     * @param into is the holder the message is decoded into.
+     * @throws MessageFormatException if the input is no flat JSON object with a known type.
+     */
+    private void parse(Message into) throws MessageFormatException {
+        into.clear(null);
+        pendingChar = END;
+        advance();
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        if (current != '}') {
+            while (true) {
+                if (current != '"') {
+                    throw new MessageFormatException("Expected a key!");
+                }
+                String key = readString(true);
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                if (current == '"') {
+                    boolean isType = TYPE_KEY.equals(key);
+                    String value = readString(isType);
+                    if (isType) {
+                        into.setType(toType(value));
+                    }
+                    else {
+                        into.putText(key, value);
+                    }
+                }
+                else if (current == '-' || (current >= '0' && current <= '9')) {
+                    into.putNumber(key, readNumber());
+                }
+                else if (current == 't') {
+                    readLiteral("true");
+                    into.putText(key, "true");
+                }
+                else if (current == 'f') {
+                    readLiteral("false");
+                    into.putText(key, "false");
+                }
+                else if (current == 'n') {
+                    readLiteral("null");
+                    into.putText(key, null);
+                }
+                else {
+                    throw new MessageFormatException("Only flat JSON objects are supported!");
+                }
+                skipWhitespace();
+                if (current == ',') {
+                    advance();
+                    skipWhitespace();
+                }
+                else {
+                    break;
+                }
+            }
+        }
+        expect('}');
+        skipWhitespace();
+        if (current != END) {
+            throw new MessageFormatException("Unexpected content after the JSON object!");
+        }
+        if (into.getType() == null) {
+            throw new MessageFormatException("Message has no type!");
+        }
+    }
+
+    /**
+     * Private method skips the pairs of a flat JSON object from the current input until it finds the type.
+     * Keys and values are only collected in the text buffer, so no String is created.
+     * @return the type of the message.
+     * @throws MessageFormatException if the input has no known type or is malformed before its type.
+     */
+    private JsonHashMapParser.Type skimType() throws MessageFormatException {
+        pendingChar = END;
+        advance();
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        while (current == '"') {
+            collectString();
+            boolean isType = collected(TYPE_KEY);
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            if (current == '"') {
+                if (isType) {
+                    return toType(readString(true));
+                }
+                collectString();
+            }
+            else if (current == '-' || (current >= '0' && current <= '9')) {
+                readNumber();
+            }
+            else if (current == 't') {
+                readLiteral("true");
+            }
+            else if (current == 'f') {
+                readLiteral("false");
+            }
+            else if (current == 'n') {
+                readLiteral("null");
+            }
+            else {
+                throw new MessageFormatException("Only flat JSON objects are supported!");
+            }
+            skipWhitespace();
+            if (current != ',') {
+                break;
+            }
+            advance();
+            skipWhitespace();
+        }
+        throw new MessageFormatException("Message has no type!");
+    }
+
+    /**
+     * Private method returns the type for a type String.
+     * @param value is the type String of a message.
+     * @return the type.
+     * @throws MessageFormatException if there is no such type.
+     */
+    private static JsonHashMapParser.Type toType(String value) throws MessageFormatException {
+        try {
+            return JsonHashMapParser.Type.fromString(value);
+        } catch (IllegalArgumentException e) {
+            throw new MessageFormatException("Unknown type " + value + "!");
+        }
+    }
+
+    /**
+     * Private method returns whether the String collected in text equals the given String.
+     * @param s is the String to compare with.
+     * @return true, if both are equal.
+     */
+    private boolean collected(String s) {
+        if (s.length() != textLength) {
+            return false;
+        }
+        for (int i = 0; i < textLength; i++) {
+            if (s.charAt(i) != text[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Private method reads a JSON String. The current character must be the opening quote.
+     * @param cached is true, if the String should be looked up in the cache.
+     * @return the String without quotes and escapes.
+     * @throws MessageFormatException if the String is malformed.
+     */
+    private String readString(boolean cached) throws MessageFormatException {
+        collectString();
+        if (cached || textLength <= MAX_CACHED_LENGTH) {
+            return cachedString();
+        }
+        return new String(text, 0, textLength);
+    }
+
+    /**
+     * Private method reads a JSON String into the text buffer. The current character must be the opening quote.
+     * @throws MessageFormatException if the String is malformed.
+     */
+    private void collectString() throws MessageFormatException {
+        textLength = 0;
+        advance();
+        while (current != '"') {
+            if (current == END) {
+                throw new MessageFormatException("Unterminated String!");
+            }
+            if (current == '\\') {
+                advance();
+                switch (current) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        appendChar((char) current);
+                        break;
+                    case 'b':
+                        appendChar('\b');
+                        break;
+                    case 'f':
+                        appendChar('\f');
+                        break;
+                    case 'n':
+                        appendChar('\n');
+                        break;
+                    case 'r':
+                        appendChar('\r');
+                        break;
+                    case 't':
+                        appendChar('\t');
+                        break;
+                    case 'u':
+                        int c = 0;
+                        for (int i = 0; i < 4; i++) {
+                            advance();
+                            int digit = Character.digit(current, 16);
+                            if (digit < 0) {
+                                throw new MessageFormatException("Invalid unicode escape!");
+                            }
+                            c = (c << 4) | digit;
+                        }
+                        appendChar((char) c);
+                        break;
+                    default:
+                        throw new MessageFormatException("Invalid escape!");
+                }
+            }
+            else {
+                appendChar((char) current);
+            }
+            advance();
+        }
+        advance();
+    }
+
+    /**
+     * Private method reads a JSON integer number. The protocol only uses integers.
+     * @return the number as a long.
+     * @throws MessageFormatException if the number is malformed or no integer.
+     */
+    private long readNumber() throws MessageFormatException {
+        boolean negative = current == '-';
+        if (negative) {
+            advance();
+        }
+        if (current < '0' || current > '9') {
+            throw new MessageFormatException("Invalid number!");
+        }
+        long value = 0;
+        while (current >= '0' && current <= '9') {
+            value = value * 10 + (current - '0');
+            advance();
+        }
+        if (current == '.' || current == 'e' || current == 'E') {
+            throw new MessageFormatException("Only integer numbers are supported!");
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Private method reads the given literal.
+     * @param literal is the expected literal.
+     * @throws MessageFormatException if the input does not match the literal.
+     */
+    private void readLiteral(String literal) throws MessageFormatException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (current != literal.charAt(i)) {
+                throw new MessageFormatException("Invalid literal!");
+            }
+            advance();
+        }
+    }
+
+    /**
+     * Private method checks the current character and moves on to the next one.
+     * @param c is the expected character.
+     * @throws MessageFormatException if the current character is another one.
+     */
+    private void expect(char c) throws MessageFormatException {
+        if (current != c) {
+            throw new MessageFormatException("Expected '" + c + "'!");
+        }
+        advance();
+    }
+
+    /**
+     * Private method skips JSON whitespace.
+     * @throws MessageFormatException if the input is no valid UTF-8.
+     */
+    private void skipWhitespace() throws MessageFormatException {
+        while (current == ' ' || current == '\t' || current == '\n' || current == '\r') {
+            advance();
+        }
+    }
+
+    /**
+     * Private method moves on to the next UTF-16 character of the input and stores it in current.
+     * Bytes are decoded from UTF-8 on the fly.
+     * @throws MessageFormatException if the input is no valid UTF-8.
+     */
+    private void advance() throws MessageFormatException {
+        if (pendingChar != END) {
+            current = pendingChar;
+            pendingChar = END;
+        }
+        else if (chars != null) {
+            current = charPosition < chars.length() ? chars.charAt(charPosition++) : END;
+        }
+        else if (!bytes.hasRemaining()) {
+            current = END;
+        }
+        else {
+            int b = bytes.get();
+            if (b >= 0) {
+                current = b;
+                return;
+            }
+            int codePoint;
+            int following;
+            if ((b & 0xE0) == 0xC0) {
+                codePoint = b & 0x1F;
+                following = 1;
+            }
+            else if ((b & 0xF0) == 0xE0) {
+                codePoint = b & 0x0F;
+                following = 2;
+            }
+            else if ((b & 0xF8) == 0xF0) {
+                codePoint = b & 0x07;
+                following = 3;
+            }
+            else {
+                throw new MessageFormatException("Invalid UTF-8!");
+            }
+            for (int i = 0; i < following; i++) {
+                if (!bytes.hasRemaining()) {
+                    throw new MessageFormatException("Truncated UTF-8!");
+                }
+                int next = bytes.get();
+                if ((next & 0xC0) != 0x80) {
+                    throw new MessageFormatException("Invalid UTF-8!");
+                }
+                codePoint = (codePoint << 6) | (next & 0x3F);
+            }
+            if (Character.isSupplementaryCodePoint(codePoint)) {
+                current = Character.highSurrogate(codePoint);
+                pendingChar = Character.lowSurrogate(codePoint);
+            }
+            else {
+                current = codePoint;
+            }
+        }
+    }
+
+    /**
+     * Private method appends a character to the String collected in text.
+     * @param c is the character to append.
+     */
+    private void appendChar(char c) {
+        if (textLength == text.length) {
+            char[] bigger = new char[text.length * 2];
+            System.arraycopy(text, 0, bigger, 0, textLength);
+            text = bigger;
+        }
+        text[textLength++] = c;
+    }
+
+    /**
+     * Private method returns the String collected in text from the cache, or creates and caches it.
+     * @return the collected String.
+     */
+    private String cachedString() {
+        int hash = 0;
+        for (int i = 0; i < textLength; i++) {
+            hash = 31 * hash + text[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        String s = cache[slot];
+        if (s != null && s.length() == textLength) {
+            boolean equal = true;
+            for (int i = 0; i < textLength && equal; i++) {
+                equal = s.charAt(i) == text[i];
+            }
+            if (equal) {
+                return s;
+            }
+        }
+        s = new String(text, 0, textLength);
+        cache[slot] = s;
+        return s;
+    }
+
+    // ------ encoding ----------------------------------------------------------
+
+    /**
+     * Private method appends the given ASCII text to the buffer.
+     * @param out is the buffer in write mode.
+     * @param s is the ASCII text.
+     * @return the buffer which contains the bytes.
+     */
+    private static ByteBuffer putAscii(ByteBuffer out, String s) {
+        out = ensure(out, s.length());
+        for (int i = 0; i < s.length(); i++) {
+            out.put((byte) s.charAt(i));
+        }
+        return out;
+    }
+
+    /**
+     * Private method appends the given text as a quoted and escaped JSON String in UTF-8.
+     * @param out is the buffer in write mode.
+     * @param s is the text.
+     * @return the buffer which contains the bytes.
+     */
+    private static ByteBuffer putString(ByteBuffer out, String s) {
+        // every char needs at most six bytes (an escape or half of a four byte sequence)
+        out = ensure(out, s.length() * 6 + 2);
+        out.put((byte) '"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\' || c == '/') {
+                out.put((byte) '\\').put((byte) c);
+            }
+            else if (c < 0x20) {
+                putEscape(out, c);
+            }
+            else if (c < 0x80) {
+                out.put((byte) c);
+            }
+            else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                out.put((byte) (0xF0 | (codePoint >> 18)));
+                out.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (codePoint & 0x3F)));
+            }
+            else {
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        out.put((byte) '"');
+        return out;
+    }
+
+    /**
+     * Private method appends a control character as a JSON escape.
+     * @param out is the buffer in write mode, which has at least six bytes left.
+     * @param c is the control character.
+     */
+    private static void putEscape(ByteBuffer out, char c) {
+        switch (c) {
+            case '\b':
+                out.put((byte) '\\').put((byte) 'b');
+                break;
+            case '\f':
+                out.put((byte) '\\').put((byte) 'f');
+                break;
+            case '\n':
+                out.put((byte) '\\').put((byte) 'n');
+                break;
+            case '\r':
+                out.put((byte) '\\').put((byte) 'r');
+                break;
+            case '\t':
+                out.put((byte) '\\').put((byte) 't');
+                break;
+            default:
+                String hex = Integer.toHexString(c);
+                out.put((byte) '\\').put((byte) 'u');
+                for (int i = hex.length(); i < 4; i++) {
+                    out.put((byte) '0');
+                }
+                for (int i = 0; i < hex.length(); i++) {
+                    out.put((byte) hex.charAt(i));
+                }
+        }
+    }
+
+    /**
+     * Private method appends the given text as a quoted and escaped JSON String.
+     * @param sb is the builder the text is appended to.
+     * @param s is the text.
+     */
+    private static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append('\\').append(c);
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        String hex = Integer.toHexString(c);
+                        sb.append("\\u");
+                        for (int j = hex.length(); j < 4; j++) {
+                            sb.append('0');
+                        }
+                        sb.append(hex);
+                    }
+                    else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Method makes sure the buffer has at least the given number of bytes left.
+     * @param out is the buffer in write mode.
+     * @param needed is the number of bytes needed.
+     * @return the given buffer, or a new and larger buffer of the same kind with its content.
+     */
+    static ByteBuffer ensure(ByteBuffer out, int needed) {
+        if (out.remaining() >= needed) {
+            return out;
+        }
+        int capacity = Math.max(out.capacity() * 2, out.position() + needed);
+        ByteBuffer bigger = out.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        out.flip();
+        bigger.put(out);
+        return bigger;
+    }
+}
@@ -0,0 +1,186 @@
+package lib;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Thread safe histogram of latencies in microseconds in the style of HdrHistogram. Values below 128 have their own
+ * bucket, larger values share a bucket with the values of the same 64 sub-buckets of their power of two, so every
+ * value is stored with a precision of about 1.5 percent. Recording a value allocates nothing and takes no lock,
+ * so many threads can record into the same histogram.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of values below which every value has its own bucket.
+     */
+    private static final int LINEAR_BUCKETS = 128;
+
+    /**
+     * Number of sub-buckets of every power of two above the linear buckets.
+     */
+    private static final int SUB_BUCKETS = 64;
+
+    /**
+     * Number of buckets, enough for every positive long value.
+     */
+    private static final int BUCKETS = LINEAR_BUCKETS + 56 * SUB_BUCKETS;
+
+    /**
+     * Private variable that stores the name of the histogram.
+     */
+    private final String name;
+
+    /**
+     * Private array that stores the number of values of every bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Private variable that stores the number of values.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Private variable that stores the sum of the values.
+     */
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * Private variable that stores the largest value.
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructor for a new empty histogram.
+     * @param name is the name of the histogram in the report.
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Method records a value in nanoseconds, which is stored in microseconds.
+     * @param nanos is the value in nanoseconds. Negative values are recorded as zero.
+     */
+    public void recordNanos(long nanos) {
+        record(Math.max(0, nanos) / 1000);
+    }
+
+    /**
+     * Method records a value.
+     * @param micros is the value in microseconds.
+     */
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        counts.incrementAndGet(bucket(micros));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+        max.accumulate(micros);
+    }
+
+    /**
+     * Method returns the name of the histogram.
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Method returns the number of recorded values.
+     * @return number of values.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Method returns the mean of the recorded values.
+     * @return the mean in microseconds, or 0 if no value was recorded.
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Method returns the largest recorded value.
+     * @return the largest value in microseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Method returns the value below or at which the given percentage of the recorded values lies.
+     * Like HdrHistogram it returns the highest value of the bucket, but never more than the largest value.
+     * @param percentile is the percentage between 0 and 100.
+     * @return the value in microseconds, or 0 if no value was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Private method returns the bucket of a value.
+     * @param value is the value, not negative.
+     * @return index of the bucket.
+     */
+    private static int bucket(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Private method returns the highest value stored in a bucket.
+     * @param bucket is the index of the bucket.
+     * @return the highest value of the bucket.
+     */
+    private static long highestValue(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Method returns one line of the report with the count, the mean and the percentiles in milliseconds.
+     * @return the line of the report.
+     */
+    public String toReportLine() {
+        return String.format("%-22s %8d %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f", name, getCount(), getMean() / 1000.0,
+                getValueAtPercentile(50) / 1000.0, getValueAtPercentile(90) / 1000.0,
+                getValueAtPercentile(99) / 1000.0, getValueAtPercentile(99.9) / 1000.0, getMax() / 1000.0);
+    }
+
+    /**
+     * Method returns the header of the report lines.
+     * @return the header.
+     */
+    public static String reportHeader() {
+        return String.format("%-22s %8s %9s %9s %9s %9s %9s %9s", "latency [ms]", "count", "mean",
+                "p50", "p90", "p99", "p99.9", "max");
+    }
+}
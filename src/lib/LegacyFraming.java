@@ -0,0 +1,163 @@
+package lib;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helper class for the legacy transport mode on a non-blocking channel. The legacy client writes every message as a
+ * String with an ObjectOutputStream, so the server and the client sessions on a selector have to read and write the
+ * few parts of the Java serialization stream format this needs: the stream header, TC_STRING and TC_LONGSTRING
+ * objects with modified UTF-8, TC_REFERENCE back references to them and TC_RESET.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public final class LegacyFraming {
+
+    /**
+     * Magic number at the start of a serialization stream.
+     */
+    public static final short STREAM_MAGIC = (short) 0xACED;
+
+    /**
+     * Version at the start of a serialization stream.
+     */
+    public static final short STREAM_VERSION = 5;
+
+    /**
+     * Number of bytes of the stream header.
+     */
+    public static final int HEADER_SIZE = 4;
+
+    /**
+     * Tag of a String with up to 65535 bytes.
+     */
+    public static final byte TC_STRING = (byte) 0x74;
+
+    /**
+     * Tag of a String with more than 65535 bytes.
+     */
+    public static final byte TC_LONGSTRING = (byte) 0x7C;
+
+    /**
+     * Tag of a reset of the handle table, which carries no data.
+     */
+    public static final byte TC_RESET = (byte) 0x79;
+
+    /**
+     * Tag of a back reference to an object read before, followed by its four byte handle.
+     */
+    public static final byte TC_REFERENCE = (byte) 0x71;
+
+    /**
+     * Handle of the first object after the stream header or a reset; every further object gets the next handle.
+     */
+    public static final int BASE_WIRE_HANDLE = 0x7E0000;
+
+    /**
+     * Private constructor, because this class only has static methods.
+     */
+    private LegacyFraming() {
+    }
+
+    /**
+     * Method writes the stream header, which an ObjectInputStream expects before the first object.
+     * @param out is the buffer in write mode, which has at least four bytes left.
+     */
+    public static void putHeader(ByteBuffer out) {
+        out.putShort(STREAM_MAGIC);
+        out.putShort(STREAM_VERSION);
+    }
+
+    /**
+     * Method returns the number of bytes the given String needs in modified UTF-8.
+     * @param s is the String.
+     * @return number of bytes.
+     */
+    public static long modifiedUtf8Length(String s) {
+        long length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != 0 && c < 0x80) {
+                length++;
+            }
+            else if (c < 0x800) {
+                length += 2;
+            }
+            else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Method returns the number of bytes the given String needs as a serialized String object.
+     * @param s is the String.
+     * @return number of bytes, with tag and length.
+     */
+    public static long objectLength(String s) {
+        long length = modifiedUtf8Length(s);
+        return length > 0xFFFF ? 1 + 8 + length : 1 + 2 + length;
+    }
+
+    /**
+     * Method writes the given String as a serialized String object, like ObjectOutputStream.writeObject does.
+     * @param out is the buffer in write mode, which has at least objectLength(s) bytes left.
+     * @param s is the String.
+     */
+    public static void putString(ByteBuffer out, String s) {
+        long length = modifiedUtf8Length(s);
+        if (length > 0xFFFF) {
+            out.put(TC_LONGSTRING);
+            out.putLong(length);
+        }
+        else {
+            out.put(TC_STRING);
+            out.putShort((short) length);
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != 0 && c < 0x80) {
+                out.put((byte) c);
+            }
+            else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else {
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Method reads a String of the given number of modified UTF-8 bytes.
+     * @param in is the buffer in read mode, which has at least length bytes left.
+     * @param length is the number of bytes.
+     * @param scratch is a reusable array with at least length chars.
+     * @return the String, or null if the bytes are no valid modified UTF-8.
+     */
+    public static String getModifiedUtf8(ByteBuffer in, int length, char[] scratch) {
+        int end = in.position() + length;
+        int n = 0;
+        while (in.position() < end) {
+            int b = in.get() & 0xFF;
+            if (b < 0x80) {
+                scratch[n++] = (char) b;
+            }
+            else if ((b & 0xE0) == 0xC0 && in.position() < end) {
+                scratch[n++] = (char) (((b & 0x1F) << 6) | (in.get() & 0x3F));
+            }
+            else if ((b & 0xF0) == 0xE0 && in.position() + 1 < end) {
+                int b2 = in.get() & 0x3F;
+                int b3 = in.get() & 0x3F;
+                scratch[n++] = (char) (((b & 0x0F) << 12) | (b2 << 6) | b3);
+            }
+            else {
+                in.position(end);
+                return null;
+            }
+        }
+        return new String(scratch, 0, n);
+    }
+}
@@ -0,0 +1,243 @@
+package lib;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Reusable holder for one message of the protocol. A MessageCodec decodes the type and the key-value pairs of a
+ * message straight into this holder, so no JSON object or HashMap is needed per message.
+ * The pairs are either texts (Question, Language, Winner, Answer, Nickname, Error) or numbers (the points of a
+ * Score message, keyed by nickname). A holder is not thread safe and is overwritten by the next decode.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class Message {
+
+    /**
+     * Initial number of key-value pairs a holder can store without growing.
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * Private variable that stores the type of the message.
+     */
+    private JsonHashMapParser.Type type;
+
+    /**
+     * Private array that stores the keys of the pairs.
+     */
+    private String[] keys = new String[INITIAL_CAPACITY];
+
+    /**
+     * Private array that stores the text values of the pairs, or null if a value is a number.
+     */
+    private String[] texts = new String[INITIAL_CAPACITY];
+
+    /**
+     * Private array that stores the number values of the pairs.
+     */
+    private long[] numbers = new long[INITIAL_CAPACITY];
+
+    /**
+     * Private array that stores whether a value is a number.
+     */
+    private boolean[] numeric = new boolean[INITIAL_CAPACITY];
+
+    /**
+     * Private variable that stores the number of pairs.
+     */
+    private int size;
+
+    /**
+     * Method removes all pairs and sets the type of this message.
+     * @param type is the new type of the message, or null if it is not known yet.
+     * @return this message.
+     */
+    public Message clear(JsonHashMapParser.Type type) {
+        // drop references, so old texts can be collected
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(texts, 0, size, null);
+        this.type = type;
+        this.size = 0;
+        return this;
+    }
+
+    /**
+     * Method returns the type of this message.
+     * @return the type of this message.
+     */
+    public JsonHashMapParser.Type getType() {
+        return type;
+    }
+
+    /**
+     * Method sets the type of this message without touching its pairs.
+     * @param type is the type of this message.
+     */
+    public void setType(JsonHashMapParser.Type type) {
+        this.type = type;
+    }
+
+    /**
+     * Method returns the number of key-value pairs of this message.
+     * @return number of pairs.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method returns the key of the pair at the given index.
+     * @param index is the index of the pair.
+     * @return the key of the pair.
+     */
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Method returns whether the value of the pair at the given index is a number.
+     * @param index is the index of the pair.
+     * @return true, if the value is a number.
+     */
+    public boolean isNumber(int index) {
+        return numeric[index];
+    }
+
+    /**
+     * Method returns the number value of the pair at the given index.
+     * @param index is the index of the pair.
+     * @return the value as a long, or 0 if the value is a text.
+     */
+    public long getNumber(int index) {
+        return numbers[index];
+    }
+
+    /**
+     * Method returns the value of the pair at the given index as a text.
+     * @param index is the index of the pair.
+     * @return the value as a String.
+     */
+    public String getText(int index) {
+        return numeric[index] ? Long.toString(numbers[index]) : texts[index];
+    }
+
+    /**
+     * Method returns the value for the given key as a text.
+     * @param key is the key of the pair.
+     * @return the value as a String, or null if there is no such key.
+     */
+    public String getText(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : getText(index);
+    }
+
+    /**
+     * Method returns the value for the given key as a text and rejects a message without it.
+     * @param key is the key of the pair.
+     * @return the value as a String.
+     * @throws MessageFormatException if there is no such key or its value is null.
+     */
+    public String requireText(String key) throws MessageFormatException {
+        String text = getText(key);
+        if (text == null) {
+            throw new MessageFormatException(type + " message without " + key + "!");
+        }
+        return text;
+    }
+
+    /**
+     * Method returns the main text of this message, which is stored with the type string as its key,
+     * for example the question of a QUESTION message.
+     * @return the main text as a String, or null if there is none.
+     */
+    public String getText() {
+        return type == null ? null : getText(type.getTypeString());
+    }
+
+    /**
+     * Method returns the index of the pair with the given key.
+     * @param key is the key of the pair.
+     * @return the index of the pair, or -1 if there is no such key.
+     */
+    public int indexOf(String key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method appends a pair with a text value.
+     * @param key is the key of the pair.
+     * @param value is the text value of the pair.
+     * @return this message.
+     */
+    public Message putText(String key, String value) {
+        int index = append(key);
+        texts[index] = value;
+        numeric[index] = false;
+        return this;
+    }
+
+    /**
+     * Method appends a pair with a number value.
+     * @param key is the key of the pair.
+     * @param value is the number value of the pair.
+     * @return this message.
+     */
+    public Message putNumber(String key, long value) {
+        int index = append(key);
+        numbers[index] = value;
+        numeric[index] = true;
+        return this;
+    }
+
+    /**
+     * Method replaces the type and the pairs of this message with those of another message, so the other holder
+     * can be reused.
+     * @param other is the message to copy.
+     * @return this message.
+     */
+    public Message copyFrom(Message other) {
+        clear(other.type);
+        for (int i = 0; i < other.size; i++) {
+            int index = append(other.keys[i]);
+            texts[index] = other.texts[i];
+            numbers[index] = other.numbers[i];
+            numeric[index] = other.numeric[i];
+        }
+        return this;
+    }
+
+    /**
+     * Method copies the pairs of this message into a new HashMap, like JsonHashMapParser.Parser.jsonToHashMap does.
+     * Only meant for code which still needs a map.
+     * @return the pairs of this message as a HashMap, numbers as Long values.
+     */
+    public HashMap<String, Object> toHashMap() {
+        HashMap<String, Object> map = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put(keys[i], numeric[i] ? (Object) numbers[i] : texts[i]);
+        }
+        return map;
+    }
+
+    /**
+     * Private method reserves the next pair and grows the arrays if necessary.
+     * @param key is the key of the new pair.
+     * @return the index of the new pair.
+     */
+    private int append(String key) {
+        if (size == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            numeric = Arrays.copyOf(numeric, capacity);
+        }
+        keys[size] = key;
+        return size++;
+    }
+}
@@ -0,0 +1,74 @@
+package lib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for the encoding of protocol messages into bytes and back.
+ * A codec decodes straight from the received bytes into a reusable Message holder.
+ * Codecs may keep state between calls, so every connection needs its own codec instance
+ * and encode and decode must each only be called by one thread at a time.
+ * The codec of a framed connection is agreed on during the nickname handshake with the key {@link #HANDSHAKE_KEY},
+ * a compression around it with the key DeflateCodec.HANDSHAKE_KEY.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public interface MessageCodec {
+
+    /**
+     * Key of the NICKNAME message which carries the offered or the accepted codec.
+     */
+    String HANDSHAKE_KEY = "Codec";
+
+    /**
+     * Method creates a new codec instance for the given name.
+     * @param name is the name of the codec from the handshake, or null for the default JSON codec.
+     * @return a new codec.
+     */
+    static MessageCodec forName(String name) {
+        if (name == null || JsonMessageCodec.NAME.equals(name)) {
+            return new JsonMessageCodec();
+        }
+        if (BinaryMessageCodec.NAME.equals(name)) {
+            return new BinaryMessageCodec();
+        }
+        throw new IllegalArgumentException("No such a codec!");
+    }
+
+    /**
+     * Method returns the name of this codec in the nickname handshake.
+     * @return name of this codec.
+     */
+    String getName();
+
+    /**
+     * Method decodes one complete message.
+     * @param payload contains exactly the bytes of one message, from its position to its limit.
+     * @param into is the holder the message is decoded into. Its former content is removed.
+     * @throws IOException if the message is malformed, as a MessageFormatException.
+     */
+    void decode(ByteBuffer payload, Message into) throws IOException;
+
+    /**
+     * Method encodes the given message and appends its bytes to the given buffer.
+     * @param message is the message to encode.
+     * @param out is the buffer in write mode the bytes are appended to.
+     * @return the buffer which contains the bytes, which is a new and larger buffer if out was too small.
+     */
+    ByteBuffer encode(Message message, ByteBuffer out);
+
+    /**
+     * Method returns whether this codec encodes a message into the same bytes whatever it has encoded before,
+     * so one encoding of a broadcast can be sent to every connection with this codec.
+     * @return true, if the encoding does not depend on earlier messages.
+     */
+    default boolean isStateless() {
+        return false;
+    }
+
+    /**
+     * Method frees the resources of this codec which the garbage collector does not free in time, like native
+     * memory. The codec must not be used afterwards. Most codecs have nothing to free.
+     */
+    default void release() {
+    }
+}
@@ -0,0 +1,98 @@
+package lib;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Registry which maps every message type to its handler. A received message is dispatched with one lookup
+ * in an EnumMap, which is an array indexed by the ordinal of the type, instead of a chain of comparisons.
+ * A message of a type without a handler is rejected, so it can't be mistaken for another type.
+ * The dispatcher counts the messages of every type and the rejected messages; the counters can be read
+ * from any thread. A new message type of the protocol only needs a new registration.
+ * @param <C> is the type of the context the handlers get, for example the connection a message was received on.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class MessageDispatcher<C> {
+
+    /**
+     * Interface for the handler of one message type.
+     * @param <C> is the type of the context the handler gets.
+     */
+    public interface Handler<C> {
+
+        /**
+         * Method handles a received message. The message holder may be reused for the next message.
+         * @param context is the context of the message.
+         * @param message is the received message.
+         * @throws IOException if the message is malformed, as a MessageFormatException, or could not be handled.
+         */
+        void handle(C context, Message message) throws IOException;
+    }
+
+    /**
+     * Private map that stores the handler of every registered type.
+     */
+    private final Map<JsonHashMapParser.Type, Handler<C>> handlers = new EnumMap<>(JsonHashMapParser.Type.class);
+
+    /**
+     * Private array that stores the number of dispatched messages, indexed by the ordinal of their type.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(JsonHashMapParser.Type.values().length);
+
+    /**
+     * Private variable that stores the number of rejected messages.
+     */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Method registers the handler of a type. Must be called before the first message is dispatched.
+     * @param type is the message type.
+     * @param handler is the handler of the type.
+     * @return this dispatcher, so registrations can be chained.
+     * @throws IllegalStateException if the type already has a handler.
+     */
+    public MessageDispatcher<C> register(JsonHashMapParser.Type type, Handler<C> handler) {
+        if (handlers.putIfAbsent(type, handler) != null) {
+            throw new IllegalStateException("Type " + type + " already has a handler!");
+        }
+        return this;
+    }
+
+    /**
+     * Method hands a received message to the handler of its type.
+     * @param context is the context of the message.
+     * @param message is the received message.
+     * @throws IOException if the message has no type or its type has no handler, as a MessageFormatException,
+     * or if the handler failed.
+     */
+    public void dispatch(C context, Message message) throws IOException {
+        JsonHashMapParser.Type type = message.getType();
+        Handler<C> handler = type == null ? null : handlers.get(type);
+        if (handler == null) {
+            rejected.incrementAndGet();
+            throw new MessageFormatException("No handler for type " + type + "!");
+        }
+        counts.incrementAndGet(type.ordinal());
+        handler.handle(context, message);
+    }
+
+    /**
+     * Method returns the number of dispatched messages of a type.
+     * @param type is the message type.
+     * @return number of messages.
+     */
+    public long getCount(JsonHashMapParser.Type type) {
+        return counts.get(type.ordinal());
+    }
+
+    /**
+     * Method returns the number of rejected messages.
+     * @return number of messages without a handler.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,26 @@
+package lib;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown by a MessageCodec if a received message is malformed.
+ * With a stateless codec, see {@link MessageCodec#isStateless()}, the connection itself is still intact, so the
+ * receiver may just skip the message. A codec with state, like the dictionary of the binary codec or the stream of
+ * the deflate codec, may have changed it for the broken message, so the receiver must close the connection.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class MessageFormatException extends IOException {
+
+    /**
+     * Version of the serialized form of this exception.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor for a new exception with the given detail message.
+     * @param message describes what is wrong with the received message.
+     */
+    public MessageFormatException(String message) {
+        super(message);
+    }
+}
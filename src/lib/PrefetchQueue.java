@@ -0,0 +1,98 @@
+package lib;
+
+import java.util.TreeMap;
+
+/**
+ * Client side queue of the questions a server sends ahead of time. A client which offers {@link #HANDSHAKE_KEY}
+ * with a depth in its NICKNAME message gets every question up to this number of rounds early, as a PREFETCH
+ * message with the round in {@link #ROUND_KEY}. When a round starts, the server only sends a small ROUND message
+ * with the round and, in {@link #START_KEY}, the clock of the server when the question is shown. The client takes
+ * the question out of this queue, so the next term is shown without waiting for its payload, and every client shows
+ * it at the same time, whatever the speed of its link.
+ * The round numbers of a server only grow, also across games. The queue keeps at most {@link #MAX_DEPTH} + 1
+ * questions: a question for a round which is already in the queue replaces it, and when the queue is full, the
+ * question of the oldest round is removed. This class is not thread safe.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class PrefetchQueue {
+
+    /**
+     * Key of the NICKNAME message with which a client offers to prefetch the given number of questions.
+     */
+    public static final String HANDSHAKE_KEY = "Prefetch";
+
+    /**
+     * Key of the PREFETCH and ROUND messages with the number of the round.
+     */
+    public static final String ROUND_KEY = "Round";
+
+    /**
+     * Key of the ROUND message with the clock of the server in milliseconds when the question is shown.
+     */
+    public static final String START_KEY = "Start";
+
+    /**
+     * Largest number of questions a server sends ahead of time.
+     */
+    public static final int MAX_DEPTH = 3;
+
+    /**
+     * Private map that stores the terms, keyed by round.
+     */
+    private final TreeMap<Long, String> terms = new TreeMap<>();
+
+    /**
+     * Method returns the depth a client offered, limited to {@link #MAX_DEPTH}.
+     * @param offered is the depth offered in the NICKNAME message, or null.
+     * @return the depth, or 0 if the client offered no valid depth.
+     */
+    public static int parseDepth(String offered) {
+        if (offered == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Math.min(MAX_DEPTH, Integer.parseInt(offered.trim())));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Method adds the question of a round.
+     * @param round is the number of the round.
+     * @param term is the term the players must translate.
+     */
+    public void offer(long round, String term) {
+        // the server sends the questions again on a new connection, so a round may already be in the queue
+        terms.put(round, term);
+        while (terms.size() > MAX_DEPTH + 1) {
+            terms.pollFirstEntry();
+        }
+    }
+
+    /**
+     * Method takes the question of a round which starts now. The questions of this and all older rounds are removed.
+     * @param round is the number of the round.
+     * @return the term of the round, or null if its question was not received.
+     */
+    public String activate(long round) {
+        String term = terms.get(round);
+        terms.headMap(round, true).clear();
+        return term;
+    }
+
+    /**
+     * Method returns the number of questions in the queue.
+     * @return number of questions.
+     */
+    public int size() {
+        return terms.size();
+    }
+
+    /**
+     * Method removes all questions, for example when the client connects to another server.
+     */
+    public void clear() {
+        terms.clear();
+    }
+}
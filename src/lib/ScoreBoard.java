@@ -0,0 +1,176 @@
+package lib;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Server side bookkeeping of the points of a game, which builds the SCORE and SCORE_DELTA messages.
+ * Every delta gets the next sequence number and carries only the players which joined, left or whose points
+ * changed since the last delta: joined and changed players with their points, left players with a null value.
+ * A SCORE snapshot carries the sequence number of the last delta, so a client knows which delta comes next.
+ * Deltas are only sent to clients which offered {@link #HANDSHAKE_KEY} in their NICKNAME message.
+ * A client which misses a delta sends an empty SCORE message to ask for a new snapshot.
+ * This class is not thread safe.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class ScoreBoard {
+
+    /**
+     * Key of the NICKNAME message with which a client offers to understand SCORE_DELTA messages.
+     */
+    public static final String HANDSHAKE_KEY = "ScoreDelta";
+
+    /**
+     * Key of the sequence number in SCORE and SCORE_DELTA messages. No player may use it as nickname.
+     */
+    public static final String SEQUENCE_KEY = "Sequence";
+
+    /**
+     * Private map that stores the points of every player, in the order the players joined.
+     */
+    private final Map<String, Long> points = new LinkedHashMap<>();
+
+    /**
+     * Private map that stores the changes since the last delta: the new points, or null if a player left.
+     */
+    private final Map<String, Long> changes = new LinkedHashMap<>();
+
+    /**
+     * Private variable that stores the sequence number of the last delta.
+     */
+    private long sequence;
+
+    /**
+     * Method adds a new player with zero points.
+     * @param nickname is the nickname of the player.
+     */
+    public void join(String nickname) {
+        points.put(nickname, 0L);
+        changes.put(nickname, 0L);
+    }
+
+    /**
+     * Method removes a player.
+     * @param nickname is the nickname of the player.
+     */
+    public void leave(String nickname) {
+        if (points.remove(nickname) != null) {
+            changes.put(nickname, null);
+        }
+    }
+
+    /**
+     * Method adds the given points to the points of a player.
+     * @param nickname is the nickname of the player.
+     * @param add are the points to add.
+     */
+    public void addPoints(String nickname, long add) {
+        Long old = points.get(nickname);
+        if (old != null && add != 0) {
+            points.put(nickname, old + add);
+            changes.put(nickname, old + add);
+        }
+    }
+
+    /**
+     * Method sets the points of every player back to zero, for example when a new game starts.
+     */
+    public void reset() {
+        for (Map.Entry<String, Long> entry : points.entrySet()) {
+            if (entry.getValue() != 0) {
+                entry.setValue(0L);
+                changes.put(entry.getKey(), 0L);
+            }
+        }
+    }
+
+    /**
+     * Method returns the points of a player.
+     * @param nickname is the nickname of the player.
+     * @return the points of the player, or null if there is no such player.
+     */
+    public Long getPoints(String nickname) {
+        return points.get(nickname);
+    }
+
+    /**
+     * Method returns whether a nickname is used by a player or is reserved by the protocol.
+     * @param nickname is the nickname to check.
+     * @return true, if a new player must not use this nickname.
+     */
+    public boolean isTaken(String nickname) {
+        return points.containsKey(nickname) || SEQUENCE_KEY.equals(nickname)
+                || JsonMessageCodec.TYPE_KEY.equals(nickname);
+    }
+
+    /**
+     * Method returns the number of players.
+     * @return number of players.
+     */
+    public int size() {
+        return points.size();
+    }
+
+    /**
+     * Method returns the points of all players. The map must not be changed.
+     * @return the points of all players, keyed by nickname.
+     */
+    public Map<String, Long> getPoints() {
+        return points;
+    }
+
+    /**
+     * Method returns whether there are changes which were not sent as a delta so far.
+     * @return true, if there are changes.
+     */
+    public boolean hasChanges() {
+        return !changes.isEmpty();
+    }
+
+    /**
+     * Method returns the sequence number of the last delta.
+     * @return the sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Method writes a full SCORE snapshot into the given message.
+     * @param into is the message to write into.
+     * @param withSequence is true, if the receiver understands deltas and needs the sequence number.
+     *                     Old clients would show the sequence number as a player.
+     * @return the given message.
+     */
+    public Message snapshot(Message into, boolean withSequence) {
+        into.clear(JsonHashMapParser.Type.SCORE);
+        if (withSequence) {
+            into.putNumber(SEQUENCE_KEY, sequence);
+        }
+        for (Map.Entry<String, Long> entry : points.entrySet()) {
+            into.putNumber(entry.getKey(), entry.getValue());
+        }
+        return into;
+    }
+
+    /**
+     * Method writes the changes since the last delta into the given message as the next SCORE_DELTA
+     * and forgets these changes.
+     * @param into is the message to write into.
+     * @return the given message.
+     */
+    public Message delta(Message into) {
+        into.clear(JsonHashMapParser.Type.SCORE_DELTA);
+        into.putNumber(SEQUENCE_KEY, ++sequence);
+        for (Map.Entry<String, Long> entry : changes.entrySet()) {
+            if (entry.getValue() == null) {
+                into.putText(entry.getKey(), null);
+            }
+            else {
+                into.putNumber(entry.getKey(), entry.getValue());
+            }
+        }
+        changes.clear();
+        return into;
+    }
+}
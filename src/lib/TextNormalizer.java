@@ -0,0 +1,112 @@
+package lib;
+
+import java.text.Normalizer;
+
+/**
+ * Normalization of the words the players type. {@link #clean(String)} only removes what a player did not mean to
+ * type: the Unicode composition is unified, so an accent typed as a separate combining mark equals the composed
+ * letter, and whitespace is trimmed and collapsed to single spaces. {@link #fold(String)} also removes case and
+ * accents, so a word gets the same key whether it is typed with or without accents and in upper or lower case.
+ * The key is used to look words up.
+ * This class is thread safe.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public final class TextNormalizer {
+
+    /**
+     * Constructor is private, because this class only has static methods.
+     */
+    private TextNormalizer() {
+    }
+
+    /**
+     * Method unifies the Unicode composition of a text and trims and collapses its whitespace.
+     * @param text is the text a player has typed.
+     * @return the cleaned text.
+     */
+    public static String clean(String text) {
+        return collapse(Normalizer.normalize(text, Normalizer.Form.NFC), false);
+    }
+
+    /**
+     * Method returns the key of a text which ignores case, accents and whitespace differences.
+     * Letters which have no decomposition, like the German sharp s or the Danish o with stroke, are replaced
+     * by their usual spelling without the special letter.
+     * @param text is the text a player has typed.
+     * @return the folded text.
+     */
+    public static String fold(String text) {
+        return collapse(Normalizer.normalize(text, Normalizer.Form.NFD), true);
+    }
+
+    /**
+     * Private method trims and collapses the whitespace of a text and, if wanted, folds its letters.
+     * @param text is the text, which is decomposed if it is folded.
+     * @param fold is true, if combining marks are removed and the letters are lower cased and replaced.
+     * @return the new text.
+     */
+    private static String collapse(String text, boolean fold) {
+        StringBuilder out = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                space = out.length() > 0;
+                continue;
+            }
+            if (fold && Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (space) {
+                out.append(' ');
+                space = false;
+            }
+            if (fold) {
+                appendFolded(out, c);
+            }
+            else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Private method appends a letter in lower case, replaced by its spelling without a special letter.
+     * @param out is the builder the letter is appended to.
+     * @param c is the letter, which is already decomposed.
+     */
+    private static void appendFolded(StringBuilder out, char c) {
+        switch (c) {
+            case '\u00df':
+            case '\u1e9e':
+                out.append("ss");
+                break;
+            case '\u00e6':
+            case '\u00c6':
+                out.append("ae");
+                break;
+            case '\u0153':
+            case '\u0152':
+                out.append("oe");
+                break;
+            case '\u00f8':
+            case '\u00d8':
+                out.append('o');
+                break;
+            case '\u0111':
+            case '\u0110':
+                out.append('d');
+                break;
+            case '\u0142':
+            case '\u0141':
+                out.append('l');
+                break;
+            case '\u0131':
+                out.append('i');
+                break;
+            default:
+                out.append(Character.toLowerCase(c));
+        }
+    }
+}
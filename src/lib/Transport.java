@@ -0,0 +1,87 @@
+package lib;
+
+/**
+ * Constants of the transport which carries the JSON messages between client and server: the keys of the handshake,
+ * the framing of the framed mode and the modes.
+ * Client and server agree on the transport mode during the nickname handshake:
+ * the client sends its NICKNAME message in the legacy mode and offers a mode with the key {@link #HANDSHAKE_KEY}.
+ * A server which supports the offered mode sends back a NICKNAME message with the accepted mode as the very first
+ * message and switches to this mode afterwards. An old server never sends a NICKNAME message,
+ * so the connection just stays in the legacy mode.
+ * Together with the framed mode the client may offer a MessageCodec with the key MessageCodec.HANDSHAKE_KEY.
+ * The server names the accepted codec in its answer, without a codec the framed mode carries JSON.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public interface Transport {
+
+    /**
+     * Key of the NICKNAME message which carries the offered or the accepted transport mode.
+     */
+    String HANDSHAKE_KEY = "Transport";
+
+    /**
+     * Key of the NICKNAME message with the session token. A client sends an empty token to ask for one, and the
+     * token it got to resume its place in the game on a new connection after the old connection was lost.
+     */
+    String SESSION_KEY = "Session";
+
+    /**
+     * Number of bytes of the length prefix in front of every frame of the framed mode.
+     */
+    int HEADER_SIZE = 4;
+
+    /**
+     * Maximum number of bytes a single frame may have. Protects against corrupt length prefixes.
+     */
+    int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Enum class for the modes a transport can work in.
+     */
+    enum Mode {
+        /**
+         * Enum marks the legacy mode: every message is a String written with an ObjectOutputStream.
+         */
+        OBJECT_STREAM("ObjectStream"),
+
+        /**
+         * Enum marks the framed mode: every message is UTF-8 encoded and prefixed with its length as four bytes.
+         */
+        FRAMED("Framed");
+
+        /**
+         * Variable that stores the mode of this enum as a String.
+         */
+        private String modeString;
+
+        /**
+         * Constructor for an enum.
+         * @param modeString is the mode of the enum as a String.
+         */
+        Mode(String modeString) {
+            this.modeString = modeString;
+        }
+
+        /**
+         * Method which returns the string of the mode used in the handshake.
+         * @return mode as a String.
+         */
+        public String getModeString() {
+            return modeString;
+        }
+
+        /**
+         * Method creates the corresponding enum mode for the given String mode.
+         * @param modeString the mode as a String.
+         * @return the mode of the given String modeString as an enum mode.
+         */
+        public static Mode fromString(final String modeString) {
+            for (Mode mode : values()) {
+                if (mode.modeString.equals(modeString)) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException("No such a mode!");
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package lib;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helper class to write and read raw UTF-8 Strings on ByteBuffers without a CharsetEncoder or a byte array per String.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+final class Utf8 {
+
+    /**
+     * Private constructor, because this class only has static methods.
+     */
+    private Utf8() {
+    }
+
+    /**
+     * Method returns the number of bytes the given String needs in UTF-8.
+     * @param s is the String.
+     * @return number of bytes.
+     */
+    static int length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            }
+            else if (c < 0x800) {
+                length += 2;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            }
+            else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Method writes the given String as UTF-8. The buffer must have at least length(s) bytes left.
+     * @param out is the buffer in write mode.
+     * @param s is the String.
+     */
+    static void put(ByteBuffer out, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            }
+            else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                out.put((byte) (0xF0 | (codePoint >> 18)));
+                out.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (codePoint & 0x3F)));
+            }
+            else {
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Method reads a String of the given number of UTF-8 bytes.
+     * @param in is the buffer in read mode.
+     * @param length is the number of bytes of the String.
+     * @param scratch is a reusable array with at least length bytes.
+     * @return the decoded String.
+     */
+    static String get(ByteBuffer in, int length, byte[] scratch) {
+        in.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,225 @@
+package loadtest;
+
+import client.ClientEventLoop;
+import client.GameClient;
+import client.GameEvent;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulated player of the BotSwarm. A bot is a headless GameClient, the same core the GUI subscribes to, so it joins
+ * like MainViewController.enterGame: it starts in the legacy mode, offers the transport mode and codec, upgrades
+ * the session when the server accepts the offer and picks another nickname when the nickname is rejected. Then it
+ * answers every question after a think time. The bot subscribes to the events of its client on the loop thread,
+ * so all bots of the swarm share one thread, and records the time of every step in the histograms of the swarm.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+class Bot implements Flow.Subscriber<GameEvent> {
+
+    /**
+     * Private variable that stores the swarm the bot belongs to.
+     */
+    private final BotSwarm swarm;
+
+    /**
+     * Private variable that stores the nickname the bot tries first.
+     */
+    private final String baseNickname;
+
+    /**
+     * Private variable that stores the client of the bot.
+     */
+    private final GameClient client;
+
+    /**
+     * Private variable that stores the System.nanoTime when the bot started to connect.
+     */
+    private long start;
+
+    /**
+     * Private variable that stores the number of nicknames the server has refused.
+     */
+    private int attempts;
+
+    /**
+     * Private variable to store, if the server has accepted the nickname.
+     */
+    private boolean joined;
+
+    /**
+     * Private variable that stores the number of terms received so far. An answer is only sent for the current term.
+     */
+    private volatile int round;
+
+    /**
+     * Private variable that stores the System.nanoTime when the last answer was sent, or 0 if it was acknowledged.
+     */
+    private final AtomicLong answerSentNanos = new AtomicLong();
+
+    /**
+     * Private variable to determine whether the bot should be running or should be stopped.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Constructor for a new bot.
+     * @param swarm is the swarm the bot belongs to.
+     * @param baseNickname is the nickname the bot tries first.
+     * @param loop is the loop which serves the session of the bot.
+     */
+    Bot(BotSwarm swarm, String baseNickname, ClientEventLoop loop) {
+        this.swarm = swarm;
+        this.baseNickname = baseNickname;
+        // a bot neither resumes a lost connection nor gets the questions ahead of time, like an old client
+        this.client = new GameClient(loop, null).setResume(false).setPrefetchDepth(0);
+        if (swarm.getCodec() == null) {
+            client.setCodec(null);
+        }
+        else {
+            // a codec like "Binary+Deflate" also offers the compression
+            String[] codec = swarm.getCodec().split("\\+");
+            client.setCodec(codec[0]).setCompression(codec.length > 1);
+        }
+        client.subscribe(this, Runnable::run);
+    }
+
+    /**
+     * Method connects the bot without blocking. The bot joins the game as soon as the connection is established.
+     */
+    void start() {
+        start = System.nanoTime();
+        client.connect(new InetSocketAddress(swarm.getHost(), swarm.getPort()), baseNickname)
+                .whenComplete((v, e) -> {
+                    if (e != null) {
+                        Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                        swarm.failed(baseNickname, cause instanceof IOException ? (IOException) cause
+                                : new IOException("Connect timed out!", cause));
+                        return;
+                    }
+                    swarm.getConnectLatency().recordNanos(System.nanoTime() - start);
+                    if (!running) {
+                        // the swarm has stopped while the bot was connecting
+                        client.close();
+                    }
+                });
+    }
+
+    /**
+     * Method takes every event as soon as it is published.
+     * @param subscription is the subscription to the events of the client.
+     */
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    /**
+     * Method of the loop thread reacts to an event of the client.
+     * @param event is the event.
+     */
+    @Override
+    public void onNext(GameEvent event) {
+        if (!running) {
+            // the swarm has stopped, the scheduler takes no more answers
+            return;
+        }
+        long now = event.getReceivedNanos();
+
+        if (event instanceof GameEvent.NicknameRejected) {
+            // the nickname is already used, so try the next one
+            attempts++;
+            swarm.nicknameRetried();
+            client.rejoin(baseNickname + "_" + attempts);
+        }
+        else if (event instanceof GameEvent.Question) {
+            join(now);
+            acknowledge(now);
+            String term = ((GameEvent.Question) event).getTerm();
+            swarm.getFanOutDelay().recordNanos(swarm.fanOutDelay(term, now));
+            int answeredRound = ++round;
+            swarm.getScheduler().schedule(() -> answer(answeredRound, term),
+                    swarm.getThinkTime().nextMillis(), TimeUnit.MILLISECONDS);
+        }
+        else if (event instanceof GameEvent.Language) {
+            join(now);
+        }
+        else if (event instanceof GameEvent.ScoreUpdate || event instanceof GameEvent.Winner) {
+            // the score of the round or the end of the game acknowledges the answer
+            acknowledge(now);
+        }
+        else if (event instanceof GameEvent.ConnectionChanged) {
+            IOException cause = ((GameEvent.ConnectionChanged) event).getCause();
+            if (cause != null && ((GameEvent.ConnectionChanged) event).getState()
+                    != GameEvent.ConnectionChanged.State.RECONNECTING) {
+                swarm.failed(baseNickname, cause);
+            }
+        }
+    }
+
+    /**
+     * Method reports an error of the subscription.
+     * @param throwable is the error.
+     */
+    @Override
+    public void onError(Throwable throwable) {
+        System.out.println(baseNickname + " failed: " + throwable);
+    }
+
+    /**
+     * Method is called when the client is closed.
+     */
+    @Override
+    public void onComplete() {
+    }
+
+    /**
+     * Private method records the time until the server accepted the nickname, the first time it is called.
+     * @param now is the System.nanoTime of the received message.
+     */
+    private void join(long now) {
+        if (!joined) {
+            joined = true;
+            swarm.getJoinLatency().recordNanos(now - start);
+            swarm.joined();
+        }
+    }
+
+    /**
+     * Private method records the time since the last answer was sent, if it was not acknowledged so far.
+     * @param now is the System.nanoTime of the received message.
+     */
+    private void acknowledge(long now) {
+        long sent = answerSentNanos.getAndSet(0);
+        if (sent != 0) {
+            swarm.getAnswerAckLatency().recordNanos(now - sent);
+        }
+    }
+
+    /**
+     * Private method of the scheduler sends the answer for a term, if the term was not replaced in the meantime.
+     * @param answeredRound is the number of the term.
+     * @param term is the term.
+     */
+    private void answer(int answeredRound, String term) {
+        if (!running || answeredRound != round) {
+            return;
+        }
+        answerSentNanos.set(System.nanoTime());
+        client.answer(swarm.answerFor(term));
+    }
+
+    /**
+     * Method stops the bot, closes its client and adds its messages to the counters of the swarm.
+     */
+    void close() {
+        running = false;
+        client.close();
+        swarm.received(client.getMessagesReceived());
+        swarm.sent(client.getMessagesSent());
+    }
+}
@@ -0,0 +1,403 @@
+package loadtest;
+
+import client.ClientEventLoop;
+import lib.JsonMessageCodec;
+import lib.LatencyHistogram;
+import server.GameServer;
+import server.QuestionCatalog;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless load generator, which lets a swarm of simulated players play against a game server to size servers
+ * before tournaments. All bots are sessions on one ClientEventLoop, like the sessions of a client, and answer after
+ * a think time of the given distribution. At the end the swarm reports the percentiles of the connect time, the time
+ * until the nickname was accepted, the question fan-out delay and the answer acknowledgement latency, the messages
+ * per second and the heap the client needs per connection.
+ * <p>
+ * The protocol has no timestamps and no acknowledgement of an answer, so the delays are measured on the client:
+ * the fan-out delay of a bot is the time between the first bot and this bot receiving the same term, and an answer
+ * is acknowledged by the next SCORE, SCORE_DELTA, QUESTION or WINNER message, which the server sends at the end
+ * of the round. So the acknowledgement latency includes the time the other players take to answer.
+ * <p>
+ * Usage: {@code BotSwarm [host|embedded] [port] [bots] [seconds] [thinkTime] [Json|Binary|Legacy] [correctRatio]
+ * [catalogFile]}. With the host "embedded" a GameServer is started in this process on a free port.
+ * A codec followed by "+Deflate", like "Binary+Deflate", also offers the compression of large messages.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class BotSwarm {
+
+    /**
+     * Codec argument with which the bots stay in the legacy mode, like old clients.
+     */
+    public static final String LEGACY = "Legacy";
+
+    /**
+     * Time in nanoseconds after which the same term is counted as a new round for the fan-out delay.
+     */
+    private static final long FAN_OUT_WINDOW = 1000000000L;
+
+    /**
+     * Private variable that stores the host of the server.
+     */
+    private final String host;
+
+    /**
+     * Private variable that stores the port of the server.
+     */
+    private final int port;
+
+    /**
+     * Private variable that stores the codec the bots offer, or null if they stay in the legacy mode.
+     */
+    private final String codec;
+
+    /**
+     * Private variable that stores the think time distribution.
+     */
+    private final ThinkTime thinkTime;
+
+    /**
+     * Private variable that stores the probability of a correct answer.
+     */
+    private final double correctRatio;
+
+    /**
+     * Private map that stores the correct answer of every term of the catalog.
+     */
+    private final Map<String, String> answers = new HashMap<>();
+
+    /**
+     * Private scheduler which sends the answers after the think time.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Private map that stores the System.nanoTime when the first bot received a term.
+     */
+    private final Map<String, Long> firstArrival = new ConcurrentHashMap<>();
+
+    /**
+     * Private histogram of the time until the socket was connected.
+     */
+    private final LatencyHistogram connectLatency = new LatencyHistogram("connect");
+
+    /**
+     * Private histogram of the time until the server accepted the nickname.
+     */
+    private final LatencyHistogram joinLatency = new LatencyHistogram("join");
+
+    /**
+     * Private histogram of the question fan-out delay.
+     */
+    private final LatencyHistogram fanOutDelay = new LatencyHistogram("question fan-out");
+
+    /**
+     * Private histogram of the answer acknowledgement latency.
+     */
+    private final LatencyHistogram answerAckLatency = new LatencyHistogram("answer ack");
+
+    /**
+     * Private counter of the received messages.
+     */
+    private final LongAdder received = new LongAdder();
+
+    /**
+     * Private counter of the sent messages.
+     */
+    private final LongAdder sent = new LongAdder();
+
+    /**
+     * Private counter of the refused nicknames.
+     */
+    private final LongAdder nicknameRetries = new LongAdder();
+
+    /**
+     * Private counter of the bots which have joined.
+     */
+    private final AtomicInteger joined = new AtomicInteger();
+
+    /**
+     * Private counter of the bots which lost their connection.
+     */
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * Constructor for a new swarm.
+     * @param host is the host of the server.
+     * @param port is the port of the server.
+     * @param codec is the codec the bots offer, or null if they stay in the legacy mode.
+     * @param thinkTime is the think time distribution.
+     * @param correctRatio is the probability of a correct answer.
+     * @param catalog is the catalog with the correct answers.
+     */
+    public BotSwarm(String host, int port, String codec, ThinkTime thinkTime, double correctRatio,
+                    QuestionCatalog catalog) {
+        this.host = host;
+        this.port = port;
+        this.codec = codec;
+        this.thinkTime = thinkTime;
+        this.correctRatio = correctRatio;
+        for (QuestionCatalog.Question question : catalog.getQuestions()) {
+            answers.put(question.getTerm(), question.getTranslations().get(0));
+        }
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+                r -> {
+                    Thread thread = new Thread(r, "BotScheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Method runs the given number of bots for the given time and prints the report.
+     * @param bots is the number of bots.
+     * @param seconds is the time the bots play after they were started.
+     * @throws InterruptedException if the thread was interrupted.
+     * @throws IOException if the loop of the bots could not be opened.
+     */
+    public void run(int bots, long seconds) throws InterruptedException, IOException {
+        ClientEventLoop loop = new ClientEventLoop("BotSwarm").start();
+        long heapBefore = usedHeap();
+        List<Bot> swarm = new ArrayList<>(bots);
+        for (int i = 0; i < bots; i++) {
+            swarm.add(new Bot(this, "Bot" + i, loop));
+        }
+        long start = System.nanoTime();
+        for (Bot bot : swarm) {
+            bot.start();
+        }
+
+        // the heap is measured as soon as every bot has joined, before the histograms grow
+        long joinDeadline = start + Math.min(seconds, 30) * 1000000000L;
+        while (joined.get() + failed.get() < bots && System.nanoTime() < joinDeadline) {
+            Thread.sleep(50);
+        }
+        long heapPerBot = (usedHeap() - heapBefore) / Math.max(1, bots);
+
+        long rest = start + seconds * 1000000000L - System.nanoTime();
+        if (rest > 0) {
+            Thread.sleep(rest / 1000000);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        for (Bot bot : swarm) {
+            bot.close();
+        }
+        loop.close();
+        scheduler.shutdownNow();
+
+        System.out.println("Bots: " + bots + ", joined: " + joined.get() + ", failed: " + failed.get()
+                + ", nickname retries: " + nicknameRetries.sum());
+        System.out.println("Codec: " + (codec == null ? LEGACY : codec) + ", think time: " + thinkTime
+                + ", correct answers: " + correctRatio);
+        System.out.println(LatencyHistogram.reportHeader());
+        System.out.println(connectLatency.toReportLine());
+        System.out.println(joinLatency.toReportLine());
+        System.out.println(fanOutDelay.toReportLine());
+        System.out.println(answerAckLatency.toReportLine());
+        System.out.println(String.format("Messages per second: %.1f received, %.1f sent in %.1f s",
+                received.sum() / elapsed, sent.sum() / elapsed, elapsed));
+        System.out.println("Client heap per connection: " + heapPerBot / 1024 + " KiB");
+    }
+
+    /**
+     * Private method returns the used heap after a garbage collection.
+     * @return used heap in bytes.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Method returns the delay between the first bot and the calling bot receiving a term.
+     * @param term is the received term.
+     * @param now is the System.nanoTime when the term was received.
+     * @return the delay in nanoseconds.
+     */
+    long fanOutDelay(String term, long now) {
+        // the same term comes again in the next game, which is a new round
+        long first = firstArrival.merge(term, now, (old, current) -> current - old > FAN_OUT_WINDOW ? current : old);
+        return now - first;
+    }
+
+    /**
+     * Method returns the answer of a bot for a term: the correct answer with the configured probability,
+     * otherwise a wrong answer.
+     * @param term is the term.
+     * @return the answer.
+     */
+    String answerFor(String term) {
+        String answer = answers.get(term);
+        if (answer == null || ThreadLocalRandom.current().nextDouble() >= correctRatio) {
+            return "wrong";
+        }
+        return answer;
+    }
+
+    /**
+     * Method adds the received messages of a bot.
+     * @param count is the number of messages.
+     */
+    void received(long count) {
+        received.add(count);
+    }
+
+    /**
+     * Method adds the sent messages of a bot.
+     * @param count is the number of messages.
+     */
+    void sent(long count) {
+        sent.add(count);
+    }
+
+    /**
+     * Method counts a refused nickname.
+     */
+    void nicknameRetried() {
+        nicknameRetries.increment();
+    }
+
+    /**
+     * Method counts a bot which has joined.
+     */
+    void joined() {
+        joined.incrementAndGet();
+    }
+
+    /**
+     * Method counts a bot which lost its connection.
+     * @param nickname is the nickname of the bot.
+     * @param e is the reason.
+     */
+    void failed(String nickname, IOException e) {
+        failed.incrementAndGet();
+        System.out.println(nickname + " lost its connection: " + e.getMessage());
+    }
+
+    /**
+     * Method returns the host of the server.
+     * @return the host.
+     */
+    String getHost() {
+        return host;
+    }
+
+    /**
+     * Method returns the port of the server.
+     * @return the port.
+     */
+    int getPort() {
+        return port;
+    }
+
+    /**
+     * Method returns the codec the bots offer.
+     * @return the name of the codec, or null if the bots stay in the legacy mode.
+     */
+    String getCodec() {
+        return codec;
+    }
+
+    /**
+     * Method returns the think time distribution.
+     * @return the distribution.
+     */
+    ThinkTime getThinkTime() {
+        return thinkTime;
+    }
+
+    /**
+     * Method returns the scheduler which sends the answers.
+     * @return the scheduler.
+     */
+    ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Method returns the histogram of the connect time.
+     * @return the histogram.
+     */
+    LatencyHistogram getConnectLatency() {
+        return connectLatency;
+    }
+
+    /**
+     * Method returns the histogram of the time until the nickname was accepted.
+     * @return the histogram.
+     */
+    LatencyHistogram getJoinLatency() {
+        return joinLatency;
+    }
+
+    /**
+     * Method returns the histogram of the question fan-out delay.
+     * @return the histogram.
+     */
+    LatencyHistogram getFanOutDelay() {
+        return fanOutDelay;
+    }
+
+    /**
+     * Method returns the histogram of the answer acknowledgement latency.
+     * @return the histogram.
+     */
+    LatencyHistogram getAnswerAckLatency() {
+        return answerAckLatency;
+    }
+
+    /**
+     * Main method to start the swarm from the command line.
+     * @param args are the arguments described in the class comment.
+     */
+    public static void main(String[] args) {
+        try {
+            String host = args.length > 0 ? args[0] : "localhost";
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : GameServer.DEFAULT_PORT;
+            int bots = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+            long seconds = args.length > 3 ? Long.parseLong(args[3]) : 60;
+            ThinkTime thinkTime = ThinkTime.fromString(args.length > 4 ? args[4] : "uniform:500:3000");
+            String codec = args.length > 5 ? args[5] : JsonMessageCodec.NAME;
+            double correctRatio = args.length > 6 ? Double.parseDouble(args[6]) : 0.5;
+            QuestionCatalog catalog = args.length > 7
+                    ? QuestionCatalog.read(new FileInputStream(args[7]))
+                    : QuestionCatalog.readDefault();
+
+            GameServer server = null;
+            if (host.equals("embedded")) {
+                server = new GameServer(new InetSocketAddress("localhost", 0), catalog,
+                        GameServer.DEFAULT_ROUND_TIMEOUT);
+                new Thread(server, "GameServer").start();
+                host = "localhost";
+                port = server.getPort();
+            }
+            new BotSwarm(host, port, LEGACY.equalsIgnoreCase(codec) ? null : codec, thinkTime, correctRatio, catalog)
+                    .run(bots, seconds);
+            if (server != null) {
+                server.close();
+            }
+        } catch (IOException e) {
+            System.out.println("Could not start the swarm: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        } catch (InterruptedException e) {
+            System.out.println("Interrupted!");
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Distribution of the time a simulated player thinks before it answers a term.
+ * A distribution is given as a String: {@code const:MILLIS}, {@code uniform:MIN:MAX} or {@code exp:MEAN},
+ * where an exponential distribution models players which mostly answer quickly but sometimes take long.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class ThinkTime {
+
+    /**
+     * Enum class for the kinds of distributions.
+     */
+    private enum Kind {
+        /**
+         * Every answer takes the same time.
+         */
+        CONST,
+
+        /**
+         * Uniformly distributed between a minimum and a maximum.
+         */
+        UNIFORM,
+
+        /**
+         * Exponentially distributed with a mean.
+         */
+        EXP
+    }
+
+    /**
+     * Private variable that stores the kind of the distribution.
+     */
+    private final Kind kind;
+
+    /**
+     * Private variable that stores the constant, the minimum or the mean in milliseconds.
+     */
+    private final long first;
+
+    /**
+     * Private variable that stores the maximum of a uniform distribution in milliseconds.
+     */
+    private final long second;
+
+    /**
+     * Private constructor for a new distribution.
+     * @param kind is the kind of the distribution.
+     * @param first is the constant, the minimum or the mean in milliseconds.
+     * @param second is the maximum of a uniform distribution in milliseconds.
+     */
+    private ThinkTime(Kind kind, long first, long second) {
+        this.kind = kind;
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * Method parses a distribution.
+     * @param s is the distribution, for example "uniform:200:2000".
+     * @return the distribution.
+     * @throws IllegalArgumentException if the distribution is unknown or its parameters are invalid.
+     */
+    public static ThinkTime fromString(String s) {
+        String[] parts = s.trim().split(":");
+        try {
+            if (parts[0].equalsIgnoreCase("const") && parts.length == 2) {
+                return new ThinkTime(Kind.CONST, Long.parseLong(parts[1]), 0);
+            }
+            else if (parts[0].equalsIgnoreCase("uniform") && parts.length == 3) {
+                long min = Long.parseLong(parts[1]);
+                long max = Long.parseLong(parts[2]);
+                if (max >= min) {
+                    return new ThinkTime(Kind.UNIFORM, min, max);
+                }
+            }
+            else if (parts[0].equalsIgnoreCase("exp") && parts.length == 2) {
+                return new ThinkTime(Kind.EXP, Long.parseLong(parts[1]), 0);
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid think time " + s + "!");
+    }
+
+    /**
+     * Method draws the next think time.
+     * @return the think time in milliseconds, not negative.
+     */
+    public long nextMillis() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (kind == Kind.UNIFORM) {
+            return first + random.nextLong(second - first + 1);
+        }
+        else if (kind == Kind.EXP) {
+            return (long) (-first * Math.log(1 - random.nextDouble()));
+        }
+        else {
+            return Math.max(0, first);
+        }
+    }
+
+    /**
+     * Method returns the distribution as a String in the format of {@link #fromString(String)}.
+     * @return the distribution.
+     */
+    @Override
+    public String toString() {
+        if (kind == Kind.UNIFORM) {
+            return "uniform:" + first + ":" + second;
+        }
+        return kind.name().toLowerCase() + ":" + first;
+    }
+}
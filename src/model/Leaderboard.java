@@ -0,0 +1,264 @@
+package model;
+
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Model for the table of players. Keeps the players ranked by their points, the player with the most points first
+ * and players with the same points in the order of their nicknames. The leaderboard is also the registry of the
+ * live Player objects: a player keeps its object as long as it is in the game, a change only sets its points.
+ * A single change only moves the changed player, found by a binary search, instead of sorting the whole list again.
+ * The table shows only a view of the leaderboard: the best players and the own player, if it is not among them.
+ * So a lobby with thousands of players only updates the few rows which are visible.
+ * All methods must be called on the JavaFX thread.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class Leaderboard {
+
+    /**
+     * Order of the ranking: more points first, the same points by nickname.
+     */
+    public static final Comparator<Player> RANKING = (a, b) -> {
+        int byPoints = Integer.compare(b.pointsProperty().get(), a.pointsProperty().get());
+        return byPoints != 0 ? byPoints : a.nicknameProperty().get().compareTo(b.nicknameProperty().get());
+    };
+
+    /**
+     * Private list that stores all players in the order of the ranking.
+     */
+    private final List<Player> ranked = new ArrayList<>();
+
+    /**
+     * Private map that stores all players, keyed by nickname.
+     */
+    private final Map<String, Player> byNickname = new HashMap<>();
+
+    /**
+     * Private variable that stores the number of best players the view shows.
+     */
+    private final int visible;
+
+    /**
+     * Private list that stores the view the table shows.
+     */
+    private final ObservableList<Player> view = FXCollections.observableArrayList();
+
+    /**
+     * Private property that stores the rank of the own player, or 0 if it is not in the game.
+     */
+    private final ReadOnlyIntegerWrapper myRank = new ReadOnlyIntegerWrapper();
+
+    /**
+     * Private property that stores the number of players.
+     */
+    private final ReadOnlyIntegerWrapper size = new ReadOnlyIntegerWrapper();
+
+    /**
+     * Private variable that stores the nickname of the own player, or null if it is not known.
+     */
+    private String myNickname;
+
+    /**
+     * Constructor for a new empty leaderboard.
+     * @param visible is the number of best players the view shows.
+     */
+    public Leaderboard(int visible) {
+        this.visible = visible;
+    }
+
+    /**
+     * Method adds a player or changes the points of a player, which moves the player to its new rank.
+     * The view is updated by {@link #refreshView()}.
+     * @param nickname is the nickname of the player.
+     * @param points are the points of the player.
+     */
+    public void put(String nickname, int points) {
+        Player player = byNickname.get(nickname);
+        if (player == null) {
+            player = new Player(nickname, points);
+            byNickname.put(nickname, player);
+            ranked.add(insertionPoint(player), player);
+            return;
+        }
+        if (player.pointsProperty().get() == points) {
+            return;
+        }
+        int index = indexOf(player);
+        player.pointsProperty().set(points);
+        if ((index > 0 && RANKING.compare(ranked.get(index - 1), player) > 0)
+                || (index < ranked.size() - 1 && RANKING.compare(player, ranked.get(index + 1)) > 0)) {
+            // the player has passed a neighbour, so it is moved to its new rank
+            ranked.remove(index);
+            ranked.add(insertionPoint(player), player);
+        }
+    }
+
+    /**
+     * Method replaces all players with the given list. Players which are still in the game keep their objects and
+     * only get their new points, only players which joined or left are added or removed.
+     * The view is updated by {@link #refreshView()}.
+     * @param points are the points of all players, keyed by nickname.
+     */
+    public void replaceAll(Map<String, Integer> points) {
+        // one pass removes the players which left
+        if (byNickname.keySet().retainAll(points.keySet())) {
+            ranked.removeIf(player -> !byNickname.containsKey(player.nicknameProperty().get()));
+        }
+        boolean changed = false;
+        for (Map.Entry<String, Integer> entry : points.entrySet()) {
+            Player player = byNickname.get(entry.getKey());
+            if (player == null) {
+                player = new Player(entry.getKey(), entry.getValue());
+                byNickname.put(entry.getKey(), player);
+                ranked.add(player);
+                changed = true;
+            }
+            else if (player.pointsProperty().get() != entry.getValue()) {
+                player.pointsProperty().set(entry.getValue());
+                changed = true;
+            }
+        }
+        if (changed) {
+            // the list is still almost sorted after a round, which the merge sort of List.sort handles in linear time
+            ranked.sort(RANKING);
+        }
+    }
+
+    /**
+     * Method returns the live object of a player.
+     * @param nickname is the nickname of the player.
+     * @return the player, or null if there is no such player.
+     */
+    public Player get(String nickname) {
+        return byNickname.get(nickname);
+    }
+
+    /**
+     * Method removes a player. The view is updated by {@link #refreshView()}.
+     * @param nickname is the nickname of the player.
+     */
+    public void remove(String nickname) {
+        Player player = byNickname.remove(nickname);
+        if (player != null) {
+            ranked.remove(indexOf(player));
+        }
+    }
+
+    /**
+     * Method removes all players. The view is updated by {@link #refreshView()}.
+     */
+    public void clear() {
+        ranked.clear();
+        byNickname.clear();
+    }
+
+    /**
+     * Method returns the rank of a player.
+     * @param nickname is the nickname of the player.
+     * @return the rank, starting with 1, or 0 if there is no such player.
+     */
+    public int rankOf(String nickname) {
+        Player player = nickname == null ? null : byNickname.get(nickname);
+        return player == null ? 0 : indexOf(player) + 1;
+    }
+
+    /**
+     * Method returns the best players.
+     * @param k is the number of players.
+     * @return an unmodifiable list of at most k players in the order of the ranking.
+     */
+    public List<Player> getTop(int k) {
+        return Collections.unmodifiableList(ranked.subList(0, Math.min(k, ranked.size())));
+    }
+
+    /**
+     * Method returns the number of players.
+     * @return number of players.
+     */
+    public int size() {
+        return ranked.size();
+    }
+
+    /**
+     * Method sets the nickname of the own player, which is always shown in the view.
+     * @param nickname is the nickname of the own player.
+     */
+    public void setMyNickname(String nickname) {
+        this.myNickname = nickname;
+    }
+
+    /**
+     * Method returns the view the table shows: the best players and the own player, if it is not among them.
+     * @return the view.
+     */
+    public ObservableList<Player> getView() {
+        return view;
+    }
+
+    /**
+     * Method returns the property with the rank of the own player.
+     * @return the rank, starting with 1, or 0 if the own player is not in the game.
+     */
+    public ReadOnlyIntegerProperty myRankProperty() {
+        return myRank.getReadOnlyProperty();
+    }
+
+    /**
+     * Method returns the property with the number of players.
+     * @return the number of players.
+     */
+    public ReadOnlyIntegerProperty sizeProperty() {
+        return size.getReadOnlyProperty();
+    }
+
+    /**
+     * Method updates the view and the properties after a batch of changes. Only the rows whose player changed
+     * are replaced, so the table keeps the cells of all other rows.
+     */
+    public void refreshView() {
+        int rank = rankOf(myNickname);
+        int top = Math.min(visible, ranked.size());
+        int rows = rank > top ? top + 1 : top;
+        for (int i = 0; i < rows; i++) {
+            Player player = i < top ? ranked.get(i) : byNickname.get(myNickname);
+            if (i >= view.size()) {
+                view.add(player);
+            }
+            else if (view.get(i) != player) {
+                view.set(i, player);
+            }
+        }
+        if (view.size() > rows) {
+            view.remove(rows, view.size());
+        }
+        myRank.set(rank);
+        size.set(ranked.size());
+    }
+
+    /**
+     * Private method returns the index of a player of the ranking.
+     * @param player is the player with the points it is ranked by.
+     * @return the index of the player.
+     */
+    private int indexOf(Player player) {
+        return Collections.binarySearch(ranked, player, RANKING);
+    }
+
+    /**
+     * Private method returns the index a player must be inserted at.
+     * @param player is the player which is not in the ranking.
+     * @return the index to insert the player at.
+     */
+    private int insertionPoint(Player player) {
+        return -Collections.binarySearch(ranked, player, RANKING) - 1;
+    }
+}
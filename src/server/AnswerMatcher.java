@@ -0,0 +1,258 @@
+package server;
+
+import lib.TextNormalizer;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Matching engine of the answers of a game. The accepted translations of every term of a catalog are compiled once
+ * into a lookup of their folded spelling, see {@link TextNormalizer#fold(String)}, so an answer is correct whatever
+ * its case, its accents or its whitespace are. With typo tolerance switched on, every translation is also compiled
+ * into a bit-parallel Levenshtein automaton, so an answer with a few wrong, missing or additional letters is correct
+ * as well: one edit per {@link #LETTERS_PER_EDIT} letters of the translation, at most the configured number.
+ * Translations longer than {@link #MAX_AUTOMATON_LENGTH} letters are only matched exactly.
+ * <p>
+ * An answer is only checked against the translations of the current term, so checking takes the same microseconds
+ * for a catalog of ten terms and for a catalog of tens of thousands. A large burst of answers is checked in parallel.
+ * This class is thread safe.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public final class AnswerMatcher {
+
+    /**
+     * Number of letters of a translation which allow one edit, so short words must be spelled exactly.
+     */
+    public static final int LETTERS_PER_EDIT = 4;
+
+    /**
+     * Longest translation in letters which gets an automaton, the number of bits of a long.
+     */
+    public static final int MAX_AUTOMATON_LENGTH = 64;
+
+    /**
+     * Smallest number of answers which are checked in parallel. An answer takes well below a microsecond, so
+     * fewer answers are checked as fast on the calling thread as the threads of the pool are woken up.
+     */
+    public static final int PARALLEL_THRESHOLD = 1024;
+
+    /**
+     * Private array of the compiled terms, in the order of the catalog.
+     */
+    private final Term[] terms;
+
+    /**
+     * Private variable that stores the largest number of edits an answer may have.
+     */
+    private final int maxEdits;
+
+    /**
+     * Constructor for a new engine, which compiles all terms of the catalog.
+     * @param catalog is the catalog of the terms.
+     * @param maxEdits is the largest number of edits an answer may have, or 0 to switch typo tolerance off.
+     */
+    public AnswerMatcher(QuestionCatalog catalog, int maxEdits) {
+        this.maxEdits = Math.max(0, maxEdits);
+        List<QuestionCatalog.Question> questions = catalog.getQuestions();
+        this.terms = new Term[questions.size()];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = new Term(questions.get(i).getTranslations(), this.maxEdits);
+        }
+    }
+
+    /**
+     * Method returns the number of edits an answer to a translation of the given length may have.
+     * @param length is the number of letters of the folded translation.
+     * @param maxEdits is the largest number of edits.
+     * @return the number of edits.
+     */
+    static int allowedEdits(int length, int maxEdits) {
+        return Math.min(maxEdits, length / LETTERS_PER_EDIT);
+    }
+
+    /**
+     * Method returns the largest number of edits an answer may have.
+     * @return the number of edits, or 0 if typo tolerance is switched off.
+     */
+    public int getMaxEdits() {
+        return maxEdits;
+    }
+
+    /**
+     * Method checks an answer.
+     * @param term is the index of the term in the catalog.
+     * @param answer is the answer of a player, or null.
+     * @return true, if the answer is one of the accepted translations of the term.
+     */
+    public boolean matches(int term, String answer) {
+        return answer != null && terms[term].matches(TextNormalizer.fold(answer));
+    }
+
+    /**
+     * Method checks a burst of answers to the same term, in parallel if there are many.
+     * @param term is the index of the term in the catalog.
+     * @param answers are the answers in the order they arrived.
+     * @return for every answer whether it is correct, in the same order.
+     */
+    public boolean[] matchAll(int term, List<String> answers) {
+        boolean[] correct = new boolean[answers.size()];
+        if (correct.length < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < correct.length; i++) {
+                correct[i] = matches(term, answers.get(i));
+            }
+        }
+        else {
+            // every answer has its own slot, and the stream is complete before the array is read
+            IntStream.range(0, correct.length).parallel().forEach(i -> correct[i] = matches(term, answers.get(i)));
+        }
+        return correct;
+    }
+
+    /**
+     * The compiled translations of one term.
+     */
+    private static final class Term {
+
+        /**
+         * Private set of the folded translations.
+         */
+        private final Set<String> keys;
+
+        /**
+         * Private array of the automatons of the translations which allow an edit, or an empty array.
+         */
+        private final Automaton[] automatons;
+
+        /**
+         * Constructor for a new compiled term.
+         * @param translations are the accepted translations.
+         * @param maxEdits is the largest number of edits an answer may have.
+         */
+        private Term(List<String> translations, int maxEdits) {
+            keys = new HashSet<>(translations.size() * 2);
+            Automaton[] compiled = new Automaton[translations.size()];
+            int count = 0;
+            for (String translation : translations) {
+                String key = TextNormalizer.fold(translation);
+                if (key.isEmpty() || !keys.add(key)) {
+                    continue;
+                }
+                int edits = allowedEdits(key.length(), maxEdits);
+                if (edits > 0 && key.length() <= MAX_AUTOMATON_LENGTH) {
+                    compiled[count++] = new Automaton(key, edits);
+                }
+            }
+            automatons = Arrays.copyOf(compiled, count);
+        }
+
+        /**
+         * Method checks a folded answer.
+         * @param answer is the folded answer.
+         * @return true, if the answer is one of the translations or close enough to one.
+         */
+        private boolean matches(String answer) {
+            if (keys.contains(answer)) {
+                return true;
+            }
+            for (Automaton automaton : automatons) {
+                if (automaton.accepts(answer)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Levenshtein automaton of one translation, simulated with bit vectors after Myers and Hyyr\u00f6: every bit of
+     * a long is one letter of the translation, so one letter of the answer is processed with a few operations,
+     * whatever the length of the translation is.
+     */
+    private static final class Automaton {
+
+        /**
+         * Private array of the distinct letters of the translation, sorted.
+         */
+        private final char[] letters;
+
+        /**
+         * Private array of the positions of every letter in the translation as bits, in the order of letters.
+         */
+        private final long[] positions;
+
+        /**
+         * Private variable that stores the number of letters of the translation.
+         */
+        private final int length;
+
+        /**
+         * Private variable that stores the number of edits the automaton accepts.
+         */
+        private final int edits;
+
+        /**
+         * Constructor for a new automaton.
+         * @param translation is the folded translation, at most MAX_AUTOMATON_LENGTH letters.
+         * @param edits is the number of edits the automaton accepts.
+         */
+        private Automaton(String translation, int edits) {
+            this.length = translation.length();
+            this.edits = edits;
+            char[] sorted = translation.toCharArray();
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            letters = Arrays.copyOf(sorted, distinct);
+            positions = new long[distinct];
+            for (int i = 0; i < length; i++) {
+                positions[Arrays.binarySearch(letters, translation.charAt(i))] |= 1L << i;
+            }
+        }
+
+        /**
+         * Method checks whether an answer is at most the accepted number of edits away from the translation.
+         * @param answer is the folded answer.
+         * @return true, if the edit distance is small enough.
+         */
+        private boolean accepts(String answer) {
+            int n = answer.length();
+            if (Math.abs(n - length) > edits) {
+                return false;
+            }
+            long last = 1L << (length - 1);
+            long pv = length == 64 ? -1L : (1L << length) - 1;
+            long mv = 0;
+            int distance = length;
+            for (int j = 0; j < n; j++) {
+                int index = Arrays.binarySearch(letters, answer.charAt(j));
+                long eq = index < 0 ? 0 : positions[index];
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                if ((ph & last) != 0) {
+                    distance++;
+                }
+                else if ((mh & last) != 0) {
+                    distance--;
+                }
+                // the distance can shrink by at most one per remaining letter
+                if (distance - (n - j - 1) > edits) {
+                    return false;
+                }
+                ph = (ph << 1) | 1;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+            }
+            return distance <= edits;
+        }
+    }
+}
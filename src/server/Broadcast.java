@@ -0,0 +1,107 @@
+package server;
+
+import lib.JsonMessageCodec;
+import lib.Message;
+import lib.MessageCodec;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Message which goes to every player of a lobby, like a QUESTION, LANGUAGE, SCORE or WINNER message. It is encoded
+ * at most once per wire format, when the first connection of this format sends it, into a read-only buffer which all
+ * connections share: every connection only queues its own view of the bytes. So the work of a broadcast grows with
+ * the number of wire formats in the lobby instead of the number of players. A broadcast is reused for the next
+ * message; the buffers of the former message stay valid until every connection has written them.
+ * All methods are called by the thread of the shard which owns the lobby.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+final class Broadcast {
+
+    /**
+     * Initial size of the buffer messages are encoded into.
+     */
+    private static final int INITIAL_ENCODE_SIZE = 512;
+
+    /**
+     * Private variable that stores the message, or null.
+     */
+    private Message message;
+
+    /**
+     * Private variable that stores the encoding of the legacy mode, or null if it was not needed so far.
+     */
+    private ByteBuffer legacy;
+
+    /**
+     * Private map that stores the frames of the framed mode, keyed by the name of their codec.
+     */
+    private final Map<String, ByteBuffer> frames = new HashMap<>();
+
+    /**
+     * Private reusable buffer messages are encoded into before they are copied into a buffer of their exact size.
+     */
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(INITIAL_ENCODE_SIZE);
+
+    /**
+     * Method starts a new broadcast. The message must not change until it was sent to every connection.
+     * @param message is the message.
+     * @return this broadcast.
+     */
+    Broadcast of(Message message) {
+        this.message = message;
+        this.legacy = null;
+        this.frames.clear();
+        return this;
+    }
+
+    /**
+     * Method returns the message of this broadcast, for connections which encode it themselves.
+     * @return the message.
+     */
+    Message getMessage() {
+        return message;
+    }
+
+    /**
+     * Method returns the message as a String object of the legacy mode, which is encoded by the first call.
+     * @param json is the codec which writes the JSON String.
+     * @return a new read-only view of the shared bytes.
+     */
+    ByteBuffer legacy(JsonMessageCodec json) {
+        if (legacy == null) {
+            encodeBuffer.clear();
+            encodeBuffer = ClientConnection.encodeLegacy(json, message, encodeBuffer);
+            legacy = share();
+        }
+        return legacy.duplicate();
+    }
+
+    /**
+     * Method returns the message as a frame of the framed mode, which is encoded by the first call for the codec.
+     * @param codec is a codec whose encoding does not depend on earlier messages.
+     * @return a new read-only view of the shared bytes.
+     */
+    ByteBuffer framed(MessageCodec codec) {
+        ByteBuffer frame = frames.get(codec.getName());
+        if (frame == null) {
+            encodeBuffer.clear();
+            encodeBuffer = ClientConnection.encodeFrame(codec, message, encodeBuffer);
+            frame = share();
+            frames.put(codec.getName(), frame);
+        }
+        return frame.duplicate();
+    }
+
+    /**
+     * Private method copies the encoded bytes into a buffer of their exact size.
+     * @return the read-only buffer.
+     */
+    private ByteBuffer share() {
+        encodeBuffer.flip();
+        ByteBuffer shared = ByteBuffer.allocate(encodeBuffer.remaining());
+        shared.put(encodeBuffer).flip();
+        return shared.asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,604 @@
+package server;
+
+import lib.JsonMessageCodec;
+import lib.LegacyFraming;
+import lib.Message;
+import lib.MessageCodec;
+import lib.MessageFormatException;
+import lib.Transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * State of one client connection of the GameServer. Reads and writes the frames of the connection without blocking
+ * and decodes and encodes its messages. Every connection starts in the legacy mode and may switch to the framed
+ * mode during the nickname handshake. The memory of a connection is bounded: an incoming message may have at most
+ * {@link #MAX_MESSAGE_SIZE} bytes, and a client which lets more than {@link #MAX_PENDING_BYTES} bytes pile up
+ * is disconnected. The waiting frames are written with one gathering write, and a frame which goes to many clients,
+ * see {@link Broadcast}, is queued as a read-only view of a buffer which all of them share. All methods are called
+ * by the thread of the shard which owns the connection; a connection only moves to another shard while it is not
+ * attached to a selector.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+class ClientConnection {
+
+    /**
+     * Maximum number of bytes of an incoming message. Clients only send nicknames and answers.
+     */
+    static final int MAX_MESSAGE_SIZE = 16 * 1024;
+
+    /**
+     * Maximum number of bytes which may wait to be written to a client.
+     */
+    static final int MAX_PENDING_BYTES = 1024 * 1024;
+
+    /**
+     * Initial size of the read buffer.
+     */
+    private static final int INITIAL_READ_SIZE = 512;
+
+    /**
+     * Maximum number of buffers written with one gathering write.
+     */
+    private static final int MAX_GATHER = 64;
+
+    /**
+     * Interface for the receiver of the decoded messages of a connection.
+     */
+    interface MessageHandler {
+
+        /**
+         * Method handles one decoded message. The holder is reused for the next message.
+         * @param connection is the connection the message was received on.
+         * @param message is the decoded message.
+         * @throws IOException if the connection must be closed.
+         */
+        void onMessage(ClientConnection connection, Message message) throws IOException;
+    }
+
+    /**
+     * Private variable that stores the channel of the connection.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Private variable that stores the selection key of the channel, or null while the connection is not attached
+     * to the selector of a shard.
+     */
+    private SelectionKey key;
+
+    /**
+     * Private variable that stores the game of the lobby the connection belongs to, or null before it is attached.
+     */
+    private Game game;
+
+    /**
+     * Private buffer in write mode the incoming bytes are read into.
+     */
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_SIZE);
+
+    /**
+     * Private queue of the buffers which wait to be written.
+     */
+    private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+
+    /**
+     * Private reusable array of the buffers of one gathering write.
+     */
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
+    /**
+     * Private variable that stores the number of bytes which wait to be written.
+     */
+    private int pendingBytes;
+
+    /**
+     * Private variable that stores the mode of the connection.
+     */
+    private Transport.Mode mode = Transport.Mode.OBJECT_STREAM;
+
+    /**
+     * Private variable to store, if the header of the legacy stream was read.
+     */
+    private boolean legacyHeaderRead;
+
+    /**
+     * Private codec for the legacy mode, which always carries JSON.
+     */
+    private final JsonMessageCodec json = new JsonMessageCodec();
+
+    /**
+     * Private codec for the framed mode.
+     */
+    private MessageCodec codec = json;
+
+    /**
+     * Private reusable array for decoding legacy Strings.
+     */
+    private char[] chars = new char[INITIAL_READ_SIZE];
+
+    /**
+     * Private reusable buffer messages are encoded into.
+     */
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(INITIAL_READ_SIZE);
+
+    /**
+     * Private variable that stores the nickname of the player, or null if the player has not joined yet.
+     */
+    private String nickname;
+
+    /**
+     * Private variable to store, if the client understands SCORE_DELTA messages.
+     */
+    private boolean scoreDelta;
+
+    /**
+     * Private variable to store, if the client asked for a session token, with which it can resume its place
+     * in the game after a lost connection.
+     */
+    private boolean sessionRequested;
+
+    /**
+     * Private variable that stores the number of questions the client gets ahead of time, or 0 if the client
+     * gets every question when its round starts.
+     */
+    private int prefetchDepth;
+
+    /**
+     * Private variable that stores the last round whose question was sent ahead of time, or -1.
+     */
+    private long prefetched = -1;
+
+    /**
+     * Constructor for a new connection, which must be attached to the selector of a shard before it is used.
+     * Queues the header of the legacy stream, because the client waits for it before it can read its first message.
+     * @param channel is the accepted non-blocking channel.
+     */
+    ClientConnection(SocketChannel channel) {
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(LegacyFraming.HEADER_SIZE);
+        LegacyFraming.putHeader(header);
+        header.flip();
+        pending.add(header);
+        pendingBytes = header.remaining();
+    }
+
+    /**
+     * Method reads the available bytes and hands every complete message to the handler.
+     * @param holder is the reusable holder the messages are decoded into.
+     * @param handler is the receiver of the messages.
+     * @throws IOException if the connection was closed or broke the protocol.
+     */
+    void read(Message holder, MessageHandler handler) throws IOException {
+        if (channel.read(readBuffer) < 0) {
+            throw new EOFException("Client has closed the connection!");
+        }
+        decode(holder, handler);
+    }
+
+    /**
+     * Method hands every complete message which was read before to the handler, without reading from the channel.
+     * A connection which was moved to another shard continues with the bytes the old shard has read. Decoding stops
+     * as soon as the handler has detached the connection.
+     * @param holder is the reusable holder the messages are decoded into.
+     * @param handler is the receiver of the messages.
+     * @throws IOException if the connection broke the protocol.
+     */
+    void decode(Message holder, MessageHandler handler) throws IOException {
+        readBuffer.flip();
+        try {
+            while (true) {
+                if (mode == Transport.Mode.OBJECT_STREAM && !legacyHeaderRead) {
+                    if (!readLegacyHeader()) {
+                        break;
+                    }
+                }
+                int start = readBuffer.position();
+                boolean complete;
+                try {
+                    complete = mode == Transport.Mode.FRAMED ? readFrame(holder) : readLegacy(holder);
+                } catch (MessageFormatException e) {
+                    if (mode == Transport.Mode.FRAMED && !codec.isStateless()) {
+                        // the codec may have changed its state for the broken frame, so later frames can't be trusted
+                        throw new IOException("Broken frame of " + describe() + ": " + e.getMessage(), e);
+                    }
+                    // the frame is skipped, the connection is still intact
+                    System.out.println("Could not parse message from " + describe() + "!");
+                    continue;
+                }
+                if (!complete) {
+                    readBuffer.position(start);
+                    break;
+                }
+                handler.onMessage(this, holder);
+                if (key == null) {
+                    // the connection moves to another shard, which decodes the remaining bytes
+                    return;
+                }
+            }
+        } finally {
+            readBuffer.compact();
+        }
+        if (!readBuffer.hasRemaining()) {
+            if (readBuffer.capacity() >= MAX_MESSAGE_SIZE + Transport.HEADER_SIZE + 8) {
+                throw new IOException("Message of " + describe() + " is too long!");
+            }
+            ByteBuffer bigger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+            readBuffer.flip();
+            bigger.put(readBuffer);
+            readBuffer = bigger;
+        }
+    }
+
+    /**
+     * Private method decodes the next frame of the framed mode.
+     * @param holder is the holder the message is decoded into.
+     * @return true, if a complete message was decoded, false if more bytes are needed.
+     * @throws IOException if the frame is invalid.
+     */
+    private boolean readFrame(Message holder) throws IOException {
+        if (readBuffer.remaining() < Transport.HEADER_SIZE) {
+            return false;
+        }
+        int length = readBuffer.getInt(readBuffer.position());
+        if (length < 0 || length > MAX_MESSAGE_SIZE) {
+            throw new IOException("Invalid frame length " + length + "!");
+        }
+        if (readBuffer.remaining() < Transport.HEADER_SIZE + length) {
+            return false;
+        }
+        readBuffer.position(readBuffer.position() + Transport.HEADER_SIZE);
+        ByteBuffer frame = readBuffer.slice();
+        frame.limit(length);
+        readBuffer.position(readBuffer.position() + length);
+        codec.decode(frame, holder);
+        return true;
+    }
+
+    /**
+     * Private method reads the header the legacy client writes once at the start of its stream.
+     * @return true, if the header was read, false if more bytes are needed.
+     * @throws IOException if the header is invalid.
+     */
+    private boolean readLegacyHeader() throws IOException {
+        if (readBuffer.remaining() < LegacyFraming.HEADER_SIZE) {
+            return false;
+        }
+        if (readBuffer.getShort() != LegacyFraming.STREAM_MAGIC
+                || readBuffer.getShort() != LegacyFraming.STREAM_VERSION) {
+            throw new IOException("Invalid stream header!");
+        }
+        legacyHeaderRead = true;
+        return true;
+    }
+
+    /**
+     * Private method decodes the next String object of the legacy mode.
+     * @param holder is the holder the message is decoded into.
+     * @return true, if a complete message was decoded, false if more bytes are needed.
+     * @throws IOException if the stream is invalid.
+     */
+    private boolean readLegacy(Message holder) throws IOException {
+        while (readBuffer.hasRemaining() && readBuffer.get(readBuffer.position()) == LegacyFraming.TC_RESET) {
+            readBuffer.get();
+        }
+        if (!readBuffer.hasRemaining()) {
+            return false;
+        }
+        byte tag = readBuffer.get();
+        long length;
+        if (tag == LegacyFraming.TC_STRING) {
+            if (readBuffer.remaining() < 2) {
+                return false;
+            }
+            length = readBuffer.getShort() & 0xFFFF;
+        }
+        else if (tag == LegacyFraming.TC_LONGSTRING) {
+            if (readBuffer.remaining() < 8) {
+                return false;
+            }
+            length = readBuffer.getLong();
+        }
+        else {
+            // back references to Strings sent before are not supported, they would need an unbounded handle table
+            throw new IOException("Unsupported object tag " + tag + "!");
+        }
+        if (length < 0 || length > MAX_MESSAGE_SIZE) {
+            throw new IOException("Invalid String length " + length + "!");
+        }
+        if (readBuffer.remaining() < length) {
+            return false;
+        }
+        if (chars.length < length) {
+            chars = new char[(int) length];
+        }
+        String s = LegacyFraming.getModifiedUtf8(readBuffer, (int) length, chars);
+        if (s == null) {
+            throw new MessageFormatException("Invalid modified UTF-8!");
+        }
+        json.decode(s, holder);
+        return true;
+    }
+
+    /**
+     * Method encodes the given message in the mode of this connection and queues it.
+     * @param message is the message to send.
+     * @throws IOException if too many bytes wait to be written to this client.
+     */
+    void send(Message message) throws IOException {
+        encodeBuffer.clear();
+        encodeBuffer = mode == Transport.Mode.FRAMED
+                ? encodeFrame(codec, message, encodeBuffer)
+                : encodeLegacy(json, message, encodeBuffer);
+        encodeBuffer.flip();
+        ByteBuffer copy = ByteBuffer.allocate(encodeBuffer.remaining());
+        copy.put(encodeBuffer).flip();
+        enqueue(copy);
+    }
+
+    /**
+     * Method queues a message which goes to many clients. The connection shares the bytes the broadcast has encoded
+     * for its mode; only a codec whose encoding depends on earlier messages, like the binary codec with its
+     * dictionary, encodes the message for this connection alone.
+     * @param broadcast is the broadcast.
+     * @throws IOException if too many bytes wait to be written to this client.
+     */
+    void send(Broadcast broadcast) throws IOException {
+        if (mode != Transport.Mode.FRAMED) {
+            enqueue(broadcast.legacy(json));
+        }
+        else if (codec.isStateless()) {
+            enqueue(broadcast.framed(codec));
+        }
+        else {
+            send(broadcast.getMessage());
+        }
+    }
+
+    /**
+     * Method encodes a message as a frame of the framed mode.
+     * @param codec is the codec of the frame.
+     * @param message is the message.
+     * @param out is the empty buffer in write mode the frame is written to.
+     * @return the buffer in write mode which contains the frame, which is a new and larger buffer if out was too
+     * small.
+     */
+    static ByteBuffer encodeFrame(MessageCodec codec, Message message, ByteBuffer out) {
+        out.position(Transport.HEADER_SIZE);
+        out = codec.encode(message, out);
+        out.putInt(0, out.position() - Transport.HEADER_SIZE);
+        return out;
+    }
+
+    /**
+     * Method encodes a message as a String object of the legacy mode.
+     * @param json is the codec which writes the JSON String.
+     * @param message is the message.
+     * @param out is the empty buffer in write mode the object is written to.
+     * @return the buffer in write mode which contains the object, which is a new and larger buffer if out was too
+     * small.
+     */
+    static ByteBuffer encodeLegacy(JsonMessageCodec json, Message message, ByteBuffer out) {
+        String s = json.toJsonString(message);
+        long length = LegacyFraming.objectLength(s);
+        if (out.capacity() < length) {
+            out = ByteBuffer.allocate((int) length);
+        }
+        LegacyFraming.putString(out, s);
+        return out;
+    }
+
+    /**
+     * Private method queues a buffer and asks the selector to report when the channel can be written.
+     * @param buffer is the buffer in read mode, which is not changed by anyone else until it was written.
+     * @throws IOException if too many bytes wait to be written to this client.
+     */
+    private void enqueue(ByteBuffer buffer) throws IOException {
+        pending.add(buffer);
+        pendingBytes += buffer.remaining();
+        if (key != null) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+        if (pendingBytes > MAX_PENDING_BYTES) {
+            throw new IOException(describe() + " does not read its messages!");
+        }
+    }
+
+    /**
+     * Method writes as many waiting bytes as the channel takes without blocking, up to {@link #MAX_GATHER}
+     * buffers with one system call.
+     * @throws IOException if writing failed.
+     */
+    void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            int count = 0;
+            for (ByteBuffer buffer : pending) {
+                gather[count++] = buffer;
+                if (count == MAX_GATHER) {
+                    break;
+                }
+            }
+            pendingBytes -= (int) channel.write(gather, 0, count);
+            boolean full = gather[count - 1].hasRemaining();
+            Arrays.fill(gather, 0, count, null);
+            while (!pending.isEmpty() && !pending.peek().hasRemaining()) {
+                pending.poll();
+            }
+            if (full) {
+                // the socket takes no more bytes for now
+                return;
+            }
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Method registers the channel with the selector of a shard, which handles the connection from now on.
+     * @param selector is the selector of the shard.
+     * @throws ClosedChannelException if the channel was closed.
+     */
+    void attach(Selector selector) throws ClosedChannelException {
+        int ops = pending.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+        key = channel.register(selector, ops, this);
+    }
+
+    /**
+     * Method removes the channel from the selector of its shard, so the connection can be handed to another shard.
+     * The bytes which were read or wait to be written stay with the connection.
+     */
+    void detach() {
+        key.cancel();
+        key = null;
+    }
+
+    /**
+     * Method switches this connection to the framed mode. Must be called after the acknowledgement was queued.
+     * @param codec is the codec agreed on for the framed mode.
+     */
+    void switchToFramed(MessageCodec codec) {
+        this.mode = Transport.Mode.FRAMED;
+        this.codec = codec;
+    }
+
+    /**
+     * Method closes the channel.
+     */
+    void close() {
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("IOException occured!");
+        }
+        codec.release();
+    }
+
+    /**
+     * Method returns the mode of this connection.
+     * @return the transport mode.
+     */
+    Transport.Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Method returns the game of the lobby the connection belongs to.
+     * @return the game, or null before the connection was attached.
+     */
+    Game getGame() {
+        return game;
+    }
+
+    /**
+     * Method sets the game of the lobby the connection belongs to.
+     * @param game is the game.
+     */
+    void setGame(Game game) {
+        this.game = game;
+    }
+
+    /**
+     * Method returns the nickname of the player.
+     * @return the nickname, or null if the player has not joined yet.
+     */
+    String getNickname() {
+        return nickname;
+    }
+
+    /**
+     * Method sets the nickname of the player.
+     * @param nickname is the nickname.
+     */
+    void setNickname(String nickname) {
+        this.nickname = nickname;
+    }
+
+    /**
+     * Method returns whether the client understands SCORE_DELTA messages.
+     * @return true, if the client understands deltas.
+     */
+    boolean isScoreDelta() {
+        return scoreDelta;
+    }
+
+    /**
+     * Method sets whether the client understands SCORE_DELTA messages.
+     * @param scoreDelta is true, if the client understands deltas.
+     */
+    void setScoreDelta(boolean scoreDelta) {
+        this.scoreDelta = scoreDelta;
+    }
+
+    /**
+     * Method returns whether the client asked for a session token.
+     * @return true, if the player gets a session token.
+     */
+    boolean isSessionRequested() {
+        return sessionRequested;
+    }
+
+    /**
+     * Method sets whether the client asked for a session token.
+     * @param sessionRequested is true, if the player gets a session token.
+     */
+    void setSessionRequested(boolean sessionRequested) {
+        this.sessionRequested = sessionRequested;
+    }
+
+    /**
+     * Method returns the number of questions the client gets ahead of time.
+     * @return number of questions, or 0 if the client gets every question when its round starts.
+     */
+    int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    /**
+     * Method sets the number of questions the client gets ahead of time.
+     * @param prefetchDepth is the number of questions, or 0 if the client gets every question when its round starts.
+     */
+    void setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    /**
+     * Method returns the last round whose question was sent ahead of time.
+     * @return the round, or -1 if no question was sent ahead of time.
+     */
+    long getPrefetched() {
+        return prefetched;
+    }
+
+    /**
+     * Method sets the last round whose question was sent ahead of time.
+     * @param prefetched is the round.
+     */
+    void setPrefetched(long prefetched) {
+        this.prefetched = prefetched;
+    }
+
+    /**
+     * Method returns a short description of this connection for log messages.
+     * @return the nickname or the remote address.
+     */
+    String describe() {
+        if (nickname != null) {
+            return nickname;
+        }
+        try {
+            return String.valueOf(channel.getRemoteAddress());
+        } catch (IOException e) {
+            return "unknown client";
+        }
+    }
+}
@@ -0,0 +1,774 @@
+package server;
+
+import lib.JsonHashMapParser;
+import lib.Message;
+import lib.PrefetchQueue;
+import lib.ScoreBoard;
+import lib.Transport;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Rules of one game of the GameServer. The game starts as soon as the first player has joined and asks for the
+ * terms of its catalog one after another. The fastest correct answer of a round scores a point. The answers are checked
+ * by an AnswerMatcher, which ignores case, accents and whitespace and may tolerate a few typos. A client may tell how
+ * long its player took from seeing the question until answering, which makes up for a slow network: an answer
+ * counts with this time instead of the time the server has measured, but at most {@link #MAX_COMPENSATION_MILLIS}
+ * earlier, so a client which lies can't gain more than that. A round ends when
+ * every player has answered or the round timeout is over. After the last term the player with the most points wins,
+ * and after a short pause a new game starts. A client may prefetch the questions: it gets the terms of the next
+ * rounds ahead of time, also of the next game, and only a small ROUND message when a round starts.
+ * A player which asked for a session token keeps its nickname and its
+ * points for a while after its connection was lost, so it can resume its place in the game on a new connection.
+ * Every game is one lobby of the server; its session tokens start with the number of the lobby, so a player which
+ * resumes finds its lobby again. The messages which go to every player are encoded once, see {@link Broadcast}.
+ * All methods are called by the thread of the shard which owns the lobby.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+class Game {
+
+    /**
+     * Points the first correct answer of a round scores.
+     */
+    static final long POINTS_PER_ANSWER = 1;
+
+    /**
+     * Pause in milliseconds between the end of a game and the start of the next game.
+     */
+    static final long PAUSE_MILLIS = 5000;
+
+    /**
+     * Time in milliseconds a player with a session token may take to resume after its connection was lost.
+     */
+    static final long RESUME_MILLIS = 30000;
+
+    /**
+     * Maximum time in milliseconds an answer counts earlier than measured by the server, because of the duration
+     * the client has sent.
+     */
+    static final long MAX_COMPENSATION_MILLIS = 300;
+
+    /**
+     * Time in milliseconds from sending a ROUND message until the start it announces, so that the clients with a
+     * slow link show the question at the same time as the others. It is well below MAX_COMPENSATION_MILLIS, so a
+     * player loses no time by waiting for the start.
+     */
+    static final long START_DELAY_MILLIS = 100;
+
+    /**
+     * Enum class for the states of a game.
+     */
+    private enum State {
+        /**
+         * No player has joined so far.
+         */
+        WAITING,
+
+        /**
+         * A term was sent and the game waits for the answers.
+         */
+        ROUND,
+
+        /**
+         * The game is over and the next game starts after a pause.
+         */
+        PAUSE
+    }
+
+    /**
+     * Separator between the number of the lobby and the random part of a session token.
+     */
+    static final char TOKEN_SEPARATOR = '.';
+
+    /**
+     * Private variable that stores the number of the lobby.
+     */
+    private final int lobby;
+
+    /**
+     * Private variable that stores the catalog of the terms.
+     */
+    private final QuestionCatalog catalog;
+
+    /**
+     * Private engine which checks the answers against the compiled translations of the catalog.
+     */
+    private final AnswerMatcher matcher;
+
+    /**
+     * Private variable that stores the timeout of a round in milliseconds.
+     */
+    private final long roundTimeoutMillis;
+
+    /**
+     * Private receiver of the connections which failed and must be closed.
+     */
+    private final Consumer<ClientConnection> failures;
+
+    /**
+     * Private map that stores the connections of the players, keyed by nickname.
+     */
+    private final Map<String, ClientConnection> players = new LinkedHashMap<>();
+
+    /**
+     * Private variable that stores the points of the players.
+     */
+    private final ScoreBoard scores = new ScoreBoard();
+
+    /**
+     * Private set that stores the nicknames of the players which have answered in the current round.
+     */
+    private final Set<String> answered = new HashSet<>();
+
+    /**
+     * Private map that stores the nicknames of the players with a session, keyed by their token.
+     */
+    private final Map<String, String> sessions = new HashMap<>();
+
+    /**
+     * Private map that stores the tokens of the players with a session, keyed by nickname.
+     */
+    private final Map<String, String> tokens = new HashMap<>();
+
+    /**
+     * Private map that stores the time until the players which lost their connection may resume, keyed by
+     * nickname. All players get the same time, so the map is ordered by this time.
+     */
+    private final Map<String, Long> suspended = new LinkedHashMap<>();
+
+    /**
+     * Private generator of the session tokens, which must not be guessable.
+     */
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Private reusable holder for the messages the game sends.
+     */
+    private final Message message = new Message();
+
+    /**
+     * Private reusable holder for the full score list.
+     */
+    private final Message snapshot = new Message();
+
+    /**
+     * Private reusable broadcast of the messages which go to every player.
+     */
+    private final Broadcast shared = new Broadcast();
+
+    /**
+     * Private reusable broadcast of the full score list, which goes out together with a SCORE_DELTA.
+     */
+    private final Broadcast sharedSnapshot = new Broadcast();
+
+    /**
+     * Private variable that stores the number of connections which belong to the lobby, also of the clients which
+     * have not joined yet.
+     */
+    private int connections;
+
+    /**
+     * Private variable that stores the state of the game.
+     */
+    private State state = State.WAITING;
+
+    /**
+     * Private variable that stores the index of the current term in the catalog.
+     */
+    private int round;
+
+    /**
+     * Private variable that stores the number of the current or the last round, which only grows, also across games.
+     */
+    private long roundNumber = -1;
+
+    /**
+     * Private variable that stores the number of the first round of the current game.
+     */
+    private long firstRoundNumber;
+
+    /**
+     * Private list of the answers of the current round which arrived since they were last checked, in the order
+     * they arrived.
+     */
+    private final List<PendingAnswer> burst = new ArrayList<>();
+
+    /**
+     * Private reusable list of the texts of the answers in the burst.
+     */
+    private final List<String> burstTexts = new ArrayList<>();
+
+    /**
+     * Private variable that stores the nickname of the first player with a correct answer in this round, or null.
+     */
+    private String roundWinner;
+
+    /**
+     * Private variable that stores the compensated time in milliseconds of the answer of the round winner.
+     */
+    private long roundWinnerTime;
+
+    /**
+     * Private variable that stores the time in milliseconds when the term of the current round was sent.
+     */
+    private long roundStart;
+
+    /**
+     * Private variable that stores the time in milliseconds when the current round or pause ends, or 0.
+     */
+    private long deadline;
+
+    /**
+     * Constructor for a new game.
+     * @param lobby is the number of the lobby.
+     * @param catalog is the catalog of the terms.
+     * @param matcher is the engine which checks the answers, compiled from the same catalog.
+     * @param roundTimeoutMillis is the timeout of a round in milliseconds.
+     * @param failures is the receiver of the connections which failed and must be closed.
+     */
+    Game(int lobby, QuestionCatalog catalog, AnswerMatcher matcher, long roundTimeoutMillis,
+         Consumer<ClientConnection> failures) {
+        this.lobby = lobby;
+        this.catalog = catalog;
+        this.matcher = matcher;
+        this.roundTimeoutMillis = roundTimeoutMillis;
+        this.failures = failures;
+    }
+
+    /**
+     * Method returns the number of the lobby a session token belongs to.
+     * @param token is the session token.
+     * @return the number of the lobby, or -1 if the token has no valid number.
+     */
+    static int lobbyOf(String token) {
+        int separator = token.indexOf(TOKEN_SEPARATOR);
+        if (separator <= 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(token.substring(0, separator));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Method returns the number of the lobby.
+     * @return the number of the lobby.
+     */
+    int getLobby() {
+        return lobby;
+    }
+
+    /**
+     * Method counts a connection which belongs to the lobby from now on.
+     */
+    void addConnection() {
+        connections++;
+    }
+
+    /**
+     * Method counts a connection which no longer belongs to the lobby, because it was closed or moved to another
+     * lobby.
+     */
+    void removeConnection() {
+        connections--;
+    }
+
+    /**
+     * Method returns whether the lobby can be removed: it has no connections and no player which may resume.
+     * @return true, if the lobby is not needed any more.
+     */
+    boolean isIdle() {
+        return connections == 0 && suspended.isEmpty();
+    }
+
+    /**
+     * Method returns whether a new player must not use the given nickname.
+     * @param nickname is the nickname to check.
+     * @return true, if the nickname is already used or reserved.
+     */
+    boolean isTaken(String nickname) {
+        return scores.isTaken(nickname);
+    }
+
+    /**
+     * Method returns the number of players.
+     * @return number of players.
+     */
+    int size() {
+        return players.size();
+    }
+
+    /**
+     * Method returns the time when the current round or pause ends or the first suspended player is removed.
+     * @return time in milliseconds, or 0 if nothing has to be done at a certain time.
+     */
+    long getDeadline() {
+        if (suspended.isEmpty()) {
+            return deadline;
+        }
+        long expiry = suspended.values().iterator().next();
+        return deadline == 0 ? expiry : Math.min(deadline, expiry);
+    }
+
+    /**
+     * Method adds a player whose nickname was checked before. The player gets the language, the current term
+     * and the full score list, and its session token first, if the client asked for one. The first player starts
+     * the game.
+     * @param connection is the connection of the player with its nickname set.
+     * @param now is the current time in milliseconds.
+     */
+    void join(ClientConnection connection, long now) {
+        String nickname = connection.getNickname();
+        if (connection.isSessionRequested()) {
+            byte[] bytes = new byte[16];
+            random.nextBytes(bytes);
+            String token = lobby + String.valueOf(TOKEN_SEPARATOR)
+                    + Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+            sessions.put(token, nickname);
+            tokens.put(nickname, token);
+        }
+        players.put(nickname, connection);
+        scores.join(nickname);
+        welcome(connection, now);
+    }
+
+    /**
+     * Method returns whether a player of this lobby may resume with a session token.
+     * @param token is the session token.
+     * @return true, if the token is known and has not expired.
+     */
+    boolean hasSession(String token) {
+        return sessions.containsKey(token);
+    }
+
+    /**
+     * Method gives a player with a session token its place in the game back on a new connection. The player
+     * gets the same messages as a new player. An old connection of the player which is still open is closed.
+     * @param connection is the new connection of the player, which has not joined yet.
+     * @param token is the session token of the player.
+     * @param now is the current time in milliseconds.
+     * @return true, if the player resumed; false, if the token is unknown or has expired.
+     */
+    boolean resume(ClientConnection connection, String token, long now) {
+        String nickname = sessions.get(token);
+        if (nickname == null) {
+            return false;
+        }
+        ClientConnection old = players.get(nickname);
+        if (old != null) {
+            // the server has not noticed yet that the old connection is lost, the player keeps its answer
+            failures.accept(old);
+        }
+        suspended.remove(nickname);
+        connection.setNickname(nickname);
+        connection.setSessionRequested(true);
+        players.put(nickname, connection);
+        welcome(connection, now);
+        return true;
+    }
+
+    /**
+     * Method removes a player. The round ends if every remaining player has answered.
+     * @param connection is the connection of the player.
+     * @param now is the current time in milliseconds.
+     */
+    void leave(ClientConnection connection, long now) {
+        String nickname = connection.getNickname();
+        if (nickname == null || players.get(nickname) != connection) {
+            return;
+        }
+        players.remove(nickname);
+        answered.remove(nickname);
+        if (tokens.containsKey(nickname)) {
+            // the player keeps its nickname and points until it resumes or its time is over
+            suspended.put(nickname, now + RESUME_MILLIS);
+        }
+        else {
+            scores.leave(nickname);
+        }
+        if (players.isEmpty()) {
+            state = State.WAITING;
+            deadline = 0;
+        }
+        else if (state == State.ROUND && answered.size() >= players.size()) {
+            endRound(now);
+        }
+    }
+
+    /**
+     * Method takes the answer of a player. Only the first answer of a player in a round counts. The answer is
+     * only checked with the other answers of its burst, see {@link #checkAnswers(long)}.
+     * @param connection is the connection of the player.
+     * @param answer is the answer.
+     * @param duration is the time in milliseconds the player took according to its client, or -1 if unknown.
+     * @param now is the current time in milliseconds.
+     */
+    void answer(ClientConnection connection, String answer, long duration, long now) {
+        String nickname = connection.getNickname();
+        if (state != State.ROUND || nickname == null || !answered.add(nickname)) {
+            return;
+        }
+        long measured = now - roundStart;
+        long time = duration < 0 ? measured
+                : Math.max(measured - MAX_COMPENSATION_MILLIS, Math.min(measured, duration));
+        burst.add(new PendingAnswer(nickname, answer, time));
+    }
+
+    /**
+     * Method checks the answers which arrived since the last call, and ends the round if every player has answered.
+     * The shard calls it after it has read all ready connections, so the answers which arrive at the
+     * same moment are checked together, in parallel if there are many.
+     * @param now is the current time in milliseconds.
+     */
+    void checkAnswers(long now) {
+        decideBurst();
+        if (state == State.ROUND && answered.size() >= players.size()) {
+            endRound(now);
+        }
+    }
+
+    /**
+     * Private method checks the answers of the burst and lets the correct answers compete for the round. Of the
+     * correct answers the one with the smallest compensated time wins the round; of two answers with the same time
+     * the one which arrived first, so the winner doesn't depend on which thread has checked which answer.
+     */
+    private void decideBurst() {
+        if (burst.isEmpty()) {
+            return;
+        }
+        burstTexts.clear();
+        for (PendingAnswer pending : burst) {
+            burstTexts.add(pending.answer);
+        }
+        boolean[] correct = matcher.matchAll(round, burstTexts);
+        for (int i = 0; i < correct.length; i++) {
+            PendingAnswer pending = burst.get(i);
+            if (correct[i] && (roundWinner == null || pending.time < roundWinnerTime)) {
+                roundWinner = pending.nickname;
+                roundWinnerTime = pending.time;
+            }
+        }
+        burst.clear();
+        burstTexts.clear();
+    }
+
+    /**
+     * Method sends the full score list to a player which has missed a SCORE_DELTA.
+     * @param connection is the connection of the player.
+     */
+    void resync(ClientConnection connection) {
+        if (connection.getNickname() != null) {
+            send(connection, scores.snapshot(message, connection.isScoreDelta()));
+        }
+    }
+
+    /**
+     * Method ends the current round or pause if its time is over.
+     * @param now is the current time in milliseconds.
+     */
+    void tick(long now) {
+        expireSessions(now);
+        if (deadline == 0 || now < deadline) {
+            return;
+        }
+        if (state == State.ROUND) {
+            endRound(now);
+        }
+        else if (state == State.PAUSE) {
+            scores.reset();
+            broadcastScore();
+            startGame(now);
+        }
+    }
+
+    /**
+     * Private method sends a joined or resumed player its session token, the language, the current term and the
+     * full score list. The first player starts the game.
+     * @param connection is the connection of the player.
+     * @param now is the current time in milliseconds.
+     */
+    private void welcome(ClientConnection connection, long now) {
+        String token = tokens.get(connection.getNickname());
+        if (token != null) {
+            send(connection, message.clear(JsonHashMapParser.Type.NICKNAME).putText(Transport.SESSION_KEY, token));
+        }
+        send(connection, message.clear(JsonHashMapParser.Type.LANGUAGE).putText("Language", catalog.getLanguage()));
+        if (state == State.ROUND) {
+            if (connection.getPrefetchDepth() > 0) {
+                startRound(connection);
+            }
+            else {
+                send(connection, question());
+            }
+        }
+        else if (state == State.PAUSE) {
+            prefetch(connection, roundNumber + connection.getPrefetchDepth());
+        }
+        send(connection, scores.snapshot(message, connection.isScoreDelta()));
+        if (state == State.WAITING) {
+            startGame(now);
+        }
+    }
+
+    /**
+     * Private method removes the suspended players whose time to resume is over.
+     * @param now is the current time in milliseconds.
+     */
+    private void expireSessions(long now) {
+        Iterator<Map.Entry<String, Long>> entries = suspended.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Long> entry = entries.next();
+            if (entry.getValue() > now) {
+                // the map is ordered by time, so no later player has expired
+                return;
+            }
+            entries.remove();
+            sessions.remove(tokens.remove(entry.getKey()));
+            scores.leave(entry.getKey());
+        }
+    }
+
+    /**
+     * Private method starts a new game with the first term.
+     * @param now is the current time in milliseconds.
+     */
+    private void startGame(long now) {
+        round = -1;
+        firstRoundNumber = roundNumber + 1;
+        broadcast(message.clear(JsonHashMapParser.Type.LANGUAGE).putText("Language", catalog.getLanguage()));
+        nextRound(now);
+    }
+
+    /**
+     * Private method sends the next term, or ends the game after the last term.
+     * @param now is the current time in milliseconds.
+     */
+    private void nextRound(long now) {
+        round++;
+        if (round >= catalog.getQuestions().size()) {
+            endGame(now);
+            return;
+        }
+        state = State.ROUND;
+        answered.clear();
+        roundWinner = null;
+        roundStart = now;
+        roundNumber = firstRoundNumber + round;
+        deadline = now + roundTimeoutMillis;
+        shared.of(question());
+        for (ClientConnection connection : players.values()) {
+            if (connection.getPrefetchDepth() == 0) {
+                send(connection, shared);
+            }
+        }
+        for (ClientConnection connection : players.values()) {
+            if (connection.getPrefetchDepth() > 0) {
+                startRound(connection);
+            }
+        }
+    }
+
+    /**
+     * Private method scores the first correct answer, sends the new points and starts the next round.
+     * @param now is the current time in milliseconds.
+     */
+    private void endRound(long now) {
+        // the answers which arrived before the end still count
+        decideBurst();
+        if (roundWinner != null) {
+            scores.addPoints(roundWinner, POINTS_PER_ANSWER);
+        }
+        broadcastScore();
+        nextRound(now);
+    }
+
+    /**
+     * Private method sends the winner of the game and starts the pause until the next game.
+     * @param now is the current time in milliseconds.
+     */
+    private void endGame(long now) {
+        String winner = "";
+        long best = -1;
+        for (Map.Entry<String, Long> entry : scores.getPoints().entrySet()) {
+            if (entry.getValue() > best) {
+                best = entry.getValue();
+                winner = entry.getKey();
+            }
+        }
+        broadcast(message.clear(JsonHashMapParser.Type.WINNER).putText("Winner", winner));
+        state = State.PAUSE;
+        deadline = now + PAUSE_MILLIS;
+        // the pause is the best time to send the first questions of the next game
+        for (ClientConnection connection : players.values()) {
+            prefetch(connection, roundNumber + connection.getPrefetchDepth());
+        }
+    }
+
+    /**
+     * Private method starts the current round for a client which prefetches the questions: the client gets the
+     * question of the round, if it was not sent ahead of time, the ROUND message and the question of the next round
+     * it does not have so far.
+     * @param connection is the connection of the player.
+     */
+    private void startRound(ClientConnection connection) {
+        prefetch(connection, roundNumber);
+        send(connection, message.clear(JsonHashMapParser.Type.ROUND)
+                .putNumber(PrefetchQueue.ROUND_KEY, roundNumber)
+                .putNumber(PrefetchQueue.START_KEY, roundStart + START_DELAY_MILLIS));
+        prefetch(connection, roundNumber + connection.getPrefetchDepth());
+    }
+
+    /**
+     * Private method sends a client which prefetches the questions every question up to the given round,
+     * which it does not have so far. Only rounds which have not started yet are sent, besides the current round.
+     * @param connection is the connection of the player.
+     * @param last is the last round whose question is sent.
+     */
+    private void prefetch(ClientConnection connection, long last) {
+        long next = Math.max(connection.getPrefetched() + 1, state == State.ROUND ? roundNumber : roundNumber + 1);
+        for (; next <= last; next++) {
+            String term = getTerm(next);
+            if (term == null) {
+                return;
+            }
+            send(connection, message.clear(JsonHashMapParser.Type.PREFETCH)
+                    .putNumber(PrefetchQueue.ROUND_KEY, next)
+                    .putText("Question", term));
+            connection.setPrefetched(next);
+        }
+    }
+
+    /**
+     * Private method returns the term of a round of the current or the next game.
+     * @param number is the number of the round.
+     * @return the term, or null if the round is after the next game.
+     */
+    private String getTerm(long number) {
+        int size = catalog.getQuestions().size();
+        long index = number - firstRoundNumber;
+        if (index >= size) {
+            // every game asks for all terms, so the next game starts with the round after the last round
+            index -= size;
+        }
+        return index >= 0 && index < size ? catalog.getQuestions().get((int) index).getTerm() : null;
+    }
+
+    /**
+     * Private method writes the current term into the reusable message.
+     * @return the QUESTION message.
+     */
+    private Message question() {
+        return message.clear(JsonHashMapParser.Type.QUESTION)
+                .putText("Question", catalog.getQuestions().get(round).getTerm());
+    }
+
+    /**
+     * Private method sends the changed points: a SCORE_DELTA to the players which understand it and the full
+     * score list to all other players.
+     */
+    private void broadcastScore() {
+        boolean snapshotBuilt = false;
+        // an empty delta is not sent at all, so it must not use up a sequence number
+        boolean hasChanges = scores.hasChanges();
+        if (hasChanges) {
+            shared.of(scores.delta(message));
+        }
+        for (ClientConnection connection : players.values()) {
+            if (connection.isScoreDelta()) {
+                if (hasChanges) {
+                    send(connection, shared);
+                }
+            }
+            else {
+                if (!snapshotBuilt) {
+                    sharedSnapshot.of(scores.snapshot(snapshot, false));
+                    snapshotBuilt = true;
+                }
+                send(connection, sharedSnapshot);
+            }
+        }
+    }
+
+    /**
+     * Private method sends a message to every player, encoded once.
+     * @param m is the message.
+     */
+    private void broadcast(Message m) {
+        shared.of(m);
+        for (ClientConnection connection : players.values()) {
+            send(connection, shared);
+        }
+    }
+
+    /**
+     * Private method sends a message to one player and reports the connection if it failed.
+     * @param connection is the connection of the player.
+     * @param m is the message.
+     */
+    private void send(ClientConnection connection, Message m) {
+        try {
+            connection.send(m);
+        } catch (IOException e) {
+            failures.accept(connection);
+        }
+    }
+
+    /**
+     * Private method sends a broadcast to one player and reports the connection if it failed.
+     * @param connection is the connection of the player.
+     * @param b is the broadcast.
+     */
+    private void send(ClientConnection connection, Broadcast b) {
+        try {
+            connection.send(b);
+        } catch (IOException e) {
+            failures.accept(connection);
+        }
+    }
+
+    /**
+     * An answer which waits to be checked.
+     */
+    private static final class PendingAnswer {
+
+        /**
+         * Private variable that stores the nickname of the player.
+         */
+        private final String nickname;
+
+        /**
+         * Private variable that stores the answer.
+         */
+        private final String answer;
+
+        /**
+         * Private variable that stores the compensated time in milliseconds of the answer.
+         */
+        private final long time;
+
+        /**
+         * Constructor for a new waiting answer.
+         * @param nickname is the nickname of the player.
+         * @param answer is the answer.
+         * @param time is the compensated time in milliseconds of the answer.
+         */
+        private PendingAnswer(String nickname, String answer, long time) {
+            this.nickname = nickname;
+            this.answer = answer;
+            this.time = time;
+        }
+    }
+}
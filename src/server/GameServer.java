@@ -0,0 +1,252 @@
+package server;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Headless reference game server, which speaks the protocol of JsonHashMapParser with the client.
+ * It receives NICKNAME and ANSWER messages and sends QUESTION, LANGUAGE, SCORE, WINNER and ERROR messages,
+ * and to clients which prefetch the questions PREFETCH and ROUND messages instead of QUESTION messages.
+ * The players are split into lobbies of at most {@link #LOBBY_SIZE} connections, each with its own game; by default
+ * all players share one lobby. The lobbies are spread over a fixed number of shards, one per core by default, and
+ * every shard handles the connections of its lobbies with one thread and one NIO selector, see {@link Shard}, so
+ * thousands of clients need no thread each and the lobbies of different shards never wait for each other.
+ * The thread of the server only accepts the connections and hands them to the shard of their lobby.
+ * The server can be started from the command line or in-process on localhost, for example by tests and benchmarks.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class GameServer implements Runnable, Closeable {
+
+    /**
+     * Default port of the server.
+     */
+    public static final int DEFAULT_PORT = 10001;
+
+    /**
+     * Default timeout of a round in milliseconds.
+     */
+    public static final long DEFAULT_ROUND_TIMEOUT = 20000;
+
+    /**
+     * Largest number of typos an answer may have, one per four letters of the translation. Set the system property
+     * languagegame.typos to 1 or 2 to accept answers with typos; the default 0 only accepts the exact spelling,
+     * ignoring case, accents and whitespace.
+     */
+    public static final int MAX_TYPOS = Integer.getInteger("languagegame.typos", 0);
+
+    /**
+     * Number of shards, which can be set with the system property languagegame.shards. The default is the number
+     * of cores.
+     */
+    public static final int SHARDS = Integer.getInteger("languagegame.shards",
+            Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Number of connections a lobby takes before the next lobby is opened, which can be set with the system property
+     * languagegame.lobbySize. The default 0 puts all players into one lobby, as one game.
+     */
+    public static final int LOBBY_SIZE = Integer.getInteger("languagegame.lobbySize", 0);
+
+    /**
+     * Private selector for the channel which accepts new connections.
+     */
+    private final Selector selector;
+
+    /**
+     * Private channel which accepts new connections.
+     */
+    private final ServerSocketChannel serverChannel;
+
+    /**
+     * Private array of the shards, which is not changed after the constructor.
+     */
+    private final Shard[] shards;
+
+    /**
+     * Private variable that stores the number of connections a lobby takes, or 0 for one lobby.
+     */
+    private final int lobbySize;
+
+    /**
+     * Private variable that stores the number of the lobby which takes the next connection.
+     */
+    private int openLobby;
+
+    /**
+     * Private variable that stores the number of connections the open lobby has taken.
+     */
+    private int openLobbyConnections;
+
+    /**
+     * Private variable to determine whether the acceptor thread should be running or should be stopped.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Constructor for a new server with {@link #SHARDS} shards and lobbies of {@link #LOBBY_SIZE} connections,
+     * which is bound immediately but only handles connections when it runs.
+     * @param address is the address to bind to, port 0 picks a free port.
+     * @param catalog is the catalog of the terms.
+     * @param roundTimeoutMillis is the timeout of a round in milliseconds.
+     * @throws IOException if the server could not be bound.
+     */
+    public GameServer(InetSocketAddress address, QuestionCatalog catalog, long roundTimeoutMillis) throws IOException {
+        this(address, catalog, roundTimeoutMillis, SHARDS, LOBBY_SIZE);
+    }
+
+    /**
+     * Constructor for a new server, which is bound immediately but only handles connections when it runs.
+     * @param address is the address to bind to, port 0 picks a free port.
+     * @param catalog is the catalog of the terms.
+     * @param roundTimeoutMillis is the timeout of a round in milliseconds.
+     * @param shardCount is the number of shards, at least one.
+     * @param lobbySize is the number of connections a lobby takes, or 0 to put all players into one lobby.
+     * @throws IOException if the server could not be bound.
+     */
+    public GameServer(InetSocketAddress address, QuestionCatalog catalog, long roundTimeoutMillis, int shardCount,
+                      int lobbySize) throws IOException {
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(address, 1024);
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.lobbySize = Math.max(0, lobbySize);
+        // the terms are compiled once for all shards, the matcher is thread safe
+        AnswerMatcher matcher = new AnswerMatcher(catalog, MAX_TYPOS);
+        this.shards = new Shard[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(this, catalog, matcher, roundTimeoutMillis);
+        }
+    }
+
+    /**
+     * Method returns the port the server is bound to.
+     * @return the local port.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Method returns the number of shards.
+     * @return number of shards.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Method returns the shard which owns a lobby.
+     * @param lobby is the number of the lobby.
+     * @return the shard.
+     */
+    Shard getShard(int lobby) {
+        return shards[Math.floorMod(lobby, shards.length)];
+    }
+
+    /**
+     * Method of the acceptor thread: starts the shards, accepts connections and hands them to the shard of the
+     * open lobby. When it ends, it stops the shards and waits for them.
+     */
+    @Override
+    public void run() {
+        Thread[] threads = new Thread[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            threads[i] = new Thread(shards[i], "GameServer-shard-" + i);
+            threads[i].start();
+        }
+        try {
+            while (running) {
+                selector.select();
+                selector.selectedKeys().clear();
+                accept();
+            }
+        } catch (IOException e) {
+            System.out.println("IOException occured!");
+        } finally {
+            for (Shard shard : shards) {
+                shard.close();
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                System.out.println("IOException occured!");
+            }
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Method stops the acceptor thread and the shards and closes all connections.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Private method accepts all waiting connections. A lobby takes the next lobbySize connections, and then the
+     * next lobby is opened on the next shard.
+     */
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                if (lobbySize > 0 && openLobbyConnections == lobbySize) {
+                    openLobby++;
+                    openLobbyConnections = 0;
+                }
+                openLobbyConnections++;
+                getShard(openLobby).arrive(new ClientConnection(channel), openLobby, null);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not accept connection!");
+        }
+    }
+
+    /**
+     * Method returns the current time for the games.
+     * @return monotonic time in milliseconds.
+     */
+    static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * Main method to start the server from the command line.
+     * @param args are the optional port, the optional path of a catalog file and the optional round timeout
+     *             in seconds.
+     */
+    public static void main(String[] args) {
+        try {
+            int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+            QuestionCatalog catalog = args.length > 1
+                    ? QuestionCatalog.read(new FileInputStream(args[1]))
+                    : QuestionCatalog.readDefault();
+            long timeout = args.length > 2 ? Long.parseLong(args[2]) * 1000 : DEFAULT_ROUND_TIMEOUT;
+            GameServer server = new GameServer(new InetSocketAddress(port), catalog, timeout);
+            System.out.println("Game server listens on port " + server.getPort() + " with " + server.getShardCount()
+                    + " shards.");
+            server.run();
+        } catch (IOException e) {
+            System.out.println("Could not start the server: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Catalog of the terms a game asks for, together with their accepted translations.
+ * The catalog is read from a UTF-8 text file: a line <code>Language=English</code> names the language the terms
+ * must be translated to, every other line <code>term=translation|other translation</code> is one question.
+ * Empty lines and lines starting with # are ignored.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+public class QuestionCatalog {
+
+    /**
+     * Key of the line which names the language.
+     */
+    private static final String LANGUAGE_KEY = "Language";
+
+    /**
+     * Private variable that stores the language the terms must be translated to.
+     */
+    private final String language;
+
+    /**
+     * Private list of the questions in the order of the file.
+     */
+    private final List<Question> questions;
+
+    /**
+     * Constructor for a new catalog.
+     * @param language is the language the terms must be translated to.
+     * @param questions are the questions.
+     */
+    public QuestionCatalog(String language, List<Question> questions) {
+        this.language = language;
+        this.questions = Collections.unmodifiableList(new ArrayList<>(questions));
+    }
+
+    /**
+     * Method reads a catalog from the given stream.
+     * @param in is the stream of the catalog file, which is closed afterwards.
+     * @return the catalog.
+     * @throws IOException if the stream could not be read or has no questions.
+     */
+    public static QuestionCatalog read(InputStream in) throws IOException {
+        String language = "English";
+        List<Question> questions = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                int separator = line.indexOf('=');
+                if (line.isEmpty() || line.startsWith("#") || separator < 0) {
+                    continue;
+                }
+                String key = line.substring(0, separator).trim();
+                String value = line.substring(separator + 1).trim();
+                if (key.equals(LANGUAGE_KEY)) {
+                    language = value;
+                }
+                else {
+                    questions.add(new Question(key, Arrays.asList(value.split("\\|"))));
+                }
+            }
+        }
+        if (questions.isEmpty()) {
+            throw new IOException("Catalog has no questions!");
+        }
+        return new QuestionCatalog(language, questions);
+    }
+
+    /**
+     * Method reads the catalog which is shipped with the server.
+     * @return the default catalog.
+     * @throws IOException if the catalog could not be read.
+     */
+    public static QuestionCatalog readDefault() throws IOException {
+        InputStream in = QuestionCatalog.class.getResourceAsStream("/resources/questions.txt");
+        if (in == null) {
+            throw new IOException("Default catalog is missing!");
+        }
+        return read(in);
+    }
+
+    /**
+     * Method returns the language the terms must be translated to.
+     * @return the language.
+     */
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * Method returns all questions of this catalog.
+     * @return unmodifiable list of questions.
+     */
+    public List<Question> getQuestions() {
+        return questions;
+    }
+
+    /**
+     * One term together with its accepted translations.
+     */
+    public static class Question {
+
+        /**
+         * Private variable that stores the term.
+         */
+        private final String term;
+
+        /**
+         * Private list of the accepted translations.
+         */
+        private final List<String> translations;
+
+        /**
+         * Constructor for a new question.
+         * @param term is the term the players must translate.
+         * @param translations are the accepted translations.
+         */
+        public Question(String term, List<String> translations) {
+            this.term = term;
+            List<String> trimmed = new ArrayList<>(translations.size());
+            for (String translation : translations) {
+                trimmed.add(translation.trim());
+            }
+            this.translations = Collections.unmodifiableList(trimmed);
+        }
+
+        /**
+         * Method returns the term the players must translate.
+         * @return the term.
+         */
+        public String getTerm() {
+            return term;
+        }
+
+        /**
+         * Method returns the accepted translations.
+         * @return unmodifiable list of translations.
+         */
+        public List<String> getTranslations() {
+            return translations;
+        }
+
+        /**
+         * Method checks whether the given answer is one of the accepted translations,
+         * ignoring case and surrounding whitespace.
+         * @param answer is the answer of a player.
+         * @return true, if the answer is correct.
+         */
+        public boolean isCorrect(String answer) {
+            if (answer == null) {
+                return false;
+            }
+            String trimmed = answer.trim();
+            for (String translation : translations) {
+                if (translation.equalsIgnoreCase(trimmed)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
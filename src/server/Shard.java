@@ -0,0 +1,527 @@
+package server;
+
+import lib.ClockEstimator;
+import lib.DeflateCodec;
+import lib.JsonHashMapParser;
+import lib.Message;
+import lib.MessageCodec;
+import lib.MessageDispatcher;
+import lib.MessageFormatException;
+import lib.PrefetchQueue;
+import lib.ScoreBoard;
+import lib.Transport;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Event loop of the GameServer which owns a part of the lobbies: one thread with its own NIO selector reads and writes
+ * the connections of its lobbies and runs their games. Nothing of a shard is shared with another shard, so the shards
+ * need no locks and run on as many cores as there are shards. The acceptor hands a new connection to the shard of its
+ * lobby through a lock-free queue. A player which resumes with the session token of a lobby of another shard is
+ * handed to that shard the same way, together with the bytes its connection has read so far.
+ * @author Sebastian Baumann, Korbinian Karl, Ehsan Moslehi
+ */
+class Shard implements Runnable, ClientConnection.MessageHandler {
+
+    /**
+     * Private selector for the channels of the shard.
+     */
+    private final Selector selector;
+
+    /**
+     * Private variable that stores the server the shard belongs to.
+     */
+    private final GameServer server;
+
+    /**
+     * Private variable that stores the catalog of the terms.
+     */
+    private final QuestionCatalog catalog;
+
+    /**
+     * Private engine which checks the answers of all lobbies of the server, which is thread safe.
+     */
+    private final AnswerMatcher matcher;
+
+    /**
+     * Private variable that stores the timeout of a round in milliseconds.
+     */
+    private final long roundTimeoutMillis;
+
+    /**
+     * Private map that stores the games of the lobbies of this shard, keyed by the number of the lobby.
+     */
+    private final Map<Integer, Game> lobbies = new HashMap<>();
+
+    /**
+     * Private queue of the connections other threads hand to this shard.
+     */
+    private final ConcurrentLinkedQueue<Arrival> arrivals = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Private queue of the connections which move to another shard after the current event.
+     */
+    private final ArrayDeque<Arrival> departures = new ArrayDeque<>();
+
+    /**
+     * Private registry of the handlers of the messages clients send.
+     */
+    private final MessageDispatcher<ClientConnection> dispatcher = new MessageDispatcher<ClientConnection>()
+            .register(JsonHashMapParser.Type.NICKNAME, this::onNickname)
+            .register(JsonHashMapParser.Type.ANSWER, this::onAnswer)
+            .register(JsonHashMapParser.Type.SCORE, this::onScoreRequest)
+            .register(JsonHashMapParser.Type.PING, this::onPing);
+
+    /**
+     * Private reusable holder the incoming messages are decoded into.
+     */
+    private final Message holder = new Message();
+
+    /**
+     * Private reusable holder for handshake and error answers.
+     */
+    private final Message reply = new Message();
+
+    /**
+     * Private queue of the connections which failed and are closed after the current event.
+     */
+    private final ArrayDeque<ClientConnection> failed = new ArrayDeque<>();
+
+    /**
+     * Private variable to determine whether the thread of the shard should be running or should be stopped.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Constructor for a new shard, which only handles connections when it runs.
+     * @param server is the server the shard belongs to.
+     * @param catalog is the catalog of the terms.
+     * @param matcher is the engine which checks the answers, compiled from the same catalog.
+     * @param roundTimeoutMillis is the timeout of a round in milliseconds.
+     * @throws IOException if the selector could not be opened.
+     */
+    Shard(GameServer server, QuestionCatalog catalog, AnswerMatcher matcher, long roundTimeoutMillis)
+            throws IOException {
+        this.selector = Selector.open();
+        this.server = server;
+        this.catalog = catalog;
+        this.matcher = matcher;
+        this.roundTimeoutMillis = roundTimeoutMillis;
+    }
+
+    /**
+     * Method hands a connection to this shard. May be called by any thread.
+     * @param connection is the connection, which is not attached to a selector.
+     * @param lobby is the number of the lobby of this shard the connection belongs to.
+     * @param nickname is a NICKNAME message the shard handles first, or null.
+     */
+    void arrive(ClientConnection connection, int lobby, Message nickname) {
+        arrive(new Arrival(connection, lobby, nickname, -1));
+    }
+
+    /**
+     * Private method hands a connection which moves from another shard to this shard. May be called by any thread.
+     * @param arrival is the arriving connection.
+     */
+    private void arrive(Arrival arrival) {
+        arrivals.add(arrival);
+        selector.wakeup();
+    }
+
+    /**
+     * Method of the thread of the shard: takes the arriving connections, reads and writes messages and ends
+     * rounds in time.
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                long deadline = getDeadline();
+                long now = GameServer.now();
+                if (deadline == 0) {
+                    selector.select();
+                }
+                else if (deadline > now) {
+                    selector.select(deadline - now);
+                }
+                else {
+                    selector.selectNow();
+                }
+                Arrival arrival;
+                while ((arrival = arrivals.poll()) != null) {
+                    adopt(arrival);
+                    closeFailed();
+                    depart();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                    closeFailed();
+                    depart();
+                }
+                // the answers read in this pass are checked together
+                now = GameServer.now();
+                for (Game game : lobbies.values()) {
+                    game.checkAnswers(now);
+                    game.tick(now);
+                }
+                closeFailed();
+                lobbies.values().removeIf(Game::isIdle);
+            }
+        } catch (IOException e) {
+            System.out.println("IOException occured!");
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof ClientConnection) {
+                    ((ClientConnection) key.attachment()).close();
+                }
+            }
+            Arrival arrival;
+            while ((arrival = arrivals.poll()) != null) {
+                arrival.connection.close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.out.println("IOException occured!");
+            }
+        }
+    }
+
+    /**
+     * Method stops the thread of the shard and closes its connections.
+     */
+    void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Private method returns the time when the next round or pause of a lobby ends or a suspended player is removed.
+     * @return time in milliseconds, or 0 if nothing has to be done at a certain time.
+     */
+    private long getDeadline() {
+        long next = 0;
+        for (Game game : lobbies.values()) {
+            long deadline = game.getDeadline();
+            if (deadline != 0 && (next == 0 || deadline < next)) {
+                next = deadline;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Private method returns the game of a lobby of this shard, which is created when it is needed first.
+     * @param lobby is the number of the lobby.
+     * @return the game.
+     */
+    private Game lobby(int lobby) {
+        return lobbies.computeIfAbsent(lobby,
+                number -> new Game(number, catalog, matcher, roundTimeoutMillis, failed::add));
+    }
+
+    /**
+     * Private method attaches an arriving connection to the selector and to its lobby. A connection which was
+     * moved from another shard continues with its NICKNAME message and the bytes it has read so far. It only
+     * moves into a lobby which still exists and knows its session token; otherwise it goes back to the lobby it
+     * was assigned to, as a player without a token.
+     * @param arrival is the arriving connection.
+     */
+    private void adopt(Arrival arrival) {
+        ClientConnection connection = arrival.connection;
+        if (arrival.home >= 0) {
+            Game target = lobbies.get(arrival.lobby);
+            if (target == null || !target.hasSession(arrival.nickname.getText(Transport.SESSION_KEY))) {
+                departures.add(new Arrival(connection, arrival.home, withoutSession(arrival.nickname), -1));
+                return;
+            }
+        }
+        try {
+            connection.attach(selector);
+        } catch (ClosedChannelException e) {
+            connection.close();
+            return;
+        }
+        Game game = lobby(arrival.lobby);
+        connection.setGame(game);
+        game.addConnection();
+        if (arrival.nickname == null) {
+            return;
+        }
+        try {
+            onMessage(connection, arrival.nickname);
+            connection.decode(holder, this);
+        } catch (IOException e) {
+            failed.add(connection);
+        }
+    }
+
+    /**
+     * Private method handles one ready key.
+     * @param key is the ready key.
+     */
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        ClientConnection connection = (ClientConnection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                connection.read(holder, this);
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        } catch (IOException e) {
+            failed.add(connection);
+        }
+    }
+
+    /**
+     * Method handles one decoded message of a client. A message of a type clients don't send is skipped.
+     * @param connection is the connection the message was received on.
+     * @param message is the decoded message.
+     * @throws IOException if the connection must be closed.
+     */
+    @Override
+    public void onMessage(ClientConnection connection, Message message) throws IOException {
+        try {
+            dispatcher.dispatch(connection, message);
+        } catch (MessageFormatException e) {
+            System.out.println("Could not handle message from " + connection.describe() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Private method handles the nickname of a player, which also carries the offered transport mode.
+     * A player which sends a known session token resumes its place in the game of its lobby instead of joining
+     * as a new player; if the lobby belongs to another shard, the connection moves to that shard first. The number
+     * of the lobby in the token is not trusted: the connection only moves into a lobby which exists and knows the
+     * token, otherwise it joins the lobby it was assigned to like a player with an unknown token.
+     * @param connection is the connection the message was received on.
+     * @param message is the NICKNAME message.
+     * @throws IOException if the connection must be closed.
+     */
+    private void onNickname(ClientConnection connection, Message message) throws IOException {
+        handshake(connection, message);
+        String nickname = message.getText("Nickname");
+        if (connection.getNickname() != null) {
+            // the player has already joined
+            return;
+        }
+        Game game = connection.getGame();
+        String token = message.getText(Transport.SESSION_KEY);
+        if (token != null) {
+            connection.setSessionRequested(true);
+            int lobby = Game.lobbyOf(token);
+            if (lobby >= 0 && lobby != game.getLobby()) {
+                Shard owner = server.getShard(lobby);
+                if (owner != this) {
+                    // the message is handled again by the other shard, which also accepts the handshake again
+                    game.removeConnection();
+                    connection.detach();
+                    connection.setGame(null);
+                    departures.add(new Arrival(connection, lobby, new Message().copyFrom(message), game.getLobby()));
+                    return;
+                }
+                // an unknown token of a lobby which is gone or never existed is resumed nowhere below
+                Game target = lobbies.get(lobby);
+                if (target != null && target.hasSession(token)) {
+                    game.removeConnection();
+                    game = target;
+                    connection.setGame(game);
+                    game.addConnection();
+                }
+            }
+            if (!token.isEmpty() && game.resume(connection, token, GameServer.now())) {
+                return;
+            }
+        }
+        if (nickname == null || nickname.trim().isEmpty() || game.isTaken(nickname)) {
+            connection.send(reply.clear(JsonHashMapParser.Type.ERROR).putText("Error", "Nickname is already used"));
+            return;
+        }
+        connection.setNickname(nickname);
+        game.join(connection, GameServer.now());
+    }
+
+    /**
+     * Private method handles the answer of a player.
+     * @param connection is the connection the message was received on.
+     * @param message is the ANSWER message.
+     * @throws MessageFormatException if the message has no answer.
+     */
+    private void onAnswer(ClientConnection connection, Message message) throws MessageFormatException {
+        int durationIndex = message.indexOf(ClockEstimator.DURATION_KEY);
+        long duration = durationIndex >= 0 && message.isNumber(durationIndex) ? message.getNumber(durationIndex) : -1;
+        connection.getGame().answer(connection, message.requireText("Answer"), duration, GameServer.now());
+    }
+
+    /**
+     * Private method answers the heartbeat of a client with the clock of the server.
+     * @param connection is the connection the message was received on.
+     * @param message is the PING message.
+     * @throws IOException if the PING has no clock of the client, as a MessageFormatException,
+     * or the PONG could not be queued.
+     */
+    private void onPing(ClientConnection connection, Message message) throws IOException {
+        int sentIndex = message.indexOf(ClockEstimator.SENT_KEY);
+        if (sentIndex < 0 || !message.isNumber(sentIndex)) {
+            throw new MessageFormatException("PING message without " + ClockEstimator.SENT_KEY + "!");
+        }
+        reply.clear(JsonHashMapParser.Type.PONG);
+        reply.putNumber(ClockEstimator.SENT_KEY, message.getNumber(sentIndex));
+        reply.putNumber(ClockEstimator.SERVER_TIME_KEY, GameServer.now());
+        connection.send(reply);
+    }
+
+    /**
+     * Private method handles an empty SCORE message, with which a client asks for the full score list.
+     * @param connection is the connection the message was received on.
+     * @param message is the SCORE message.
+     */
+    private void onScoreRequest(ClientConnection connection, Message message) {
+        connection.getGame().resync(connection);
+    }
+
+    /**
+     * Private method accepts the transport mode, the codec, the compression and the prefetch depth offered with
+     * a NICKNAME message.
+     * The acknowledgement is the last message in the legacy mode.
+     * @param connection is the connection the message was received on.
+     * @param message is the NICKNAME message.
+     * @throws IOException if the acknowledgement could not be queued.
+     */
+    private void handshake(ClientConnection connection, Message message) throws IOException {
+        if ("true".equals(message.getText(ScoreBoard.HANDSHAKE_KEY))) {
+            connection.setScoreDelta(true);
+        }
+        if (connection.getNickname() == null) {
+            // the depth must not change while questions are sent ahead of time
+            connection.setPrefetchDepth(PrefetchQueue.parseDepth(message.getText(PrefetchQueue.HANDSHAKE_KEY)));
+        }
+        String mode = message.getText(Transport.HANDSHAKE_KEY);
+        if (connection.getMode() != Transport.Mode.OBJECT_STREAM
+                || !Transport.Mode.FRAMED.getModeString().equals(mode)) {
+            return;
+        }
+        MessageCodec codec;
+        try {
+            codec = MessageCodec.forName(message.getText(MessageCodec.HANDSHAKE_KEY));
+        } catch (IllegalArgumentException e) {
+            codec = MessageCodec.forName(null);
+        }
+        reply.clear(JsonHashMapParser.Type.NICKNAME);
+        reply.putText(Transport.HANDSHAKE_KEY, Transport.Mode.FRAMED.getModeString());
+        reply.putText(MessageCodec.HANDSHAKE_KEY, codec.getName());
+        if (DeflateCodec.NAME.equals(message.getText(DeflateCodec.HANDSHAKE_KEY))) {
+            reply.putText(DeflateCodec.HANDSHAKE_KEY, DeflateCodec.NAME);
+            codec = new DeflateCodec(codec, DeflateCodec.DEFAULT_THRESHOLD, ClientConnection.MAX_MESSAGE_SIZE);
+        }
+        connection.send(reply);
+        connection.switchToFramed(codec);
+    }
+
+    /**
+     * Private method closes the connections which failed and removes their players from their games.
+     */
+    private void closeFailed() {
+        ClientConnection connection;
+        while ((connection = failed.poll()) != null) {
+            connection.close();
+            Game game = connection.getGame();
+            if (game != null) {
+                // a connection may fail more than once before it is closed
+                connection.setGame(null);
+                game.removeConnection();
+                game.leave(connection, GameServer.now());
+            }
+        }
+    }
+
+    /**
+     * Private method copies a NICKNAME message with an empty session token instead of the sent one, so the player
+     * joins as a new player and gets a new token.
+     * @param message is the NICKNAME message.
+     * @return the copy.
+     */
+    private static Message withoutSession(Message message) {
+        Message copy = new Message().clear(message.getType());
+        for (int i = 0; i < message.size(); i++) {
+            if (Transport.SESSION_KEY.equals(message.getKey(i))) {
+                continue;
+            }
+            if (message.isNumber(i)) {
+                copy.putNumber(message.getKey(i), message.getNumber(i));
+            }
+            else {
+                copy.putText(message.getKey(i), message.getText(i));
+            }
+        }
+        return copy.putText(Transport.SESSION_KEY, "");
+    }
+
+    /**
+     * Private method hands the connections which move to another shard to their new shard. It is called after
+     * the current event, when this shard no longer touches them.
+     */
+    private void depart() {
+        Arrival departure;
+        while ((departure = departures.poll()) != null) {
+            server.getShard(departure.lobby).arrive(departure);
+        }
+    }
+
+    /**
+     * A connection which is handed to a shard.
+     */
+    private static final class Arrival {
+
+        /**
+         * Private variable that stores the connection.
+         */
+        private final ClientConnection connection;
+
+        /**
+         * Private variable that stores the number of the lobby the connection belongs to.
+         */
+        private final int lobby;
+
+        /**
+         * Private variable that stores the NICKNAME message the shard handles first, or null.
+         */
+        private final Message nickname;
+
+        /**
+         * Private variable that stores the number of the lobby the connection was assigned to, if it moves to the
+         * lobby of its session token, or -1.
+         */
+        private final int home;
+
+        /**
+         * Constructor for a new arrival.
+         * @param connection is the connection.
+         * @param lobby is the number of the lobby.
+         * @param nickname is the NICKNAME message the shard handles first, or null.
+         * @param home is the number of the lobby the connection was assigned to, if it moves to the lobby of its
+         *             session token, or -1.
+         */
+        private Arrival(ClientConnection connection, int lobby, Message nickname, int home) {
+            this.connection = connection;
+            this.lobby = lobby;
+            this.nickname = nickname;
+            this.home = home;
+        }
+    }
+}